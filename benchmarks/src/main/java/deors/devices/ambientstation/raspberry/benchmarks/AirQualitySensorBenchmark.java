@@ -0,0 +1,54 @@
+package deors.devices.ambientstation.raspberry.benchmarks;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import deors.devices.ambientstation.raspberry.GroveAirQualitySensor;
+import deors.devices.ambientstation.raspberry.simulation.SimulatedGrovePi;
+
+// decoding of the 4 bytes answered by the grovepi to an analog read
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AirQualitySensorBenchmark {
+
+    private SimulatedGrovePi grovePi;
+
+    private GroveAirQualitySensor sensor;
+
+    // 750, with a high byte that reads negative as a signed byte
+    private byte[] data = { 3, 2, (byte) 0xEE, 0 };
+
+    @Setup
+    public void setup() throws IOException {
+
+        grovePi = new SimulatedGrovePi(new Properties());
+        sensor = new GroveAirQualitySensor(grovePi, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        grovePi.close();
+    }
+
+    @Benchmark
+    public Double decode() {
+        return sensor.get(data);
+    }
+}
@@ -0,0 +1,69 @@
+package deors.devices.ambientstation.raspberry.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.encoding.AmbientDataEncoder;
+import deors.devices.ambientstation.raspberry.encoding.PayloadFormat;
+import deors.devices.ambientstation.raspberry.statistics.RollingStatistics;
+
+// serialization of one sample with the default three statistics windows
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AmbientDataBenchmark {
+
+    private AmbientData data;
+
+    private AmbientDataEncoder jsonEncoder;
+
+    private AmbientDataEncoder binaryEncoder;
+
+    @Setup
+    public void setup() {
+
+        RollingStatistics statistics = new RollingStatistics(
+            List.of(Duration.ofMinutes(1), Duration.ofHours(1), Duration.ofHours(24)), 120);
+        AmbientData.Builder builder = Samples.newBuilder();
+        for (int i = 0; i < 240; i++) {
+            Samples.next(builder, i);
+            builder.updateStatistics(statistics);
+        }
+        data = builder.build();
+
+        jsonEncoder = PayloadFormat.JSON.newEncoder();
+        binaryEncoder = PayloadFormat.BINARY.newEncoder();
+    }
+
+    @Benchmark
+    public String toJson() {
+        return data.toJson();
+    }
+
+    @Benchmark
+    public ByteBuffer jsonEncoder() {
+        return jsonEncoder.encode(data);
+    }
+
+    @Benchmark
+    public ByteBuffer binaryEncoder() {
+        return binaryEncoder.encode(data);
+    }
+}
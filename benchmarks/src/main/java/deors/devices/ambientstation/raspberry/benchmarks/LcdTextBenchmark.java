@@ -0,0 +1,44 @@
+package deors.devices.ambientstation.raspberry.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import deors.devices.ambientstation.raspberry.LcdText;
+
+// lcd line padding, as done for both lines of every lcd page
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LcdTextBenchmark {
+
+    // not final, so the strings are not constant folded
+    private String shortLine = "T 21.5C H 48%";
+    private String longLine = "air quality: normal indoor air";
+
+    @Benchmark
+    public String padRight() {
+        return LcdText.padRight(shortLine, 16, ' ');
+    }
+
+    @Benchmark
+    public String padRightTruncating() {
+        return LcdText.padRight(longLine, 16, ' ');
+    }
+
+    @Benchmark
+    public String repeatCharacter() {
+        return LcdText.repeatCharacter(' ', 16);
+    }
+}
@@ -0,0 +1,32 @@
+package deors.devices.ambientstation.raspberry.benchmarks;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+
+// plausible sensor values for the benchmarks, varying from cycle to cycle
+final class Samples {
+
+    private Samples() {
+    }
+
+    static AmbientData.Builder newBuilder() {
+
+        AmbientData.Builder builder = new AmbientData.Builder("benchmark");
+        next(builder, 0);
+        return builder;
+    }
+
+    static void next(AmbientData.Builder builder, long cycle) {
+
+        int step = (int) (cycle % 20);
+        builder.setSequence(cycle);
+        builder.setSlotTime(1600000000000L + cycle * 500);
+        builder.setTemperatureValue(21.0 + step * 0.1);
+        builder.setHumidityValue(48.0 + step * 0.2);
+        builder.setLightValue(300 + step);
+        builder.setSoundRms(40 + step);
+        builder.setSoundPeak(120 + step);
+        builder.setSoundLeq(35.5 + step * 0.1);
+        builder.setAirQualityValue(120 + step);
+        builder.setMotionDetected(step == 0);
+    }
+}
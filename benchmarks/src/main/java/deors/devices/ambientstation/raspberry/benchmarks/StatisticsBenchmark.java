@@ -0,0 +1,54 @@
+package deors.devices.ambientstation.raspberry.benchmarks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.statistics.RollingStatistics;
+
+// rolling statistics update of each sampling cycle, which replaced the
+// lifetime ranges of checkRanges()
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StatisticsBenchmark {
+
+    private RollingStatistics statistics;
+
+    private AmbientData.Builder builder;
+
+    private long cycle = 0;
+
+    @Setup
+    public void setup() {
+
+        statistics = new RollingStatistics(
+            List.of(Duration.ofMinutes(1), Duration.ofHours(1), Duration.ofHours(24)), 120);
+        builder = Samples.newBuilder();
+    }
+
+    // one cycle every 500 ms of sample time, so buckets roll as they do live
+    // the snapshot taken by the builder is what the cycle publishes
+    @Benchmark
+    public AmbientData.Builder updateStatistics() {
+
+        Samples.next(builder, cycle++);
+        builder.updateStatistics(statistics);
+        return builder;
+    }
+}
@@ -1,268 +1,267 @@
 package deors.devices.ambientstation.raspberry;
 
-public class AmbientData {
+import java.util.Locale;
 
-    // station id
-    private String id = "unknown";
+import deors.devices.ambientstation.raspberry.statistics.Channel;
+import deors.devices.ambientstation.raspberry.statistics.RollingStatistics;
+import deors.devices.ambientstation.raspberry.statistics.WindowStats;
 
-    // current temperature
-    private double temperatureValue = 0.0;
+// immutable snapshot of one sampling cycle, safe to share between threads
+// snapshots are assembled with a builder owned by the sampling cycle
+public final class AmbientData {
 
-    // minimum and maximum temperature observed
-    private double minTemperatureObserved = Integer.MAX_VALUE;
-    private double maxTemperatureObserved = Integer.MIN_VALUE;
+    // station id
+    private final String id;
 
-    // current humidity
-    private double humidityValue = 0.0;
+    // sampling slot sequence number
+    private final long sequence;
 
-    // minimum and maximum humidity observed
-    private double minHumidityObserved = Integer.MAX_VALUE;
-    private double maxHumidityObserved = Integer.MIN_VALUE;
+    // monotonic time when the sample was taken
+    private final long sampleNanos;
 
-    // current ambient light
-    private double lightValue = 0.0;
+    // configured slot time of the sample, as epoch milliseconds
+    private final long slotTime;
 
-    // minimum and maximum ambient light observed
-    private double minLightObserved = Integer.MAX_VALUE;
-    private double maxLightObserved = Integer.MIN_VALUE;
+    // current temperature
+    private final double temperatureValue;
 
-    // current ambient sound
-    private double soundValue = 0.0;
+    // current humidity
+    private final double humidityValue;
 
-    // minimum and maximum ambient sound observed
-    private double minSoundObserved = Integer.MAX_VALUE;
-    private double maxSoundObserved = Integer.MIN_VALUE;
+    // current ambient light
+    private final double lightValue;
 
-    // current air quality
-    private double airQualityValue = 0.0;
-    private AirQuality airQuality = AirQuality.FRESH;
+    // current ambient sound, aggregated over the sound window
+    private final double soundRms;
+    private final double soundPeak;
+    private final double soundLeq;
 
-    // minimum and maximum air quality observed
-    private double minAirQualityObserved = Integer.MAX_VALUE;
-    private double maxAirQualityObserved = Integer.MIN_VALUE;
+    // current air quality
+    private final double airQualityValue;
+    private final AirQuality airQuality;
 
     // current motion detection status
-    private boolean motionDetected = false;
+    private final boolean motionDetected;
 
-    public AmbientData(String id) {
+    // min, max and mean of each channel over the rolling windows
+    private final WindowStats statistics;
+
+    private AmbientData(Builder builder) {
         super();
-        this.id = id;
+        id = builder.id;
+        sequence = builder.sequence;
+        sampleNanos = builder.sampleNanos;
+        slotTime = builder.slotTime;
+        temperatureValue = builder.temperatureValue;
+        humidityValue = builder.humidityValue;
+        lightValue = builder.lightValue;
+        soundRms = builder.soundRms;
+        soundPeak = builder.soundPeak;
+        soundLeq = builder.soundLeq;
+        airQualityValue = builder.airQualityValue;
+        airQuality = builder.airQuality;
+        motionDetected = builder.motionDetected;
+        statistics = builder.statistics;
     }
 
     public String getId() {
         return id;
     }
 
-    public double getTemperatureValue() {
-        return temperatureValue;
-    }
-
-    public void setTemperatureValue(double temperatureValue) {
-        this.temperatureValue = temperatureValue;
+    public long getSequence() {
+        return sequence;
     }
 
-    public double getMinTemperatureObserved() {
-        return minTemperatureObserved;
+    public long getSampleNanos() {
+        return sampleNanos;
     }
 
-    public void setMinTemperatureObserved(double minTemperatureObserved) {
-        this.minTemperatureObserved = minTemperatureObserved;
+    public long getSlotTime() {
+        return slotTime;
     }
 
-    public double getMaxTemperatureObserved() {
-        return maxTemperatureObserved;
-    }
-
-    public void setMaxTemperatureObserved(double maxTemperatureObserved) {
-        this.maxTemperatureObserved = maxTemperatureObserved;
+    public double getTemperatureValue() {
+        return temperatureValue;
     }
 
     public double getHumidityValue() {
         return humidityValue;
     }
 
-    public void setHumidityValue(double humidityValue) {
-        this.humidityValue = humidityValue;
+    public double getLightValue() {
+        return lightValue;
     }
 
-    public double getMinHumidityObserved() {
-        return minHumidityObserved;
+    public double getSoundRms() {
+        return soundRms;
     }
 
-    public void setMinHumidityObserved(double minHumidityObserved) {
-        this.minHumidityObserved = minHumidityObserved;
+    public double getSoundPeak() {
+        return soundPeak;
     }
 
-    public double getMaxHumidityObserved() {
-        return maxHumidityObserved;
+    public double getSoundLeq() {
+        return soundLeq;
     }
 
-    public void setMaxHumidityObserved(double maxHumidityObserved) {
-        this.maxHumidityObserved = maxHumidityObserved;
+    public double getAirQualityValue() {
+        return airQualityValue;
     }
 
-    public double getLightValue() {
-        return lightValue;
+    public AirQuality getAirQuality() {
+        return airQuality;
     }
 
-    public void setLightValue(double lightValue) {
-        this.lightValue = lightValue;
+    public boolean isMotionDetected() {
+        return motionDetected;
     }
 
-    public double getMinLightObserved() {
-        return minLightObserved;
+    public WindowStats getStatistics() {
+        return statistics;
     }
 
-    public void setMinLightObserved(double minLightObserved) {
-        this.minLightObserved = minLightObserved;
-    }
+    public String toJson() {
 
-    public double getMaxLightObserved() {
-        return maxLightObserved;
+        String json = String.format(Locale.ROOT, "{\"id\":\"%s\",\"temp\":%.1f,\"humi\":%.1f,\"light\":%.0f,\"sound\":%.0f,\"soundpeak\":%.0f,\"soundleq\":%.1f,\"airq\":%.0f,\"airqtext\":\"%s\",\"motion\":%b",
+            id, temperatureValue, humidityValue, lightValue, soundRms, soundPeak, soundLeq, airQualityValue, airQuality, motionDetected);
+
+        // stats by window and channel, as min, max and mean
+        StringBuilder sb = new StringBuilder(json);
+        if (statistics.getWindowCount() > 0) {
+            sb.append(",\"stats\":{");
+            for (int i = 0; i < statistics.getWindowCount(); i++) {
+                sb.append(i > 0 ? ",\"" : "\"").append(statistics.getLabel(i)).append("\":{");
+                for (Channel channel : Channel.values()) {
+                    sb.append(channel.ordinal() > 0 ? ",\"" : "\"").append(channel.getKey()).append("\":[");
+                    sb.append(formatStat(statistics.getMin(i, channel), channel)).append(',');
+                    sb.append(formatStat(statistics.getMax(i, channel), channel)).append(',');
+                    sb.append(formatStat(statistics.getMean(i, channel), channel)).append(']');
+                }
+                sb.append('}');
+            }
+            sb.append('}');
+        }
+        return sb.append('}').toString();
     }
 
-    public void setMaxLightObserved(double maxLightObserved) {
-        this.maxLightObserved = maxLightObserved;
+    private static String formatStat(double value, Channel channel) {
+        return Double.isNaN(value) ? "null" : String.format(Locale.ROOT, "%." + channel.getPrecision() + "f", value);
     }
 
-    public double getSoundValue() {
-        return soundValue;
-    }
+    // mutable working copy of the ambient data, confined to the sampling cycle
+    public static class Builder {
 
-    public void setSoundValue(double soundValue) {
-        this.soundValue = soundValue;
-    }
+        private String id = "unknown";
 
-    public double getMinSoundObserved() {
-        return minSoundObserved;
-    }
+        private long sequence = 0;
+        private long sampleNanos = 0;
+        private long slotTime = 0;
 
-    public void setMinSoundObserved(double minSoundObserved) {
-        this.minSoundObserved = minSoundObserved;
-    }
+        private double temperatureValue = 0.0;
 
-    public double getMaxSoundObserved() {
-        return maxSoundObserved;
-    }
+        private double humidityValue = 0.0;
 
-    public void setMaxSoundObserved(double maxSoundObserved) {
-        this.maxSoundObserved = maxSoundObserved;
-    }
+        private double lightValue = 0.0;
 
-    public double getAirQualityValue() {
-        return airQualityValue;
-    }
+        private double soundRms = 0.0;
+        private double soundPeak = 0.0;
+        private double soundLeq = 0.0;
 
-    public void setAirQualityValue(double airQualityValue) {
-        this.airQualityValue = airQualityValue;
-        setAirQuality(calculateAirQuality(airQualityValue));
-    }
+        private double airQualityValue = 0.0;
+        private AirQuality airQuality = AirQuality.FRESH;
 
-    private AirQuality calculateAirQuality(double airQualityValue) {
+        private boolean motionDetected = false;
 
-        AirQuality airQualityStage = AirQuality.FRESH;
+        private WindowStats statistics = WindowStats.EMPTY;
 
-        if (airQualityValue >= 700) {
-            airQualityStage = AirQuality.HIGH_POLLUTION;
-        } else if (airQualityValue >= 300) {
-            airQualityStage = AirQuality.LOW_POLLUTION;
-        } else if (airQualityValue >= 30){
-            airQualityStage = AirQuality.INDOOR;
+        public Builder(String id) {
+            super();
+            this.id = id;
         }
 
-        return airQualityStage;
-    }
-
-    public AirQuality getAirQuality() {
-        return airQuality;
-    }
-
-    private void setAirQuality(AirQuality airQuality) {
-        this.airQuality = airQuality;
-    }
-
-    public double getMinAirQualityObserved() {
-        return minAirQualityObserved;
-    }
+        public void setSequence(long sequence) {
+            this.sequence = sequence;
+        }
 
-    public void setMinAirQualityObserved(double minAirQualityObserved) {
-        this.minAirQualityObserved = minAirQualityObserved;
-    }
+        public void setSampleNanos(long sampleNanos) {
+            this.sampleNanos = sampleNanos;
+        }
 
-    public double getMaxAirQualityObserved() {
-        return maxAirQualityObserved;
-    }
+        public void setSlotTime(long slotTime) {
+            this.slotTime = slotTime;
+        }
 
-    public void setMaxAirQualityObserved(double maxAirQualityObserved) {
-        this.maxAirQualityObserved = maxAirQualityObserved;
-    }
+        public void setTemperatureValue(double temperatureValue) {
+            this.temperatureValue = temperatureValue;
+        }
 
-    public boolean isMotionDetected() {
-        return motionDetected;
-    }
+        public void setHumidityValue(double humidityValue) {
+            this.humidityValue = humidityValue;
+        }
 
-    public void setMotionDetected(boolean motionDetected) {
-        this.motionDetected = motionDetected;
-    }
+        public void setLightValue(double lightValue) {
+            this.lightValue = lightValue;
+        }
 
-    public String toJson() {
-        return String.format("{\"id\":\"%s\",\"temp\":%.1f,\"humi\":%.1f,\"light\":%.0f,\"sound\":%.0f,\"airq\":%.0f,\"airqtext\":\"%s\",\"motion\":%b}",
-            id, temperatureValue, humidityValue, lightValue, soundValue, airQualityValue, airQuality, motionDetected);
-    }
+        public void setSoundRms(double soundRms) {
+            this.soundRms = soundRms;
+        }
 
-    public void resetRanges() {
+        public void setSoundPeak(double soundPeak) {
+            this.soundPeak = soundPeak;
+        }
 
-        minTemperatureObserved = temperatureValue;
-        maxTemperatureObserved = temperatureValue;
+        public void setSoundLeq(double soundLeq) {
+            this.soundLeq = soundLeq;
+        }
 
-        minHumidityObserved = humidityValue;
-        maxHumidityObserved = humidityValue;
+        public void setSoundLevels(SoundLevels soundLevels) {
+            this.soundRms = soundLevels.getRms();
+            this.soundPeak = soundLevels.getPeak();
+            this.soundLeq = soundLevels.getLeq();
+        }
 
-        minLightObserved = lightValue;
-        maxLightObserved = lightValue;
+        public void setAirQualityValue(double airQualityValue) {
+            this.airQualityValue = airQualityValue;
+            this.airQuality = calculateAirQuality(airQualityValue);
+        }
 
-        minSoundObserved = soundValue;
-        maxSoundObserved = soundValue;
+        private AirQuality calculateAirQuality(double airQualityValue) {
 
-        minAirQualityObserved = airQualityValue;
-        maxAirQualityObserved = airQualityValue;
-    }
+            AirQuality airQualityStage = AirQuality.FRESH;
 
-    public void checkRanges() {
+            if (airQualityValue >= 700) {
+                airQualityStage = AirQuality.HIGH_POLLUTION;
+            } else if (airQualityValue >= 300) {
+                airQualityStage = AirQuality.LOW_POLLUTION;
+            } else if (airQualityValue >= 30){
+                airQualityStage = AirQuality.INDOOR;
+            }
 
-        if (temperatureValue < minTemperatureObserved) {
-            minTemperatureObserved = temperatureValue;
-        }
-        if (temperatureValue > maxTemperatureObserved) {
-            maxTemperatureObserved = temperatureValue;
+            return airQualityStage;
         }
 
-        if (humidityValue < minHumidityObserved) {
-            minHumidityObserved = humidityValue;
-        }
-        if (humidityValue > maxHumidityObserved) {
-            maxHumidityObserved = humidityValue;
+        public void setMotionDetected(boolean motionDetected) {
+            this.motionDetected = motionDetected;
         }
 
-        if (lightValue < minLightObserved) {
-            minLightObserved = lightValue;
-        }
-        if (lightValue > maxLightObserved) {
-            maxLightObserved = lightValue;
+        public void setStatistics(WindowStats statistics) {
+            this.statistics = statistics;
         }
 
-        if (soundValue < minSoundObserved) {
-            minSoundObserved = soundValue;
-        }
-        if (soundValue > maxSoundObserved) {
-            maxSoundObserved = soundValue;
-        }
+        // adds the current values to the rolling windows and takes their stats
+        public void updateStatistics(RollingStatistics rollingStatistics) {
 
-        if (airQualityValue < minAirQualityObserved) {
-            minAirQualityObserved = airQualityValue;
+            rollingStatistics.add(Channel.TEMPERATURE, slotTime, temperatureValue);
+            rollingStatistics.add(Channel.HUMIDITY, slotTime, humidityValue);
+            rollingStatistics.add(Channel.LIGHT, slotTime, lightValue);
+            rollingStatistics.add(Channel.SOUND, slotTime, soundRms);
+            rollingStatistics.add(Channel.AIR_QUALITY, slotTime, airQualityValue);
+            statistics = rollingStatistics.snapshot();
         }
-        if (airQualityValue > maxAirQualityObserved) {
-            maxAirQualityObserved = airQualityValue;
+
+        public AmbientData build() {
+            return new AmbientData(this);
         }
     }
 }
@@ -1,15 +1,58 @@
 package deors.devices.ambientstation.raspberry;
 
+import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Handler;
+import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
+import deors.devices.ambientstation.raspberry.buffering.MappedOutbox;
+import deors.devices.ambientstation.raspberry.buffering.MemorySampleBuffer;
+import deors.devices.ambientstation.raspberry.buffering.SampleBuffer;
+import deors.devices.ambientstation.raspberry.encoding.AmbientDataEncoder;
+import deors.devices.ambientstation.raspberry.encoding.PayloadFormat;
+import deors.devices.ambientstation.raspberry.flight.DeviceReadEvent;
+import deors.devices.ambientstation.raspberry.flight.LcdWriteEvent;
+import deors.devices.ambientstation.raspberry.flight.SamplingCycleEvent;
+import deors.devices.ambientstation.raspberry.flight.StationRecording;
+import deors.devices.ambientstation.raspberry.history.StationHistory;
+import deors.devices.ambientstation.raspberry.logging.AsyncHandler;
+import deors.devices.ambientstation.raspberry.http.SlowClientPolicy;
+import deors.devices.ambientstation.raspberry.http.SseServer;
+import deors.devices.ambientstation.raspberry.http.StationHttpServer;
+import deors.devices.ambientstation.raspberry.metrics.MetricsRegistry;
+import deors.devices.ambientstation.raspberry.metrics.OperationMetrics;
+import deors.devices.ambientstation.raspberry.publishers.ConnectionManager;
+import deors.devices.ambientstation.raspberry.publishers.ConnectionState;
+import deors.devices.ambientstation.raspberry.publishers.DeliveryPipeline;
 import deors.devices.ambientstation.raspberry.publishers.Publisher;
 import deors.devices.ambientstation.raspberry.publishers.PublisherFactory;
+import deors.devices.ambientstation.raspberry.replay.RawReadings;
+import deors.devices.ambientstation.raspberry.replay.ReadingsRecorder;
+import deors.devices.ambientstation.raspberry.replay.Replay;
+import deors.devices.ambientstation.raspberry.reporting.Deadband;
+import deors.devices.ambientstation.raspberry.reporting.ReportByException;
+import deors.devices.ambientstation.raspberry.scheduling.Backoff;
+import deors.devices.ambientstation.raspberry.scheduling.FixedRateSampler;
+import deors.devices.ambientstation.raspberry.scheduling.StationScheduler;
+import deors.devices.ambientstation.raspberry.simulation.SimulatedGrovePi;
+import deors.devices.ambientstation.raspberry.statistics.Channel;
+import deors.devices.ambientstation.raspberry.statistics.RollingStatistics;
+import deors.devices.ambientstation.raspberry.statistics.WindowStats;
 
 import org.iot.raspberry.grovepi.GroveDigitalIn;
 import org.iot.raspberry.grovepi.GrovePi;
@@ -23,8 +66,25 @@ import org.iot.raspberry.grovepi.pi4j.GrovePi4J;
 
 public class AmbientStationRunner {
 
-    // ambient data bean
-    private AmbientData ambientData;
+    // a timed device read
+    @FunctionalInterface
+    private interface DeviceOperation<T> {
+
+        T run() throws IOException, InterruptedException;
+    }
+
+    // a timed lcd write
+    @FunctionalInterface
+    private interface LcdOperation {
+
+        void run() throws IOException;
+    }
+
+    // latest ambient data snapshot, swapped atomically once per sampling cycle
+    private AtomicReference<AmbientData> ambientData = new AtomicReference<>();
+
+    // working copy of the ambient data, only touched by the sampling cycle
+    private AmbientData.Builder ambientDataBuilder;
 
     // configuration properties
     private Properties properties;
@@ -44,6 +104,12 @@ public class AmbientStationRunner {
     // LCD
     private GroveRgbLcd lcd;
 
+    // lcd writes go through the renderer, which skips those changing nothing
+    private LcdRenderer lcdRenderer;
+
+    // whether the lcd pages are being shown, a press meanwhile is ignored
+    private final AtomicBoolean lcdPagesShowing = new AtomicBoolean();
+
     // temperature & humidity sensor
     private GroveTemperatureAndHumiditySensor temperatureHumiditySensor;
 
@@ -59,14 +125,123 @@ public class AmbientStationRunner {
     // motion sensor
     private GroveDigitalIn motionSensor;
 
-    // external publisher
-    private Publisher publisher;
+    // keeps the external publisher connected in the background
+    private ConnectionManager connectionManager;
+
+    // every sample waiting to be published
+    private SampleBuffer sampleBuffer;
+
+    // samples worth publishing in report by exception mode, null to publish every sample
+    private ReportByException reportByException;
+
+    // samples are logged at info once every this many cycles, or on a change
+    // of the air quality category or motion, and every one of them at fine
+    private int logSummaryCycles;
+
+    // samples since the last one logged and what it showed, only used by the sampling cycle
+    private int cyclesSinceLog = 0;
+    private AirQuality lastLoggedAirQuality;
+    private boolean lastLoggedMotion = false;
+
+    // publishes the buffered samples in batches, only used by the publishing task
+    private DeliveryPipeline deliveryPipeline;
+
+    // shared scheduler running every station task
+    private StationScheduler scheduler;
+
+    // fixed rate sampler driving the sampling cycle, null when replaying
+    private FixedRateSampler sampler;
+
+    // fixed rate samplers of each sensor channel
+    private List<FixedRateSampler> channelSamplers = new ArrayList<>();
+
+    // high rate sound samples of the current sound window
+    private SoundWindow soundWindow;
+
+    // sound read failures not yet logged and when they were last logged,
+    // only used by the sound sampler
+    private long soundFailures = 0;
+    private long soundFailureLogNanos = 0;
+
+    // latest readings of the temperature & humidity, air quality and light channels
+    // null or NaN until each channel is read for the first time
+    private volatile GroveTemperatureAndHumidityValue latestTemperatureHumidity;
+    private volatile double latestAirQuality = Double.NaN;
+    private volatile double latestLight = Double.NaN;
+
+    // whether every channel has been read once, only used by the sampling cycle
+    private boolean firstReadingsTaken = false;
 
-    // thread keep forever flag
-    private volatile boolean keepRunning = true;
+    // motion seen by the motion channel since the last sampling cycle
+    private AtomicBoolean motionLatch = new AtomicBoolean();
 
-    // lcd publishing semaphore
-    private volatile boolean lcdPublishing = false;
+    // rolling window statistics, only touched by the sampling cycle
+    private RollingStatistics rollingStatistics;
+
+    // compressed sensor history on local storage, null when disabled
+    private StationHistory history;
+
+    // raw readings of every cycle are recorded here, null when disabled
+    private ReadingsRecorder recorder;
+    private RawReadings rawReadings = new RawReadings();
+
+    // recording replayed instead of reading the sensors, null when sampling live
+    private Replay replay;
+    private Thread replayThread;
+    private volatile boolean replayFinished = false;
+
+    // read-only http endpoints, null when disabled
+    private StationHttpServer httpServer;
+
+    // live stream of samples, null when disabled
+    private SseServer sseServer;
+
+    // window of the statistics shown on the lcd
+    private int lcdStatisticsWindow;
+
+    // latency and failures of every device, publishing and connection operation
+    private MetricsRegistry metrics = new MetricsRegistry();
+    private OperationMetrics temperatureHumidityReads = new OperationMetrics();
+    private OperationMetrics airQualityReads = new OperationMetrics();
+    private OperationMetrics lightReads = new OperationMetrics();
+    private OperationMetrics soundReads = new OperationMetrics();
+    private OperationMetrics motionReads = new OperationMetrics();
+    private OperationMetrics buttonReads = new OperationMetrics();
+    private OperationMetrics lcdTextWrites = new OperationMetrics();
+    private OperationMetrics lcdColourWrites = new OperationMetrics();
+    private OperationMetrics ledWrites = new OperationMetrics();
+    private OperationMetrics publishes = new OperationMetrics();
+
+    // grovepi ports of the sensors and the button, as recorded in device read events
+    private int temperatureHumidityPort;
+    private int airQualityPort;
+    private int lightPort;
+    private int soundPort;
+    private int motionPort;
+    private int buttonPort;
+
+    // continuous flight recording, null when disabled
+    private StationRecording flightRecording;
+
+    // closes everything when the jvm exits
+    private Thread shutdownHook;
+
+    // statistics reset requested from the button, applied by the sampling cycle
+    private AtomicBoolean statisticsResetRequested = new AtomicBoolean();
+
+    // how long each lcd page is shown
+    private static final long LCD_PAGE_MILLIS = 1000;
+
+    // sound read failures are logged at most this often
+    private static final long SOUND_FAILURE_LOG_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final String SAMPLE_LOG_FORMAT = "station ambient data at: %s (%d cycles since last logged)%n"
+        + "- temperature read from sensor: %3.1f%n"
+        + "- humidity read from sensor: %3.1f%n"
+        + "- ambient light read from sensor: %.0f%n"
+        + "- ambient sound read from sensor: rms %.0f / peak %.0f / leq %.1f dB%n"
+        + "- air quality read from sensor: %.0f / %s%n"
+        + "- motion detected: %b";
 
     // the logger
     private static Logger logger = Logger.getLogger(AmbientStationRunner.class.getName());
@@ -116,6 +291,17 @@ public class AmbientStationRunner {
         return Integer.parseInt(properties.getProperty(key));
     }
 
+    private int getIntProperty(String key, int defValue) {
+
+        String value = properties.getProperty(key);
+        return (value == null || value.isBlank()) ? defValue : Integer.parseInt(value.trim());
+    }
+
+    private Duration getDurationProperty(String key, Duration defValue) {
+
+        return Durations.parse(properties.getProperty(key), defValue);
+    }
+
     private void launch() throws IOException {
 
         // properties file name is provided via environment variable or system property
@@ -136,215 +322,790 @@ public class AmbientStationRunner {
             return;
         }
 
-        // initialize the grovePi board
-        grovePi = new GrovePi4J();
+        start(properties);
+    }
+
+    // starts the station with the given configuration, the station keeps
+    // running until the jvm exits or it is stopped
+    void start(Properties properties) throws IOException {
+
+        this.properties = properties;
+
+        // wire format of the published messages, json unless configured otherwise
+        PayloadFormat payloadFormat = PayloadFormat.fromProperty(properties.getProperty("publisher.format"));
+        AmbientDataEncoder encoder = payloadFormat.newEncoder();
+
+        logger.info(String.format("messages will be published as: %s", payloadFormat));
+
+        // binary messages need a publisher of bytes, better known now than at the first publish
+        String publisherImpl = properties.getProperty("publisher.impl");
+        Publisher publisherProbe = PublisherFactory.getInstance().getPublisher(publisherImpl);
+        if (payloadFormat == PayloadFormat.BINARY && publisherProbe != null && !publisherProbe.publishesBytes()) {
+            throw new IllegalArgumentException(String.format("publisher %s cannot publish the %s format",
+                publisherImpl, payloadFormat));
+        }
+
+        // initialize the grovePi board, or its simulation off the raspberry pi
+        grovePi = createGrovePi();
 
         // read the station id
         String stationId = properties.getProperty("device.id");
 
         logger.info(String.format("ambient station id: %s", stationId));
 
-        // ambient data bean initialised with the station id
-        ambientData = new AmbientData(stationId);
+        // every sample is kept until published in batches
+        sampleBuffer = createSampleBuffer();
+        int batchSize = Math.max(1, getIntProperty("publisher.batch.size", 1));
+        Duration batchLinger = getDurationProperty("publisher.batch.linger", Duration.ofSeconds(5));
+        reportByException = createReportByException();
+
+        logger.info(String.format("messages will be published in batches of %d samples or every %d ms",
+            batchSize, batchLinger.toMillis()));
+
+        // ambient data initialised with the station id
+        ambientDataBuilder = new AmbientData.Builder(stationId);
 
         // initialize monitor parts
-        button = grovePi.getDigitalIn(getIntProperty("port.button"));
+        buttonPort = getIntProperty("port.button");
+        button = grovePi.getDigitalIn(buttonPort);
         greenLed = new GroveLed(grovePi, getIntProperty("port.greenLed"));
         blueLed = new GroveLed(grovePi, getIntProperty("port.blueLed"));
         lcd = grovePi.getLCD();
+        lcdRenderer = new LcdRenderer(this::setLcdText, this::setLcdColour);
         clearLcd();
 
         // initialize sensor parts
+        temperatureHumidityPort = getIntProperty("port.temperatureHumidity");
+        airQualityPort = getIntProperty("port.airQuality");
+        lightPort = getIntProperty("port.light");
+        soundPort = getIntProperty("port.sound");
+        motionPort = getIntProperty("port.motion");
         temperatureHumiditySensor = new GroveTemperatureAndHumiditySensor(
-            grovePi, getIntProperty("port.temperatureHumidity"),
+            grovePi, temperatureHumidityPort,
             GroveTemperatureAndHumiditySensor.Type.DHT22);
-        airQualitySensor = new GroveAirQualitySensor(grovePi, getIntProperty("port.airQuality"));
-        lightSensor = new GroveLightSensor(grovePi, getIntProperty("port.light"));
-        soundSensor = new GroveSoundSensor(grovePi, getIntProperty("port.sound"));
-        motionSensor = grovePi.getDigitalIn(getIntProperty("port.motion"));
-
-        // loop forever reading information from sensors
-        new Thread(() -> {
-            while (keepRunning) {
-                readAmbientData();
-                logAmbientData();
-                checkRanges();
-                checkPublishLcd();
-                pause(500);
+        airQualitySensor = new GroveAirQualitySensor(grovePi, airQualityPort);
+        lightSensor = new GroveLightSensor(grovePi, lightPort);
+        soundSensor = new GroveSoundSensor(grovePi, soundPort);
+        motionSensor = grovePi.getDigitalIn(motionPort);
+
+        rollingStatistics = createRollingStatistics();
+        history = createHistory();
+        recorder = createRecorder();
+
+        // the lcd shows one window, by its position counting from 1
+        lcdStatisticsWindow = Math.min(getIntProperty("lcd.stats.window", rollingStatistics.getWindowCount()),
+            rollingStatistics.getWindowCount()) - 1;
+
+        // every station task runs on one shared scheduler
+        scheduler = new StationScheduler(getIntProperty("scheduler.threads", 6));
+        shutdownHook = new Thread(this::shutdown, "station-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        flightRecording = createFlightRecording();
+        if (flightRecording != null) {
+            flightRecording.start();
+        }
+        logSummaryCycles = Math.max(1, getIntProperty("log.summary.cycles", 120));
+
+        // the external publisher connects in the background
+        // while sampling and buffering go on
+        connectionManager = new ConnectionManager(scheduler,
+            () -> PublisherFactory.getInstance().getPublisher(properties.getProperty("publisher.impl")),
+            properties, createBackoff(), getIntProperty("publisher.connect.failures", 10));
+        connectionManager.start();
+
+        deliveryPipeline = new DeliveryPipeline(sampleBuffer, connectionManager, encoder, batchSize, batchLinger,
+            getDurationProperty("publisher.delivery.timeout", Duration.ofMinutes(1)),
+            getIntProperty("publisher.mqtt.qos", 2), publishes,
+            new DeliveryPipeline.Listener() {
+                @Override
+                public void delivered(int samples) {
+                    blinkLedTwice(blueLed);
+                }
+
+                @Override
+                public void failed() {
+                    if (flightRecording != null) {
+                        flightRecording.error();
+                    }
+                }
+            });
+
+        // local http endpoints, answered from the responses of the latest cycle
+        httpServer = createHttpServer();
+        if (httpServer != null) {
+            httpServer.start();
+        }
+        sseServer = createSseServer();
+        if (sseServer != null) {
+            sseServer.start();
+        }
+
+        if (replay != null) {
+            // recorded readings stand for the sensors and the sampling timeline
+            replayThread = new Thread(this::runReplay, "replay");
+            replayThread.start();
+        } else {
+            // each sensor is read on its own schedule
+            // so a slow sensor never holds back a fast one
+            startChannelSampler("temperatureHumidity", Duration.ofSeconds(2), this::sampleTemperatureHumidity);
+            startChannelSampler("airQuality", Duration.ofMillis(500), this::sampleAirQuality);
+            startChannelSampler("light", Duration.ofMillis(500), this::sampleLight);
+            soundWindow = createSoundWindow();
+            startChannelSampler("sound", Duration.ofMillis(100), this::sampleSound);
+            startChannelSampler("motion", Duration.ofMillis(100), this::sampleMotion);
+
+            // loop forever collecting the latest sensor readings
+            // samples are taken on a fixed rate timeline, so the period
+            // does not drift with the time it takes to process them
+            sampler = new FixedRateSampler(scheduler, "sampling",
+                getDurationProperty("sample.interval", Duration.ofMillis(500)).toNanos(), TimeUnit.NANOSECONDS,
+                (slot, slotNanos, slotTime) -> {
+                    SamplingCycleEvent event = new SamplingCycleEvent();
+                    event.begin();
+                    long sampleNanos = System.nanoTime();
+                    ambientDataBuilder.setSequence(slot);
+                    ambientDataBuilder.setSlotTime(slotTime);
+                    ambientDataBuilder.setSampleNanos(sampleNanos);
+                    // cycles before every channel has a reading are not taken,
+                    // they would publish and keep made-up zero values
+                    if (!readAmbientData(slotTime)) {
+                        return;
+                    }
+                    boolean buffered = processAmbientData();
+                    event.finish(slot, slotTime, sampleNanos - slotNanos, buffered, sampleBuffer.size());
+                });
+            sampler.start();
+        }
+
+        // the button is polled on its own task as the lcd pages take a while
+        scheduler.scheduleWithFixedDelay("lcd", this::checkPublishLcd, 500, 500, TimeUnit.MILLISECONDS);
+
+        // data is published externally on a separate task
+        // which checks for ready batches every time a sample may have been added
+        long publishingInterval = getDurationProperty("sample.interval", Duration.ofMillis(500)).toMillis();
+        scheduler.scheduleWithFixedDelay("publishing", deliveryPipeline::publish,
+            publishingInterval, publishingInterval, TimeUnit.MILLISECONDS);
+
+        // the history block being filled is written periodically
+        // full blocks are written as soon as they are sealed
+        if (history != null) {
+            long flushInterval = getDurationProperty("history.flush", Duration.ofMinutes(1)).toMillis();
+            scheduler.scheduleWithFixedDelay("history", this::flushHistory,
+                flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+
+        // recorded readings reach the file at least this often
+        if (recorder != null) {
+            long flushInterval = getDurationProperty("record.flush", Duration.ofSeconds(10)).toMillis();
+            scheduler.scheduleWithFixedDelay("recording", this::flushRecording,
+                flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+
+        registerMetrics();
+
+        // task run counts and times are reported periodically
+        long statsInterval = getIntProperty("scheduler.stats.interval", 300000);
+        scheduler.scheduleAtFixedRate("stats", this::logStats, statsInterval, statsInterval, TimeUnit.MILLISECONDS);
+    }
+
+    // stops a station started in a jvm that keeps running
+    void stop() {
+
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        shutdown();
+    }
+
+    private void shutdown() {
+
+        logger.info("ambient station is shutting down");
+
+        if (httpServer != null) {
+            httpServer.close();
+        }
+        close(sseServer, "live stream");
+
+        channelSamplers.forEach(FixedRateSampler::stop);
+        if (sampler != null) {
+            sampler.stop();
+        }
+        if (replay != null && !replayFinished) {
+            replay.stop();
+            try {
+                replayThread.join(5000);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!scheduler.shutdown(5, TimeUnit.SECONDS)) {
+            logger.warning("some station tasks could not be stopped");
+        }
+        logStats();
+
+        close(connectionManager, "connection with the external publisher");
+        close(sampleBuffer, "sample buffer");
+
+        if (flightRecording != null) {
+            flightRecording.close();
+        }
+
+        close(recorder, "recording");
+        close(history, "history");
+
+        try {
+            setLed(greenLed, false);
+            setLed(blueLed, false);
+        } catch (IOException ex) {
+            logger.severe(String.format("led could not be set: %s", ex.getMessage()));
+        }
+        clearLcd();
+    }
+
+    // closes a part of the station on shutdown, failures are only logged
+    private void close(Closeable resource, String what) {
+
+        if (resource == null) {
+            return;
+        }
+        try {
+            resource.close();
+        } catch (IOException ioe) {
+            logger.severe(String.format("%s could not be closed: %s", what, ioe.getMessage()));
+        }
+    }
+
+    private void logStats() {
+
+        scheduler.logTaskStats();
+        if (sampler != null) {
+            sampler.logStats();
+        }
+        channelSamplers.forEach(FixedRateSampler::logStats);
+
+        logger.info(String.format("publishing stats - buffered=%d dropped=%d",
+            sampleBuffer.size(), sampleBuffer.getDroppedCount()));
+
+        if (reportByException != null) {
+            logger.info(String.format("report by exception stats - reported=%d suppressed=%d",
+                reportByException.getReportedCount(), reportByException.getSuppressedCount()));
+        }
+
+        connectionManager.logStats();
+
+        if (history != null) {
+            history.logStats();
+        }
+
+        if (recorder != null) {
+            logger.info(String.format("recording stats - records=%d", recorder.getRecordCount()));
+        }
+
+        if (flightRecording != null) {
+            flightRecording.logStats();
+        }
+
+        logger.info(String.format("lcd stats - writes=%d skipped=%d",
+            lcdRenderer.getWriteCount(), lcdRenderer.getSkippedCount()));
+
+        if (replay != null) {
+            logger.info(String.format("replay stats - replayed=%d", replay.getReplayedCount()));
+        }
+
+        if (httpServer != null) {
+            httpServer.logStats();
+        }
+
+        if (sseServer != null) {
+            sseServer.logStats();
+        }
+    }
+
+    private void registerMetrics() {
+
+        metrics.operation("read_temperature_humidity", temperatureHumidityReads);
+        metrics.operation("read_air_quality", airQualityReads);
+        metrics.operation("read_light", lightReads);
+        metrics.operation("read_sound", soundReads);
+        metrics.operation("read_motion", motionReads);
+        metrics.operation("read_button", buttonReads);
+        metrics.operation("lcd_text", lcdTextWrites);
+        metrics.operation("lcd_colour", lcdColourWrites);
+        metrics.operation("led", ledWrites);
+        metrics.operation("publish", publishes);
+        metrics.operation("connect", connectionManager.getConnectMetrics());
+
+        List<FixedRateSampler> samplers = new ArrayList<>(channelSamplers);
+        if (sampler != null) {
+            samplers.add(sampler);
+        }
+        for (FixedRateSampler each : samplers) {
+            String labels = MetricsRegistry.label("sampler", each.getName());
+            metrics.histogram("sampler_jitter", "Delay of sampler runs from their slot.", labels, each.getJitter());
+            metrics.counter("sampler_overruns", "Sampler runs longer than their period.", labels, each::getOverruns);
+            metrics.counter("sampler_skipped_slots", "Sampler slots skipped after overruns.", labels, each::getSkippedSlots);
+        }
+
+        metrics.counter("lcd_skipped_writes", "Lcd writes skipped as the lcd already showed them.", null,
+            lcdRenderer::getSkippedCount);
+        metrics.gauge("buffered_samples", "Samples waiting to be published.", null, sampleBuffer::size);
+        metrics.counter("dropped_samples", "Samples dropped from a full buffer.", null, sampleBuffer::getDroppedCount);
+        if (reportByException != null) {
+            metrics.counter("reported_samples", "Samples reported by exception.", null, reportByException::getReportedCount);
+            metrics.counter("suppressed_samples", "Samples not reported by exception.", null, reportByException::getSuppressedCount);
+        }
+        metrics.gauge("publisher_connected", "Whether the external publisher is connected.", null,
+            () -> connectionManager.getState() == ConnectionState.CONNECTED ? 1 : 0);
+        for (Handler handler : Logger.getLogger("").getHandlers()) {
+            if (handler instanceof AsyncHandler) {
+                AsyncHandler logHandler = (AsyncHandler) handler;
+                metrics.counter("log_dropped_records", "Log records dropped from a full log queue.", null, logHandler::getDroppedCount);
+                metrics.gauge("log_queued_records", "Log records waiting to be written.", null, logHandler::getQueuedCount);
             }
-        }).start();
+        }
+        if (sseServer != null) {
+            metrics.gauge("stream_clients", "Clients of the live stream.", null, sseServer::getClientCount);
+        }
+    }
+
+    private void startChannelSampler(String channel, Duration defInterval, Runnable sample) {
+
+        Duration interval = getDurationProperty("sample.interval." + channel, defInterval);
+
+        logger.info(String.format("%s sampled every %d ms", channel, interval.toMillis()));
+
+        FixedRateSampler channelSampler = new FixedRateSampler(scheduler, "sample-" + channel,
+            interval.toNanos(), TimeUnit.NANOSECONDS, (slot, slotNanos, slotTime) -> sample.run());
+        channelSamplers.add(channelSampler);
+        channelSampler.start();
+    }
+
+    // the rest of the sampling cycle, once the readings are in the builder
+    // returns whether the sample was buffered for publishing
+    private boolean processAmbientData() {
+
+        updateStatistics();
+        // readers always see one whole cycle
+        AmbientData snapshot = ambientDataBuilder.build();
+        ambientData.set(snapshot);
+        logAmbientData(snapshot);
+        recordHistory(snapshot);
+        boolean buffered = reportByException == null || reportByException.shouldReport(snapshot);
+        if (buffered) {
+            bufferAmbientData(snapshot);
+        }
+        if (httpServer != null) {
+            httpServer.update(snapshot, connectionManager.getState(), sampleBuffer.size());
+        }
+        if (sseServer != null) {
+            sseServer.publish(snapshot);
+        }
+        return buffered;
+    }
+
+    // returns false, leaving the builder untouched, until every channel
+    // has been read once
+    private boolean readAmbientData(long slotTime) {
+
+        // channels keep their latest readings updated on their own schedule
+        GroveTemperatureAndHumidityValue temperatureHumidityValue = latestTemperatureHumidity;
+        double airQualityValue = latestAirQuality;
+        double lightValue = latestLight;
 
-        // wait for some data to be collected
-        pause(500);
+        // sound is reduced from all the samples in the sound window
+        SoundLevels soundLevels = soundWindow.reduce();
 
-        // data is published externally on a separate thread
-        new Thread(() -> {
-            while (keepRunning) {
-                publishExternal();
-                pause(5000);
+        if (!firstReadingsTaken) {
+            if (temperatureHumidityValue == null || Double.isNaN(airQualityValue) || Double.isNaN(lightValue)
+                    || soundLevels.getSamples() == 0) {
+                return false;
             }
-        }).start();
+            firstReadingsTaken = true;
+            logger.info("every channel has been read, sampling cycles start");
+        }
+
+        ambientDataBuilder.setTemperatureValue(temperatureHumidityValue.getTemperature());
+        ambientDataBuilder.setHumidityValue(temperatureHumidityValue.getHumidity());
+        ambientDataBuilder.setAirQualityValue(airQualityValue); // also sets air quality (qualitative)
+        ambientDataBuilder.setLightValue(lightValue);
+
+        // motion is latched so a short detection between cycles is not lost
+        boolean motionDetected = motionLatch.getAndSet(false);
+        ambientDataBuilder.setMotionDetected(motionDetected);
+
+        ambientDataBuilder.setSoundLevels(soundLevels);
+
+        if (recorder != null) {
+            recordReadings(slotTime, temperatureHumidityValue, airQualityValue, lightValue, motionDetected, soundLevels);
+        }
+
+        blinkLed(greenLed);
+        return true;
     }
 
-    private void pause(long millisecs) {
+    private void recordReadings(long slotTime, GroveTemperatureAndHumidityValue temperatureHumidityValue,
+            double airQualityValue, double lightValue, boolean motionDetected, SoundLevels soundLevels) {
 
+        rawReadings.set(slotTime,
+            temperatureHumidityValue.getTemperature(),
+            temperatureHumidityValue.getHumidity(),
+            airQualityValue, lightValue,
+            soundLevels.getRms(), soundLevels.getPeak(), soundLevels.getLeq(), soundLevels.getSamples(),
+            motionDetected);
         try {
-            Thread.sleep(millisecs);
-        } catch (InterruptedException e) {
+            recorder.record(rawReadings);
+        } catch (IOException ioe) {
+            logger.severe(String.format("readings could not be recorded: %s", ioe.getMessage()));
+        }
+    }
+
+    private void runReplay() {
+
+        replay.run();
+        replayFinished = true;
+
+        // a fast replay gets ahead of the publisher, so buffered samples
+        // are given some time to be published before exiting
+        long drainDeadline = System.nanoTime() + getDurationProperty("replay.drain", Duration.ofSeconds(30)).toNanos();
+        while (sampleBuffer.size() > 0 && System.nanoTime() - drainDeadline < 0) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        logStats();
+        if (Boolean.parseBoolean(properties.getProperty("replay.exit", "true"))) {
+            // the shutdown hook closes everything as usual
+            System.exit(0);
+        }
+    }
+
+    private void replayCycle(long slot, RawReadings readings) {
+
+        SamplingCycleEvent event = new SamplingCycleEvent();
+        event.begin();
+        ambientDataBuilder.setSequence(slot);
+        ambientDataBuilder.setSlotTime(readings.getTime());
+        ambientDataBuilder.setSampleNanos(System.nanoTime());
+        if (!Double.isNaN(readings.getTemperature())) {
+            ambientDataBuilder.setTemperatureValue(readings.getTemperature());
+            ambientDataBuilder.setHumidityValue(readings.getHumidity());
         }
+        ambientDataBuilder.setAirQualityValue(readings.getAirQuality());
+        ambientDataBuilder.setLightValue(readings.getLight());
+        ambientDataBuilder.setMotionDetected(readings.isMotion());
+        ambientDataBuilder.setSoundLevels(new SoundLevels(readings.getSoundRms(), readings.getSoundPeak(),
+            readings.getSoundLeq(), readings.getSoundSamples()));
+        boolean buffered = processAmbientData();
+        event.finish(slot, readings.getTime(), 0, buffered, sampleBuffer.size());
     }
 
-    private void readAmbientData() {
+    private void sampleTemperatureHumidity() {
 
         try {
-            GroveTemperatureAndHumidityValue temperatureHumidityValue =
-                readTemperatureHumidity();
-            ambientData.setTemperatureValue(temperatureHumidityValue.getTemperature());
-            ambientData.setHumidityValue(temperatureHumidityValue.getHumidity());
-        } catch (IOException ex) {
+            latestTemperatureHumidity = readTemperatureHumidity();
+        } catch (IOException | InterruptedException ex) {
             logger.severe(String.format("temperature and humidity could not be read: %s", ex.getMessage()));
         }
+    }
+
+    private void sampleAirQuality() {
 
         try {
-            ambientData.setAirQualityValue(readAirQuality()); // also sets air quality (qualitative)
-        } catch (IOException ex) {
+            latestAirQuality = readAirQuality();
+        } catch (IOException | InterruptedException ex) {
             logger.severe(String.format("air quality could not be read: %s", ex.getMessage()));
         }
+    }
+
+    private void sampleLight() {
 
         try {
-            ambientData.setLightValue(readLight());
-        } catch (IOException ex) {
+            latestLight = readLight();
+        } catch (IOException | InterruptedException ex) {
             logger.severe(String.format("light could not be read: %s", ex.getMessage()));
         }
+    }
+
+    private void sampleSound() {
 
         try {
-            ambientData.setSoundValue(readSound());
-        } catch (IOException ex) {
-            logger.severe(String.format("sound could not be read: %s", ex.getMessage()));
+            soundWindow.add(System.nanoTime(), (int) readSound());
+        } catch (IOException | InterruptedException ex) {
+            // sound is read many times per second, a failing bus logs once in a while
+            soundFailures++;
+            long now = System.nanoTime();
+            if (soundFailureLogNanos == 0 || now - soundFailureLogNanos >= SOUND_FAILURE_LOG_NANOS) {
+                logger.severe(String.format("sound could not be read, %d failures since last logged: %s",
+                    soundFailures, ex.getMessage()));
+                soundFailures = 0;
+                soundFailureLogNanos = now;
+            }
         }
+    }
+
+    private SoundWindow createSoundWindow() {
+
+        // the window holds enough samples to cover the configured window length
+        // at the sound sampling rate, a short window falls back to the last reading
+        // samples are evicted by age as well, so when reads are slower than the
+        // interval the window still covers its length and not more
+        Duration window = getDurationProperty("sample.sound.window", Duration.ofSeconds(5));
+        Duration interval = getDurationProperty("sample.interval.sound", Duration.ofMillis(100));
+        int capacity = (int) Math.max(1, window.toNanos() / interval.toNanos());
+
+        logger.info(String.format("sound window of %d ms holds up to %d samples", window.toMillis(), capacity));
+
+        return new SoundWindow(capacity, window);
+    }
+
+    private void sampleMotion() {
 
         try {
-            ambientData.setMotionDetected(readMotionDetected());
+            if (readMotionDetected()) {
+                motionLatch.set(true);
+            }
         } catch (IOException | InterruptedException ex) {
             logger.severe(String.format("motion detection could not be read: %s", ex.getMessage()));
         }
+    }
 
-        blinkLed(greenLed);
+    private GroveTemperatureAndHumidityValue readTemperatureHumidity() throws IOException, InterruptedException {
+        return readDevice("temperatureHumidity", temperatureHumidityPort, temperatureHumidityReads, temperatureHumiditySensor::get);
+    }
+
+    private double readAirQuality() throws IOException, InterruptedException {
+        return readDevice("airQuality", airQualityPort, airQualityReads, airQualitySensor::get);
     }
 
-    private GroveTemperatureAndHumidityValue readTemperatureHumidity() throws IOException {
+    private double readLight() throws IOException, InterruptedException {
+        return readDevice("light", lightPort, lightReads, lightSensor::get);
+    }
 
-        // read temperature and humidity from sensor
-        return temperatureHumiditySensor.get();
+    private double readSound() throws IOException, InterruptedException {
+        return readDevice("sound", soundPort, soundReads, soundSensor::get);
     }
 
-    private double readAirQuality() throws IOException {
+    private boolean readMotionDetected() throws IOException, InterruptedException {
+        return readDevice("motion", motionPort, motionReads, motionSensor::get);
+    }
 
-        // read air quality from sensor
-        return airQualitySensor.get();
+    private boolean readButton() throws IOException, InterruptedException {
+        return readDevice("button", buttonPort, buttonReads, button::get);
     }
 
-    private double readLight() throws IOException {
+    // times a device read, counting failures and recording it as a flight event
+    private <T> T readDevice(String device, int port, OperationMetrics operation, DeviceOperation<T> read)
+            throws IOException, InterruptedException {
 
-        // read ambient light from sensor
-        return lightSensor.get();
+        DeviceReadEvent event = new DeviceReadEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            T value = read.run();
+            operation.success(start);
+            event.finish(device, port, true);
+            return value;
+        } catch (IOException | InterruptedException ex) {
+            failed(operation, start);
+            event.finish(device, port, false);
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw ex;
+        }
     }
 
-    private double readSound() throws IOException {
+    private void setLed(GroveLed led, boolean value) throws IOException {
 
-        // read ambient sound from sensor
-        return soundSensor.get();
+        long start = System.nanoTime();
+        try {
+            led.set(value);
+            ledWrites.success(start);
+        } catch (IOException ex) {
+            failed(ledWrites, start);
+            throw ex;
+        }
     }
 
-    private boolean readMotionDetected() throws IOException, InterruptedException {
+    private void setLcdText(String text) throws IOException {
+        writeLcd("text", text, lcdTextWrites, () -> lcd.setText(text));
+    }
 
-        return motionSensor.get();
+    private void setLcdColour(int r, int g, int b) throws IOException {
+        writeLcd("colour", null, lcdColourWrites, () -> lcd.setRGB(r, g, b));
     }
 
-    private void logAmbientData() {
+    // times an lcd write, counting failures and recording it as a flight event
+    private void writeLcd(String kind, String text, OperationMetrics operation, LcdOperation write) throws IOException {
 
-        StringBuffer message = new StringBuffer();
-        message.append("station ambient data at: %s%n");
-        message.append("- temperature read from sensor: %3.1f%n");
-        message.append("- humidity read from sensor: %3.1f%n");
-        message.append("- ambient light read from sensor: %.0f%n");
-        message.append("- ambient sound read from sensor: %.0f%n");
-        message.append("- air quality read from sensor: %.0f / %s%n");
-        message.append("- motion detected: %b");
+        LcdWriteEvent event = new LcdWriteEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            write.run();
+            operation.success(start);
+            event.finish(kind, text, true);
+        } catch (IOException ex) {
+            failed(operation, start);
+            event.finish(kind, text, false);
+            throw ex;
+        }
+    }
+
+    // counts a failed operation, which may trigger a flight recording dump
+    private void failed(OperationMetrics operation, long start) {
+
+        operation.failure(start);
+        if (flightRecording != null) {
+            flightRecording.error();
+        }
+    }
+
+    private void logAmbientData(AmbientData data) {
+
+        cyclesSinceLog++;
+        boolean changed = data.getAirQuality() != lastLoggedAirQuality || data.isMotionDetected() != lastLoggedMotion;
+        Level level = changed || cyclesSinceLog >= logSummaryCycles ? Level.INFO : Level.FINE;
+        // nothing is formatted unless it is going to be written
+        if (!logger.isLoggable(level)) {
+            return;
+        }
 
-        logger.info(String.format(message.toString(),
+        logger.log(level, String.format(SAMPLE_LOG_FORMAT,
             LocalDateTime.now().toString(),
-            ambientData.getTemperatureValue(),
-            ambientData.getHumidityValue(),
-            ambientData.getLightValue(),
-            ambientData.getSoundValue(),
-            ambientData.getAirQualityValue(),
-            ambientData.getAirQuality(),
-            ambientData.isMotionDetected()));
+            cyclesSinceLog,
+            data.getTemperatureValue(),
+            data.getHumidityValue(),
+            data.getLightValue(),
+            data.getSoundRms(),
+            data.getSoundPeak(),
+            data.getSoundLeq(),
+            data.getAirQualityValue(),
+            data.getAirQuality(),
+            data.isMotionDetected()));
+
+        cyclesSinceLog = 0;
+        lastLoggedAirQuality = data.getAirQuality();
+        lastLoggedMotion = data.isMotionDetected();
     }
 
-    private void checkRanges() {
+    private void updateStatistics() {
 
-        ambientData.checkRanges();
+        if (statisticsResetRequested.getAndSet(false)) {
+            rollingStatistics.clear();
+        }
+        ambientDataBuilder.updateStatistics(rollingStatistics);
     }
 
-    private void blinkLed(GroveLed led) {
+    private RollingStatistics createRollingStatistics() {
 
-        new Thread(() -> {
-            try {
-                // blink the led for 200 ms to show that data was actually sampled
-                led.set(true);
-                pause(200);
-                led.set(false);
-            }
-            catch (IOException ex) {
-                logger.severe(String.format("led could not be set: %s", ex.getMessage()));
+        // min, max and mean of each channel over the configured windows
+        // each window slides one bucket at a time
+        List<Duration> windows = new ArrayList<>();
+        for (String window : properties.getProperty("stats.windows", "1m, 1h, 24h").split(",")) {
+            if (!window.isBlank()) {
+                windows.add(Durations.parse(window));
             }
-        }).start();
+        }
+        int buckets = getIntProperty("stats.buckets", 120);
+
+        logger.info(String.format("statistics kept over %s in %d buckets each", windows, buckets));
+
+        return new RollingStatistics(windows, buckets);
+    }
+
+    private void blinkLed(GroveLed led) {
+
+        // blink the led for 200 ms to show that data was actually sampled
+        scheduleLed(led, true, 0);
+        scheduleLed(led, false, 200);
     }
 
     private void blinkLedTwice(GroveLed led) {
 
-        new Thread(() -> {
+        // blink the led twice for 100 ms to show that data was actually sampled
+        scheduleLed(led, true, 0);
+        scheduleLed(led, false, 100);
+        scheduleLed(led, true, 200);
+        scheduleLed(led, false, 300);
+    }
+
+    private void scheduleLed(GroveLed led, boolean value, long delay) {
+
+        // led changes are short tasks, the scheduler does the waiting
+        scheduler.schedule("led", () -> {
             try {
-                // blink the led twice for 100 ms to show that data was actually sampled
-                led.set(true);
-                pause(100);
-                led.set(false);
-                pause(100);
-                led.set(true);
-                pause(100);
-                led.set(false);
+                setLed(led, value);
             }
             catch (IOException ex) {
                 logger.severe(String.format("led could not be set: %s", ex.getMessage()));
             }
-        }).start();
+        }, delay, TimeUnit.MILLISECONDS);
     }
 
     private void checkPublishLcd() {
 
-        new Thread(() -> {
+        // the button is not read while the pages are shown
+        if (lcdPagesShowing.get()) {
+            return;
+        }
+        try {
+            if (readButton()) {
+                lcdPagesShowing.set(true);
+                showLcdPage(createLcdPages(), 0);
+            }
+        }
+        catch (IOException | InterruptedException ex) {
+            logger.severe(String.format("button state could not be read: %s", ex.getMessage()));
+        }
+    }
+
+    // shows one page and schedules the next one, the scheduler does the waiting
+    private void showLcdPage(List<String> pages, int index) {
+
+        if (index < pages.size()) {
             try {
-                if (button.get()) {
-                    if (!lcdPublishing) {
-                        lcdPublishing = true;
-                        publishLcd();
-                        if (button.get()) {
-                            resetChanges();
-                        }
-                        clearLcd();
-                        lcdPublishing = false;
-                    }
-                }
+                lcdRenderer.text(pages.get(index));
             }
-            catch (IOException | InterruptedException ex) {
-                logger.severe(String.format("button state could not be read: %s", ex.getMessage()));
+            catch (IOException ex) {
+                logger.severe(String.format("lcd text could not be written: %s", ex.getMessage()));
             }
-        }).start();
+            scheduler.schedule("lcd", () -> showLcdPage(pages, index + 1), LCD_PAGE_MILLIS, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        // the button held after the last page resets the statistics
+        try {
+            if (readButton()) {
+                resetChanges();
+                scheduler.schedule("lcd", this::endLcdPages, LCD_PAGE_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+        catch (IOException | InterruptedException ex) {
+            logger.severe(String.format("button state could not be read: %s", ex.getMessage()));
+        }
+        endLcdPages();
     }
 
-    private void publishLcd() {
+    private void endLcdPages() {
+
+        clearLcd();
+        lcdPagesShowing.set(false);
+    }
+
+    // sets the colour for the latest sampling cycle and returns its pages,
+    // all of them showing that same cycle
+    private List<String> createLcdPages() {
+
+        List<String> pages = new ArrayList<>();
+        AmbientData data = ambientData.get();
+        if (data == null) {
+            return pages;
+        }
 
         // the temperature range in degrees celsius
         // used for reference for background colour
@@ -356,12 +1117,12 @@ public class AmbientStationRunner {
         int r, g, b;
 
         // set the fade value depending on where we are in the temperature range
-        if (ambientData.getTemperatureValue() <= minTempRange) {
+        if (data.getTemperatureValue() <= minTempRange) {
             fade = 0.0f;
-        } else if (ambientData.getTemperatureValue() >= maxTempRange) {
+        } else if (data.getTemperatureValue() >= maxTempRange) {
             fade = 1.0f;
         } else {
-            fade = (ambientData.getTemperatureValue() - minTempRange) / (maxTempRange - minTempRange);
+            fade = (data.getTemperatureValue() - minTempRange) / (maxTempRange - minTempRange);
         }
 
         // fade the colour components separately
@@ -371,173 +1132,276 @@ public class AmbientStationRunner {
 
         // apply the calculated background colour
         try {
-            lcd.setRGB(r, g, b);
+            lcdRenderer.colour(r, g, b);
         }
         catch (IOException ex) {
             logger.severe(String.format("lcd colour could not be set: %s", ex.getMessage()));
         }
 
-        // display the current date/time
-        write16x2(
-            "station data",
-            LocalDateTime.now().toString());
-
-        pause(1000);
+        // statistics shown as min, mean and max over one window
+        WindowStats statistics = data.getStatistics();
+        int window = lcdStatisticsWindow < statistics.getWindowCount() ? lcdStatisticsWindow : -1;
+
+        // the current date/time
+        pages.add(LcdRenderer.frame(
+            window < 0 ? "station data" : "station data " + statistics.getLabel(window),
+            LocalDateTime.now().toString()));
+
+        // the temperature data
+        pages.add(LcdRenderer.frame(
+            String.format("temperature %.1f", data.getTemperatureValue()),
+            formatStatistics(statistics, window, Channel.TEMPERATURE)));
+
+        // the humidity data
+        pages.add(LcdRenderer.frame(
+            String.format("humidity %.1f", data.getHumidityValue()),
+            formatStatistics(statistics, window, Channel.HUMIDITY)));
+
+        // the ambient light data
+        pages.add(LcdRenderer.frame(
+            String.format("light %.0f", data.getLightValue()),
+            formatStatistics(statistics, window, Channel.LIGHT)));
+
+        // the ambient sound data
+        pages.add(LcdRenderer.frame(
+            String.format("snd %.0f pk %.0f", data.getSoundRms(), data.getSoundPeak()),
+            formatStatistics(statistics, window, Channel.SOUND)));
+
+        // the air quality data
+        pages.add(LcdRenderer.frame(
+            String.format("air quality %.0f", data.getAirQualityValue()),
+            data.getAirQuality().toString()));
+
+        // the motion detection status
+        pages.add(LcdRenderer.frame(
+            "motion detected",
+            String.format("%b", data.isMotionDetected())));
 
-        // display the temperature data on the LCD
-        write16x2(
-            String.format("temperature %.1f", ambientData.getTemperatureValue()),
-            String.format("mn %.1f mx %.1f", ambientData.getMinTemperatureObserved(), ambientData.getMaxTemperatureObserved()));
+        return pages;
+    }
 
-        pause(1000);
+    private static String formatStatistics(WindowStats statistics, int window, Channel channel) {
 
-        // display the humidity data on the LCD
-        write16x2(
-            String.format("humidity %.1f", ambientData.getHumidityValue()),
-            String.format("mn %.1f mx %.1f", ambientData.getMinHumidityObserved(), ambientData.getMaxHumidityObserved()));
+        if (window < 0) {
+            return "";
+        }
+        String format = channel.getPrecision() == 1 ? "%.1f %.1f %.1f" : "%.0f %.0f %.0f";
+        return String.format(format, statistics.getMin(window, channel),
+            statistics.getMean(window, channel), statistics.getMax(window, channel));
+    }
 
-        pause(1000);
+    private void resetChanges() {
 
-        // display the ambient light data on the LCD
-        write16x2(
-            String.format("light %.0f", ambientData.getLightValue()),
-            String.format("mn %.0f mx %.0f", ambientData.getMinLightObserved(), ambientData.getMaxLightObserved()));
+        // applied by the sampling cycle, which owns the statistics
+        statisticsResetRequested.set(true);
 
-        pause(1000);
+        try {
+            lcdRenderer.render("statistics reset", "");
+        }
+        catch (IOException ex) {
+            logger.severe(String.format("lcd text could not be written: %s", ex.getMessage()));
+        }
+    }
 
-        // display the ambient sound data on the LCD
-        write16x2(
-            String.format("sound %.0f", ambientData.getSoundValue()),
-            String.format("mn %.0f mx %.0f", ambientData.getMinSoundObserved(), ambientData.getMaxSoundObserved()));
+    private void clearLcd() {
 
-        pause(1000);
+        try {
+            lcdRenderer.clear();
+        }
+        catch (IOException ex) {
+            logger.severe(String.format("lcd could not be cleared: %s", ex.getMessage()));
+        }
+    }
 
-        // display the air quality data on the LCD
-        write16x2(
-            String.format("air quality %.0f", ambientData.getAirQualityValue()),
-            ambientData.getAirQuality().toString());
+    private SampleBuffer createSampleBuffer() throws IOException {
 
-        pause(1000);
+        // a durable outbox survives broker outages and restarts
+        // otherwise samples are buffered in memory only
+        String outboxDir = properties.getProperty("outbox.dir");
+        if (outboxDir == null || outboxDir.isBlank()) {
+            return new MemorySampleBuffer(getIntProperty("publisher.buffer.capacity", 1000));
+        }
+        return new MappedOutbox(Paths.get(outboxDir.trim()),
+            getIntProperty("outbox.segment.size", 1048576),
+            getIntProperty("outbox.segments", 16),
+            Boolean.parseBoolean(properties.getProperty("outbox.force", "false")));
+    }
 
-        // display the motion detection status
-        write16x2(
-            "motion detected",
-            String.format("%b", ambientData.isMotionDetected()));
+    private GrovePi createGrovePi() throws IOException {
 
-        pause(1000);
+        String impl = properties.getProperty("grovepi.impl", "pi4j").trim();
+        if ("simulated".equalsIgnoreCase(impl)) {
+            return new SimulatedGrovePi(properties);
+        }
+        if ("replay".equalsIgnoreCase(impl)) {
+            // sensor readings come from the recording, the simulated board
+            // only takes the leds, the lcd and the button
+            replay = new Replay(Paths.get(properties.getProperty("replay.file", "readings.rec").trim()),
+                Replay.parseSpeed(properties.getProperty("replay.speed")), this::replayCycle);
+            return new SimulatedGrovePi(properties);
+        }
+        if (!"pi4j".equalsIgnoreCase(impl)) {
+            throw new IllegalArgumentException(String.format("unknown grovepi implementation: %s", impl));
+        }
+        return new GrovePi4J();
     }
 
-    private void write16x2(String topLine, String bottomLine) {
+    private StationRecording createFlightRecording() throws IOException {
 
-        try {
-            lcd.setText(padRight(topLine, 16, ' ') + padRight(bottomLine, 16, ' '));
+        // the flight recording runs only when a dump directory is configured
+        String flightDir = properties.getProperty("flight.dir");
+        if (flightDir == null || flightDir.isBlank()) {
+            return null;
         }
-        catch (IOException ex) {
-            logger.severe(String.format("lcd text could not be written: %s", ex.getMessage()));
+
+        try {
+            return new StationRecording(Paths.get(flightDir.trim()),
+                properties.getProperty("flight.settings", "default").trim(),
+                getDurationProperty("flight.max.age", Duration.ofHours(1)),
+                Long.parseLong(properties.getProperty("flight.max.bytes", "33554432").trim()),
+                getDurationProperty("flight.device.threshold", Duration.ZERO),
+                getIntProperty("flight.error.threshold", 10),
+                getDurationProperty("flight.error.window", Duration.ofMinutes(1)),
+                getDurationProperty("flight.dump.interval", Duration.ofMinutes(10)),
+                task -> scheduler.execute("flight-dump", task));
+        } catch (ParseException pe) {
+            throw new IOException(String.format("flight recording settings could not be read: %s", pe.getMessage()), pe);
         }
     }
 
-    private static String padRight(String source, int length, char pad) {
+    private ReadingsRecorder createRecorder() throws IOException {
 
-        String temp = (source == null) ? "" : source;
+        // readings are recorded only when a file is configured
+        String recordFile = properties.getProperty("record.file");
+        if (recordFile == null || recordFile.isBlank()) {
+            return null;
+        }
+        return new ReadingsRecorder(Paths.get(recordFile.trim()));
+    }
 
-        int difLength = length - temp.length();
+    private void flushRecording() {
 
-        if (difLength > 0) {
-            temp = temp + repeatCharacter(pad, difLength);
-        } else {
-            temp = temp.substring(0, length);
+        try {
+            recorder.flush();
+        } catch (IOException ioe) {
+            logger.severe(String.format("readings could not be recorded: %s", ioe.getMessage()));
         }
-
-        return temp;
     }
 
-    private static String repeatCharacter(char repeat, int length) {
+    private StationHistory createHistory() throws IOException {
 
-        if (length <= 0) {
-            return "";
+        // history is kept only when a directory is configured
+        String historyDir = properties.getProperty("history.dir");
+        if (historyDir == null || historyDir.isBlank()) {
+            return null;
         }
 
-        StringBuilder sb = new StringBuilder(length);
+        Duration maxAge = getDurationProperty("history.retention.age", Duration.ZERO);
+        StationHistory result = new StationHistory(Paths.get(historyDir.trim()),
+            getIntProperty("history.block.size", 4096),
+            Long.parseLong(properties.getProperty("history.retention.bytes", "4194304").trim()),
+            maxAge.isZero() ? null : maxAge,
+            Boolean.parseBoolean(properties.getProperty("history.force", "false")));
 
-        for (int i = 0; i < length; i++) {
-            sb.append(repeat);
-        }
+        logger.info(String.format("sensor history is kept at: %s", historyDir.trim()));
 
-        return sb.toString();
+        return result;
     }
 
-    private void resetChanges() {
-
-        ambientData.resetRanges();
+    private StationHttpServer createHttpServer() throws IOException {
 
-        try {
-            lcd.setText("ranges reset");
-        }
-        catch (IOException ex) {
-            logger.severe(String.format("lcd text could not be written: %s", ex.getMessage()));
+        // the endpoints are enabled only when a port is configured
+        String port = properties.getProperty("http.port");
+        if (port == null || port.isBlank()) {
+            return null;
         }
 
-        pause(1000);
+        String address = properties.getProperty("http.address", "").trim();
+        InetSocketAddress socketAddress = address.isEmpty()
+            ? new InetSocketAddress(Integer.parseInt(port.trim()))
+            : new InetSocketAddress(address, Integer.parseInt(port.trim()));
+
+        return new StationHttpServer(socketAddress,
+            getIntProperty("http.threads", 2),
+            getDurationProperty("http.health.stale", Duration.ofSeconds(10)),
+            metrics);
     }
 
-    private void clearLcd() {
+    private SseServer createSseServer() throws IOException {
 
-        try {
-            lcd.setRGB(0, 0, 0);
-            lcd.setText("");
-        }
-        catch (IOException ex) {
-            logger.severe(String.format("lcd could not be cleared: %s", ex.getMessage()));
+        // the live stream is enabled only when a port is configured
+        String port = properties.getProperty("sse.port");
+        if (port == null || port.isBlank()) {
+            return null;
         }
+
+        String address = properties.getProperty("http.address", "").trim();
+        InetSocketAddress socketAddress = address.isEmpty()
+            ? new InetSocketAddress(Integer.parseInt(port.trim()))
+            : new InetSocketAddress(address, Integer.parseInt(port.trim()));
+
+        return new SseServer(socketAddress,
+            getIntProperty("sse.clients", 8),
+            getIntProperty("sse.client.queue", 16),
+            SlowClientPolicy.fromProperty(properties.getProperty("sse.slow")));
     }
 
-    private void publishExternal() {
+    private void recordHistory(AmbientData data) {
 
+        if (history == null) {
+            return;
+        }
         try {
-            if (publisher == null) {
-                openExternalPublisher();
-            }
-            if (publisher != null) {
-                publisher.publish(ambientData.toJson());
-                blinkLedTwice(blueLed);
-            }
+            history.record(data);
         } catch (IOException ioe) {
-            logger.severe(String.format("information could not be published externally: %s", ioe.getMessage()));
-            closeExternalPublisher();
+            logger.severe(String.format("sample could not be recorded in the history: %s", ioe.getMessage()));
         }
     }
 
-    private void openExternalPublisher() {
+    private void flushHistory() {
 
         try {
-            if (publisher == null) {
-                publisher = PublisherFactory.getInstance().getPublisher(properties.getProperty("publisher.impl"));
+            history.flush();
+        } catch (IOException ioe) {
+            logger.severe(String.format("history could not be written: %s", ioe.getMessage()));
+        }
+    }
 
-                // don't trust the publisher will not make
-                // any changes in the properties
-                // actually IBM Watson IoT client does
-                Properties copy = new Properties();
-                copy.putAll(properties);
+    private ReportByException createReportByException() {
 
-                publisher.connect(copy);
-            }
-        } catch (IOException ioe) {
-            logger.severe(String.format("connection with the external publisher could not be established: %s", ioe.getMessage()));
-            publisher = null;
+        // every sample is published unless report by exception is enabled
+        String mode = properties.getProperty("publisher.mode", "all").trim();
+        if (!"exception".equalsIgnoreCase(mode)) {
+            return null;
         }
+
+        ReportByException result = new ReportByException(
+            Deadband.parse(properties.getProperty("publisher.deadband.temp")),
+            Deadband.parse(properties.getProperty("publisher.deadband.humi")),
+            Deadband.parse(properties.getProperty("publisher.deadband.light")),
+            Deadband.parse(properties.getProperty("publisher.deadband.sound")),
+            Deadband.parse(properties.getProperty("publisher.deadband.airq")),
+            getDurationProperty("publisher.heartbeat", Duration.ofMinutes(5)));
+
+        logger.info(String.format("samples are published by exception: %s", result));
+
+        return result;
     }
 
-    private void closeExternalPublisher() {
+    private Backoff createBackoff() {
+
+        return new Backoff(
+            getDurationProperty("publisher.connect.backoff.initial", Duration.ofSeconds(1)),
+            getDurationProperty("publisher.connect.backoff.max", Duration.ofMinutes(5)),
+            Double.parseDouble(properties.getProperty("publisher.connect.backoff.jitter", "0.5").trim()));
+    }
+
+    private void bufferAmbientData(AmbientData data) {
 
         try {
-            if (publisher != null) {
-                publisher.close();
-            }
+            sampleBuffer.append(data);
         } catch (IOException ioe) {
-            logger.severe(String.format("connection with the external publisher could not be closed: %s", ioe.getMessage()));
-        } finally {
-            publisher = null;
+            logger.severe(String.format("sample could not be buffered for publishing: %s", ioe.getMessage()));
         }
     }
 }
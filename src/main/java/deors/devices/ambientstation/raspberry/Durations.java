@@ -0,0 +1,78 @@
+package deors.devices.ambientstation.raspberry;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+public final class Durations {
+
+    private Durations() {
+    }
+
+    // parses durations like 20ms, 2s, 5m, 1h or 1d
+    // plain numbers are milliseconds, ISO-8601 values like PT2S are accepted too
+    public static Duration parse(String value) {
+
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("duration value is empty");
+        }
+
+        String text = value.trim().toLowerCase(Locale.ROOT);
+
+        if (text.startsWith("p")) {
+            try {
+                return Duration.parse(text.toUpperCase(Locale.ROOT));
+            } catch (DateTimeParseException ex) {
+                throw new IllegalArgumentException(String.format("invalid duration: %s", value), ex);
+            }
+        }
+
+        int unitStart = 0;
+        while (unitStart < text.length() && Character.isDigit(text.charAt(unitStart))) {
+            unitStart++;
+        }
+        if (unitStart == 0) {
+            throw new IllegalArgumentException(String.format("invalid duration: %s", value));
+        }
+
+        long amount = Long.parseLong(text.substring(0, unitStart));
+        String unit = text.substring(unitStart).trim();
+
+        switch (unit) {
+            case "":
+            case "ms":
+                return Duration.ofMillis(amount);
+            case "us":
+                return Duration.ofNanos(amount * 1000);
+            case "s":
+                return Duration.ofSeconds(amount);
+            case "m":
+                return Duration.ofMinutes(amount);
+            case "h":
+                return Duration.ofHours(amount);
+            case "d":
+                return Duration.ofDays(amount);
+            default:
+                throw new IllegalArgumentException(String.format("invalid duration unit: %s", value));
+        }
+    }
+
+    public static Duration parse(String value, Duration defValue) {
+
+        return (value == null || value.isBlank()) ? defValue : parse(value);
+    }
+
+    // formats durations in the largest unit that keeps them exact, like 1m or 1d
+    public static String format(Duration duration) {
+
+        long millis = duration.toMillis();
+        long[] sizes = { 86400000, 3600000, 60000, 1000 };
+        String[] units = { "d", "h", "m", "s" };
+        for (int i = 0; i < sizes.length; i++) {
+            if (millis != 0 && millis % sizes[i] == 0) {
+                return (millis / sizes[i]) + units[i];
+            }
+        }
+        return millis + "ms";
+    }
+}
@@ -0,0 +1,96 @@
+package deors.devices.ambientstation.raspberry;
+
+import java.io.IOException;
+
+// draws frames on the 16x2 lcd through a shadow copy of what it shows, so
+// text and colour are only written when they change
+//
+// every lcd write is a slow i2c transfer on the bus shared with the sensors;
+// the driver rewrites the whole display on every text write, so a changed
+// frame is written whole and an unchanged one not at all
+//
+// after a failed write what the lcd shows is unknown, and the next write
+// is always sent
+public class LcdRenderer {
+
+    // writes the text of the whole display
+    @FunctionalInterface
+    public interface TextWriter {
+
+        void write(String text) throws IOException;
+    }
+
+    // writes the backlight colour
+    @FunctionalInterface
+    public interface ColourWriter {
+
+        void write(int r, int g, int b) throws IOException;
+    }
+
+    public static final int COLUMNS = 16;
+
+    private final TextWriter textWriter;
+
+    private final ColourWriter colourWriter;
+
+    // what the lcd shows, null when unknown
+    private String shownText = null;
+    private int[] shownColour = null;
+
+    private long writes = 0;
+    private long skipped = 0;
+
+    public LcdRenderer(TextWriter textWriter, ColourWriter colourWriter) {
+        super();
+        this.textWriter = textWriter;
+        this.colourWriter = colourWriter;
+    }
+
+    // the text of both rows, each one padded or cut to the width of the lcd
+    public static String frame(String topLine, String bottomLine) {
+        return LcdText.padRight(topLine, COLUMNS, ' ') + LcdText.padRight(bottomLine, COLUMNS, ' ');
+    }
+
+    public void render(String topLine, String bottomLine) throws IOException {
+        text(frame(topLine, bottomLine));
+    }
+
+    public synchronized void text(String text) throws IOException {
+
+        if (text.equals(shownText)) {
+            skipped++;
+            return;
+        }
+        shownText = null;
+        textWriter.write(text);
+        shownText = text;
+        writes++;
+    }
+
+    public synchronized void colour(int r, int g, int b) throws IOException {
+
+        if (shownColour != null && shownColour[0] == r && shownColour[1] == g && shownColour[2] == b) {
+            skipped++;
+            return;
+        }
+        shownColour = null;
+        colourWriter.write(r, g, b);
+        shownColour = new int[] { r, g, b };
+        writes++;
+    }
+
+    // turns the backlight off and empties the display
+    public void clear() throws IOException {
+
+        colour(0, 0, 0);
+        text("");
+    }
+
+    public synchronized long getWriteCount() {
+        return writes;
+    }
+
+    public synchronized long getSkippedCount() {
+        return skipped;
+    }
+}
@@ -0,0 +1,40 @@
+package deors.devices.ambientstation.raspberry;
+
+// text helpers for the 16x2 lcd
+public final class LcdText {
+
+    private LcdText() {
+    }
+
+    // pads the source with the given character up to the length
+    // or truncates it when longer, null is taken as empty
+    public static String padRight(String source, int length, char pad) {
+
+        String temp = (source == null) ? "" : source;
+
+        int difLength = length - temp.length();
+
+        if (difLength > 0) {
+            temp = temp + repeatCharacter(pad, difLength);
+        } else {
+            temp = temp.substring(0, length);
+        }
+
+        return temp;
+    }
+
+    public static String repeatCharacter(char repeat, int length) {
+
+        if (length <= 0) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            sb.append(repeat);
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package deors.devices.ambientstation.raspberry;
+
+public class SoundLevels {
+
+    // no sound sampled yet
+    public static final SoundLevels SILENCE = new SoundLevels(0.0, 0.0, 0.0, 0);
+
+    // root mean square of the window samples
+    private final double rms;
+
+    // highest sample in the window
+    private final double peak;
+
+    // equivalent continuous level in dB relative to one sensor unit
+    private final double leq;
+
+    // number of samples in the window
+    private final int samples;
+
+    public SoundLevels(double rms, double peak, double leq, int samples) {
+        super();
+        this.rms = rms;
+        this.peak = peak;
+        this.leq = leq;
+        this.samples = samples;
+    }
+
+    public double getRms() {
+        return rms;
+    }
+
+    public double getPeak() {
+        return peak;
+    }
+
+    public double getLeq() {
+        return leq;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+}
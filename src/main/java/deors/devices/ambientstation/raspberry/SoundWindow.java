@@ -0,0 +1,113 @@
+package deors.devices.ambientstation.raspberry;
+
+import java.time.Duration;
+
+public class SoundWindow {
+
+    // ring buffer with the raw sensor samples of the window and when they were taken
+    private final int[] samples;
+    private final long[] sampleNanos;
+
+    // samples older than this are evicted, whatever the ring still holds
+    private final long windowNanos;
+
+    // position of the oldest sample
+    private int first = 0;
+
+    // number of valid samples in the ring buffer
+    private int count = 0;
+
+    // running sum of squares of the samples in the ring buffer
+    // sensor values are small integers, so a long sum never loses precision
+    private long sumOfSquares = 0;
+
+    // a window bounded by the number of samples only
+    public SoundWindow(int capacity) {
+        this(capacity, null);
+    }
+
+    // a window bounded by the age of its samples too, the capacity is only
+    // an upper bound, so reads slower than planned never stretch the window
+    public SoundWindow(int capacity, Duration window) {
+        super();
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("sound window capacity must be positive");
+        }
+        samples = new int[capacity];
+        sampleNanos = new long[capacity];
+        windowNanos = window == null ? Long.MAX_VALUE : window.toNanos();
+    }
+
+    public int getCapacity() {
+        return samples.length;
+    }
+
+    public void add(int value) {
+        add(System.nanoTime(), value);
+    }
+
+    // called at the sampling rate, so it must not allocate
+    public synchronized void add(long nanos, int value) {
+
+        evictOlderThan(nanos);
+        if (count == samples.length) {
+            evictFirst();
+        }
+
+        int next = (first + count) % samples.length;
+        samples[next] = value;
+        sampleNanos[next] = nanos;
+        sumOfSquares += (long) value * value;
+        count++;
+    }
+
+    public SoundLevels reduce() {
+        return reduce(System.nanoTime());
+    }
+
+    public synchronized SoundLevels reduce(long nanos) {
+
+        evictOlderThan(nanos);
+        if (count == 0) {
+            return SoundLevels.SILENCE;
+        }
+
+        int peak = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int value = samples[(first + i) % samples.length];
+            if (value > peak) {
+                peak = value;
+            }
+        }
+
+        double meanSquare = (double) sumOfSquares / count;
+        double rms = Math.sqrt(meanSquare);
+
+        // energy average of the window, which is the equivalent continuous level
+        double leq = meanSquare > 0 ? 10 * Math.log10(meanSquare) : 0.0;
+
+        return new SoundLevels(rms, peak, leq, count);
+    }
+
+    private void evictOlderThan(long nanos) {
+
+        while (count > 0 && nanos - sampleNanos[first] > windowNanos) {
+            evictFirst();
+        }
+    }
+
+    private void evictFirst() {
+
+        int evicted = samples[first];
+        sumOfSquares -= (long) evicted * evicted;
+        first = (first + 1) % samples.length;
+        count--;
+    }
+
+    public synchronized void clear() {
+
+        first = 0;
+        count = 0;
+        sumOfSquares = 0;
+    }
+}
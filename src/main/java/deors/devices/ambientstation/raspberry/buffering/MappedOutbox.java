@@ -0,0 +1,450 @@
+package deors.devices.ambientstation.raspberry.buffering;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.encoding.BinaryAmbientDataDecoder;
+import deors.devices.ambientstation.raspberry.encoding.BinaryAmbientDataEncoder;
+
+// durable store-and-forward sample buffer, an append-only log split in
+// memory-mapped segment files of fixed size
+//
+// each record is an i32 length, an i32 crc32 of the payload and the payload,
+// a sample in the binary format; the length is written last, so a record
+// torn by a crash reads as the end of the segment, and every segment is
+// checked on open, so a corrupt record ends its segment too
+//
+// the read position is kept in a memory-mapped checkpoint file of two
+// slots written in turns, each with a generation, the position and a crc32,
+// so a checkpoint torn by a crash leaves the previous one to restart from;
+// segments are deleted once delivered, and the oldest segment is dropped
+// when the configured number of segments is exceeded, which bounds disk use
+//
+// commit only removes samples returned by peek, samples dropped by a roll
+// while their batch was being published are not committed twice
+public class MappedOutbox implements SampleBuffer {
+
+    // record header: length and crc
+    private static final int HEADER_SIZE = 8;
+
+    // every sample must fit in a segment
+    public static final int MIN_SEGMENT_SIZE = HEADER_SIZE + BinaryAmbientDataEncoder.MAX_SAMPLE_SIZE;
+
+    // checkpoint slot: i64 generation, i64 segment index, i32 offset and
+    // i32 crc32 of the rest, two slots in the checkpoint file
+    private static final int CHECKPOINT_SLOT_SIZE = 24;
+    private static final int CHECKPOINT_CRC_OFFSET = 20;
+    private static final int CHECKPOINT_SIZE = 2 * CHECKPOINT_SLOT_SIZE;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    // directory holding the segments and the checkpoint
+    private final Path directory;
+
+    // size of every segment file
+    private final int segmentSize;
+
+    // maximum number of segment files kept
+    private final int maxSegments;
+
+    // whether every change is forced to the storage device
+    private final boolean force;
+
+    // segments in log order, the last one is written
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+    // checkpoint file, mapped
+    private final FileChannel checkpointChannel;
+    private final MappedByteBuffer checkpoint;
+
+    // generation of the last checkpoint written, its slot is generation % 2
+    private long checkpointGeneration = 0;
+
+    // read position
+    private Segment readSegment;
+    private int readOffset;
+
+    // records appended but not yet committed
+    private int pending = 0;
+
+    // records returned by the last peek and still at the read position,
+    // and those of them dropped by a roll since
+    private int peeked = 0;
+    private int peekedDropped = 0;
+
+    // records lost because their segment was dropped before delivery
+    private long dropped = 0;
+
+    // record codec, only used under the outbox lock
+    private final BinaryAmbientDataEncoder encoder = new BinaryAmbientDataEncoder();
+    private final BinaryAmbientDataDecoder decoder = new BinaryAmbientDataDecoder();
+    private final CRC32 crc = new CRC32();
+
+    // the logger
+    private static Logger logger = Logger.getLogger(MappedOutbox.class.getName());
+
+    public MappedOutbox(Path directory, int segmentSize, int maxSegments, boolean force) throws IOException {
+        super();
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException(String.format("outbox segment size must be at least %d bytes", MIN_SEGMENT_SIZE));
+        }
+        if (maxSegments < 2) {
+            throw new IllegalArgumentException("outbox needs at least two segments");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.force = force;
+
+        Files.createDirectories(directory);
+
+        for (long index : listSegments()) {
+            segments.addLast(openSegment(index));
+        }
+        if (segments.isEmpty()) {
+            segments.addLast(openSegment(0));
+        }
+        for (Segment segment : segments) {
+            segment.recoverWritePosition();
+        }
+
+        checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, CHECKPOINT_SIZE);
+
+        recoverReadPosition();
+
+        logger.info(String.format("outbox opened at %s with %d segments and %d samples pending delivery",
+            directory, segments.size(), pending));
+    }
+
+    private List<Long> listSegments() throws IOException {
+
+        List<Long> indexes = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    indexes.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException nfe) {
+                    logger.warning(String.format("ignoring unexpected file in the outbox: %s", name));
+                }
+            }
+        }
+        Collections.sort(indexes);
+        return indexes;
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private Segment openSegment(long index) throws IOException {
+
+        FileChannel channel = FileChannel.open(segmentPath(index),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(index, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+    }
+
+    private void recoverReadPosition() {
+
+        // the newest valid slot, none in a new outbox
+        long index = -1;
+        int offset = 0;
+        for (int slot = 0; slot < CHECKPOINT_SIZE; slot += CHECKPOINT_SLOT_SIZE) {
+            long generation = checkpoint.getLong(slot);
+            if (generation > checkpointGeneration && checkpointCrc(slot) == checkpoint.getInt(slot + CHECKPOINT_CRC_OFFSET)) {
+                checkpointGeneration = generation;
+                index = checkpoint.getLong(slot + 8);
+                offset = checkpoint.getInt(slot + 16);
+            }
+        }
+
+        readSegment = segments.getFirst();
+        readOffset = 0;
+
+        // a checkpoint pointing to a deleted segment restarts at the oldest one
+        for (Segment segment : segments) {
+            if (segment.index == index && offset >= 0 && offset <= segmentSize) {
+                readSegment = segment;
+                readOffset = offset;
+            }
+        }
+
+        pending = 0;
+        Position position = new Position(readSegment, readOffset);
+        while (next(position) >= 0) {
+            pending++;
+        }
+    }
+
+    @Override
+    public synchronized void append(AmbientData data) throws IOException {
+
+        ByteBuffer payload = encoder.encode(data);
+        int length = payload.remaining();
+
+        Segment segment = segments.getLast();
+        if (segment.writePosition + HEADER_SIZE + length > segmentSize) {
+            segment = rollSegment();
+        }
+
+        crc.reset();
+        crc.update(payload.duplicate());
+
+        // payload and crc first, length last, so a partial record is never valid
+        int offset = segment.writePosition;
+        segment.buffer.position(offset + HEADER_SIZE);
+        segment.buffer.put(payload);
+        segment.buffer.putInt(offset + 4, (int) crc.getValue());
+        segment.buffer.putInt(offset, length);
+        segment.writePosition = offset + HEADER_SIZE + length;
+
+        if (force) {
+            segment.buffer.force();
+        }
+        pending++;
+    }
+
+    private Segment rollSegment() throws IOException {
+
+        Segment segment = openSegment(segments.getLast().index + 1);
+        segments.addLast(segment);
+
+        // disk use is bounded, the oldest samples are lost first
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.getFirst();
+            if (oldest == readSegment) {
+                int lost = 0;
+                Position position = new Position(readSegment, readOffset);
+                while (next(position) >= 0 && position.segment == oldest) {
+                    lost++;
+                }
+                dropped += lost;
+                pending -= lost;
+                // the oldest records go first, peeked ones included
+                int lostPeeked = Math.min(lost, peeked);
+                peeked -= lostPeeked;
+                peekedDropped += lostPeeked;
+                logger.warning(String.format("outbox is full, %d undelivered samples were dropped", lost));
+                readSegment = following(oldest);
+                readOffset = 0;
+                writeCheckpoint();
+            }
+            deleteSegment(segments.removeFirst());
+        }
+        return segment;
+    }
+
+    @Override
+    public synchronized int peek(List<AmbientData> batch, int maxSamples) throws IOException {
+
+        int count = 0;
+        Position position = new Position(readSegment, readOffset);
+        while (count < maxSamples) {
+            int offset = next(position);
+            if (offset < 0) {
+                break;
+            }
+            ByteBuffer record = position.segment.buffer.duplicate();
+            int length = record.getInt(offset);
+            record.limit(offset + HEADER_SIZE + length).position(offset + HEADER_SIZE);
+            batch.add(decoder.decode(record));
+            count++;
+        }
+        peeked = count;
+        peekedDropped = 0;
+        return count;
+    }
+
+    @Override
+    public synchronized void commit(int count) throws IOException {
+
+        // samples already dropped are not committed again, and those not
+        // peeked were never published
+        int alreadyDropped = Math.min(count, peekedDropped);
+        peekedDropped -= alreadyDropped;
+        count = Math.min(count - alreadyDropped, peeked);
+
+        Position position = new Position(readSegment, readOffset);
+        int committed = 0;
+        while (committed < count && next(position) >= 0) {
+            committed++;
+        }
+
+        readSegment = position.segment;
+        readOffset = position.offset;
+        pending -= committed;
+        peeked -= committed;
+        writeCheckpoint();
+
+        // delivered segments are not needed anymore
+        while (segments.getFirst() != readSegment) {
+            deleteSegment(segments.removeFirst());
+        }
+    }
+
+    // moves the position past the next record and returns the record offset
+    // or -1 when there are no more records, skipping to the following segments
+    private int next(Position position) {
+
+        while (true) {
+            Segment segment = position.segment;
+            int offset = position.offset;
+            if (offset < segment.writePosition) {
+                position.offset = offset + HEADER_SIZE + segment.buffer.getInt(offset);
+                return offset;
+            }
+            Segment following = following(segment);
+            if (following == null) {
+                return -1;
+            }
+            position.segment = following;
+            position.offset = 0;
+        }
+    }
+
+    private Segment following(Segment segment) {
+
+        Iterator<Segment> iterator = segments.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == segment) {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+        }
+        return null;
+    }
+
+    // writes over the older slot, the newer one stays valid meanwhile
+    private void writeCheckpoint() {
+
+        checkpointGeneration++;
+        int slot = (int) (checkpointGeneration % 2) * CHECKPOINT_SLOT_SIZE;
+        checkpoint.putLong(slot, checkpointGeneration);
+        checkpoint.putLong(slot + 8, readSegment.index);
+        checkpoint.putInt(slot + 16, readOffset);
+        checkpoint.putInt(slot + CHECKPOINT_CRC_OFFSET, checkpointCrc(slot));
+        if (force) {
+            checkpoint.force();
+        }
+    }
+
+    private int checkpointCrc(int slot) {
+
+        ByteBuffer fields = checkpoint.duplicate();
+        fields.limit(slot + CHECKPOINT_CRC_OFFSET).position(slot);
+        crc.reset();
+        crc.update(fields);
+        return (int) crc.getValue();
+    }
+
+    private void deleteSegment(Segment segment) throws IOException {
+
+        segment.channel.close();
+        Files.deleteIfExists(segmentPath(segment.index));
+    }
+
+    @Override
+    public synchronized int size() {
+        return pending;
+    }
+
+    @Override
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    @Override
+    public boolean isDurable() {
+        return true;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            segment.channel.close();
+        }
+        checkpoint.force();
+        checkpointChannel.close();
+    }
+
+    private class Segment {
+
+        private final long index;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        // end of the valid records, where the next one is written in the last segment
+        private int writePosition = 0;
+
+        private Segment(long index, FileChannel channel, MappedByteBuffer buffer) {
+            this.index = index;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        // finds the end of the valid records, a torn or corrupt record ends the segment
+        private void recoverWritePosition() {
+
+            int offset = 0;
+            while (offset + HEADER_SIZE <= segmentSize) {
+                int length = buffer.getInt(offset);
+                if (length <= 0 || offset + HEADER_SIZE + length > segmentSize) {
+                    break;
+                }
+                ByteBuffer payload = buffer.duplicate();
+                payload.limit(offset + HEADER_SIZE + length).position(offset + HEADER_SIZE);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                    logger.warning(String.format("outbox segment %d has a corrupt record at offset %d, discarding the rest", index, offset));
+                    break;
+                }
+                offset += HEADER_SIZE + length;
+            }
+
+            // clear the whole rest of the segment, so records written after a
+            // torn one never line up with older ones and revive them; pages
+            // already clear are only read
+            for (int i = offset; i < segmentSize; i++) {
+                if (buffer.get(i) != 0) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+            writePosition = offset;
+        }
+    }
+
+    private static class Position {
+
+        private Segment segment;
+        private int offset;
+
+        private Position(Segment segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+}
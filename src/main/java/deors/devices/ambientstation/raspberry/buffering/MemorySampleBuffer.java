@@ -0,0 +1,80 @@
+package deors.devices.ambientstation.raspberry.buffering;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+
+// bounded in-memory sample buffer, the oldest samples are dropped when full
+public class MemorySampleBuffer implements SampleBuffer {
+
+    // maximum number of samples kept
+    private final int capacity;
+
+    // buffered samples, oldest first
+    private final ArrayDeque<AmbientData> samples;
+
+    // samples dropped because the buffer was full
+    private long dropped = 0;
+
+    // position of the oldest sample since the buffer was created
+    private long first = 0;
+
+    // position of the oldest sample when the last batch was peeked
+    private long peeked = 0;
+
+    public MemorySampleBuffer(int capacity) {
+        super();
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("sample buffer capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.samples = new ArrayDeque<>(capacity);
+    }
+
+    @Override
+    public synchronized void append(AmbientData data) {
+
+        if (samples.size() == capacity) {
+            samples.removeFirst();
+            first++;
+            dropped++;
+        }
+        samples.addLast(data);
+    }
+
+    @Override
+    public synchronized int peek(List<AmbientData> batch, int maxSamples) {
+
+        peeked = first;
+        int count = 0;
+        Iterator<AmbientData> iterator = samples.iterator();
+        while (count < maxSamples && iterator.hasNext()) {
+            batch.add(iterator.next());
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void commit(int count) {
+
+        // samples dropped while the batch was being published are not removed twice
+        long end = peeked + count;
+        while (first < end && !samples.isEmpty()) {
+            samples.removeFirst();
+            first++;
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return samples.size();
+    }
+
+    @Override
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+}
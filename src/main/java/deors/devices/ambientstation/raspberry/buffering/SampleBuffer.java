@@ -0,0 +1,35 @@
+package deors.devices.ambientstation.raspberry.buffering;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+
+// samples waiting to be published, oldest first
+// samples are only removed once committed, so a failed publish loses nothing
+public interface SampleBuffer extends Closeable {
+
+    void append(AmbientData data) throws IOException;
+
+    // copies up to maxSamples of the oldest samples into the batch, without removing them
+    int peek(List<AmbientData> batch, int maxSamples) throws IOException;
+
+    // removes the given number of the oldest samples, once they have been published
+    void commit(int samples) throws IOException;
+
+    int size();
+
+    // samples discarded because the buffer was full
+    long getDroppedCount();
+
+    // whether the samples survive a restart, so they are only committed
+    // once the publisher confirms their delivery
+    default boolean isDurable() {
+        return false;
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,15 @@
+package deors.devices.ambientstation.raspberry.encoding;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+
+public interface AmbientDataEncoder {
+
+    // the returned buffer may be reused by the encoder on the next call
+    ByteBuffer encode(AmbientData data);
+
+    // several samples in one message, oldest first
+    ByteBuffer encodeBatch(List<AmbientData> batch);
+}
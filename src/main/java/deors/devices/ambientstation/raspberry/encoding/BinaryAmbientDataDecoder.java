@@ -0,0 +1,115 @@
+package deors.devices.ambientstation.raspberry.encoding;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.statistics.Channel;
+import deors.devices.ambientstation.raspberry.statistics.WindowStats;
+
+// decodes messages written by BinaryAmbientDataEncoder, current and previous versions
+// air quality category is calculated again from the air quality value
+public class BinaryAmbientDataDecoder {
+
+    // channels in stats order, values() returns a new array on every call
+    private static final Channel[] CHANNELS = Channel.values();
+
+    private static boolean isSupported(int version) {
+        return version == 1 || version == BinaryAmbientDataEncoder.VERSION;
+    }
+
+    private static WindowStats decodeStatistics(ByteBuffer in) throws IOException {
+
+        int count = Byte.toUnsignedInt(in.get());
+        if (count > WindowStats.MAX_WINDOWS) {
+            throw new IOException(String.format("too many statistics windows in binary payload: %d", count));
+        }
+        Duration[] windows = new Duration[count];
+        double[] values = new double[count * CHANNELS.length * 3];
+        int index = 0;
+        for (int i = 0; i < count; i++) {
+            windows[i] = Duration.ofSeconds(Integer.toUnsignedLong(in.getInt()));
+            for (Channel channel : CHANNELS) {
+                for (int stat = 0; stat < 3; stat++) {
+                    values[index++] = stat(in.getShort(), channel);
+                }
+            }
+        }
+        return WindowStats.of(windows, values);
+    }
+
+    private static double stat(short value, Channel channel) {
+
+        double scale = channel.getPrecision() == 1 ? 10.0 : 1.0;
+        if (channel == Channel.TEMPERATURE) {
+            return value == Short.MIN_VALUE ? Double.NaN : value / scale;
+        }
+        int unsigned = Short.toUnsignedInt(value);
+        return unsigned == 0xFFFF ? Double.NaN : unsigned / scale;
+    }
+
+    // decodes a batch, or a single sample as a batch of one
+    public List<AmbientData> decodeBatch(ByteBuffer in) throws IOException {
+
+        try {
+            int header = Byte.toUnsignedInt(in.get(in.position()));
+            if ((header & BinaryAmbientDataEncoder.BATCH) == 0) {
+                List<AmbientData> single = new ArrayList<>(1);
+                single.add(decode(in));
+                return single;
+            }
+
+            int version = header & ~BinaryAmbientDataEncoder.BATCH;
+            if (!isSupported(version)) {
+                throw new IOException(String.format("unsupported binary payload version: %d", version));
+            }
+            in.get();
+
+            int count = Short.toUnsignedInt(in.getShort());
+            List<AmbientData> batch = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                batch.add(decode(in));
+            }
+            return batch;
+        } catch (IndexOutOfBoundsException | BufferUnderflowException ex) {
+            throw new IOException("truncated binary payload", ex);
+        }
+    }
+
+    public AmbientData decode(ByteBuffer in) throws IOException {
+
+        try {
+            int version = Byte.toUnsignedInt(in.get());
+            if (!isSupported(version)) {
+                throw new IOException(String.format("unsupported binary payload version: %d", version));
+            }
+
+            int flags = Byte.toUnsignedInt(in.get());
+            in.get(); // air quality category
+            byte[] id = new byte[Byte.toUnsignedInt(in.get())];
+            in.get(id);
+
+            AmbientData.Builder builder = new AmbientData.Builder(new String(id, StandardCharsets.UTF_8));
+            builder.setMotionDetected((flags & BinaryAmbientDataEncoder.FLAG_MOTION) != 0);
+            builder.setSlotTime(in.getLong());
+            builder.setTemperatureValue(in.getShort() / 10.0);
+            builder.setHumidityValue(Short.toUnsignedInt(in.getShort()) / 10.0);
+            builder.setLightValue(Short.toUnsignedInt(in.getShort()));
+            builder.setSoundRms(Short.toUnsignedInt(in.getShort()));
+            builder.setSoundPeak(Short.toUnsignedInt(in.getShort()));
+            builder.setSoundLeq(in.getShort() / 10.0);
+            builder.setAirQualityValue(Short.toUnsignedInt(in.getShort()));
+            if ((flags & BinaryAmbientDataEncoder.FLAG_STATISTICS) != 0) {
+                builder.setStatistics(decodeStatistics(in));
+            }
+            return builder.build();
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("truncated binary payload", ex);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package deors.devices.ambientstation.raspberry.encoding;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.statistics.Channel;
+import deors.devices.ambientstation.raspberry.statistics.WindowStats;
+
+// compact, versioned binary encoding of the ambient data
+//
+// version 2 layout, big endian:
+//   u8   version
+//   u8   flags, bit 0 is motion detected, bit 1 is stats included
+//   u8   air quality category, as the AirQuality ordinal
+//   u8   station id length, followed by the station id in UTF-8
+//   i64  slot time, epoch milliseconds
+//   i16  temperature, tenths of degree
+//   u16  humidity, tenths of percent
+//   u16  light
+//   u16  sound rms
+//   u16  sound peak
+//   i16  sound leq, tenths of dB
+//   u16  air quality
+//
+// followed, when stats are included, by
+//   u8   window count
+//   and for each window
+//   u32  window length, seconds
+//   min, max and mean of temperature, humidity, light, sound rms and
+//   air quality, in that order, each one encoded as the current value
+//
+// version 1 is the same layout without stats
+//
+// batches start with the version byte with the high bit set
+// and an u16 sample count, followed by the samples as above
+//
+// values are rounded to the precision published in json
+// and saturated to the range of each field
+public class BinaryAmbientDataEncoder implements AmbientDataEncoder {
+
+    public static final int VERSION = 2;
+
+    public static final int BATCH = 0x80;
+
+    public static final int FLAG_MOTION = 0x01;
+
+    public static final int FLAG_STATISTICS = 0x02;
+
+    // channels in stats order, values() returns a new array on every call
+    private static final Channel[] CHANNELS = Channel.values();
+
+    // largest encoded sample, with the longest station id and every window
+    public static final int MAX_SAMPLE_SIZE = 64 + 255 + 1 + WindowStats.MAX_WINDOWS * (4 + 5 * 3 * 2);
+
+    // reusable output buffer, grown when a batch does not fit
+    private ByteBuffer buffer = ByteBuffer.allocate(MAX_SAMPLE_SIZE);
+
+    // station id bytes, encoded once per id
+    private String cachedId;
+    private byte[] cachedIdBytes;
+
+    @Override
+    public ByteBuffer encode(AmbientData data) {
+
+        buffer.clear();
+        write(buffer, data);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer encodeBatch(List<AmbientData> batch) {
+
+        if (batch.size() > 0xFFFF) {
+            throw new IllegalArgumentException("batch is too large for the binary format");
+        }
+
+        int needed = 3 + batch.size() * MAX_SAMPLE_SIZE;
+        if (buffer.capacity() < needed) {
+            buffer = ByteBuffer.allocate(needed);
+        }
+
+        buffer.clear();
+        buffer.put((byte) (BATCH | VERSION));
+        buffer.putShort((short) batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            write(buffer, batch.get(i));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    protected void write(ByteBuffer out, AmbientData data) {
+
+        byte[] id = idBytes(data.getId());
+
+        WindowStats statistics = data.getStatistics();
+
+        out.put((byte) VERSION);
+        out.put((byte) ((data.isMotionDetected() ? FLAG_MOTION : 0)
+            | (statistics.getWindowCount() > 0 ? FLAG_STATISTICS : 0)));
+        out.put((byte) data.getAirQuality().ordinal());
+        out.put((byte) id.length);
+        out.put(id);
+        out.putLong(data.getSlotTime());
+        out.putShort(signed(data.getTemperatureValue(), 10));
+        out.putShort(unsigned(data.getHumidityValue(), 10));
+        out.putShort(unsigned(data.getLightValue(), 1));
+        out.putShort(unsigned(data.getSoundRms(), 1));
+        out.putShort(unsigned(data.getSoundPeak(), 1));
+        out.putShort(signed(data.getSoundLeq(), 10));
+        out.putShort(unsigned(data.getAirQualityValue(), 1));
+
+        if (statistics.getWindowCount() > 0) {
+            out.put((byte) statistics.getWindowCount());
+            for (int i = 0; i < statistics.getWindowCount(); i++) {
+                out.putInt((int) Math.min(0xFFFFFFFFL, statistics.getWindow(i).getSeconds()));
+                for (Channel channel : CHANNELS) {
+                    out.putShort(stat(statistics.getMin(i, channel), channel));
+                    out.putShort(stat(statistics.getMax(i, channel), channel));
+                    out.putShort(stat(statistics.getMean(i, channel), channel));
+                }
+            }
+        }
+    }
+
+    // stats are encoded as the current value of the channel, except that
+    // windows without samples are written as the lowest signed or highest
+    // unsigned value, which are not used otherwise
+    private static short stat(double value, Channel channel) {
+
+        int scale = channel.getPrecision() == 1 ? 10 : 1;
+        if (channel == Channel.TEMPERATURE) {
+            return Double.isNaN(value) ? Short.MIN_VALUE : (short) Math.max(Short.MIN_VALUE + 1, signed(value, scale));
+        }
+        return Double.isNaN(value) ? (short) 0xFFFF : (short) Math.min(0xFFFE, Short.toUnsignedInt(unsigned(value, scale)));
+    }
+
+    private byte[] idBytes(String id) {
+
+        if (id != cachedId) {
+            byte[] bytes = String.valueOf(id).getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 255) {
+                throw new IllegalArgumentException("station id is too long for the binary format");
+            }
+            cachedIdBytes = bytes;
+            cachedId = id;
+        }
+        return cachedIdBytes;
+    }
+
+    private static short signed(double value, int scale) {
+
+        // half away from zero, as the published json
+        long scaled = (long) Math.signum(value) * Math.round(Math.abs(value) * scale);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, scaled));
+    }
+
+    private static short unsigned(double value, int scale) {
+
+        long scaled = Math.round(value * scale);
+        return (short) Math.max(0, Math.min(0xFFFF, scaled));
+    }
+}
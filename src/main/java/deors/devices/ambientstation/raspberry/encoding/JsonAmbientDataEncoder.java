@@ -0,0 +1,291 @@
+package deors.devices.ambientstation.raspberry.encoding;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import deors.devices.ambientstation.raspberry.AirQuality;
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.statistics.Channel;
+import deors.devices.ambientstation.raspberry.statistics.WindowStats;
+
+// writes the same json as AmbientData.toJson() straight into a reusable buffer
+// the returned buffer is only valid until the next call, and instances
+// are not thread safe, so each publishing task keeps its own encoder
+public class JsonAmbientDataEncoder implements AmbientDataEncoder {
+
+    // constant parts of the message
+    private static final byte[] ID = ascii("{\"id\":\"");
+    private static final byte[] TEMP = ascii("\",\"temp\":");
+    private static final byte[] HUMI = ascii(",\"humi\":");
+    private static final byte[] LIGHT = ascii(",\"light\":");
+    private static final byte[] SOUND = ascii(",\"sound\":");
+    private static final byte[] SOUND_PEAK = ascii(",\"soundpeak\":");
+    private static final byte[] SOUND_LEQ = ascii(",\"soundleq\":");
+    private static final byte[] AIRQ = ascii(",\"airq\":");
+    private static final byte[] AIRQ_TEXT = ascii(",\"airqtext\":\"");
+    private static final byte[] MOTION = ascii("\",\"motion\":");
+    private static final byte[] ID_TIME = ascii("\",\"time\":");
+    private static final byte[] END = ascii("}");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    private static final byte[] STATS = ascii(",\"stats\":{");
+    private static final byte[] NULL = ascii("null");
+
+    // channels, values() returns a new array on every call
+    private static final Channel[] CHANNELS = Channel.values();
+
+    // channel keys of the stats, as "key":[
+    private static final byte[][] CHANNEL_KEYS = new byte[Channel.values().length][];
+
+    // air quality texts, encoded once
+    private static final byte[][] AIR_QUALITY_TEXTS = new byte[AirQuality.values().length][];
+
+    static {
+        for (AirQuality airQuality : AirQuality.values()) {
+            AIR_QUALITY_TEXTS[airQuality.ordinal()] = airQuality.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        for (Channel channel : Channel.values()) {
+            CHANNEL_KEYS[channel.ordinal()] = ascii("\"" + channel.getKey() + "\":[");
+        }
+    }
+
+    // powers of ten for the supported precisions
+    private static final double[] SCALES = { 1, 10, 100, 1000 };
+
+    // above this magnitude scaled values no longer fit exactly in a long
+    private static final double MAX_FAST_VALUE = 1e15;
+
+    // reusable output buffer, grown when a message does not fit
+    private byte[] buffer = new byte[256];
+    private ByteBuffer view = ByteBuffer.wrap(buffer);
+    private int position = 0;
+
+    // scratch space to write digits in reverse order
+    private final byte[] digits = new byte[20];
+
+    // station id bytes, encoded once per id
+    private String cachedId;
+    private byte[] cachedIdBytes;
+
+    @Override
+    public ByteBuffer encode(AmbientData data) {
+
+        position = 0;
+        writeObject(data);
+        return result();
+    }
+
+    // batches are json arrays of the same objects
+    @Override
+    public ByteBuffer encodeBatch(List<AmbientData> batch) {
+
+        position = 0;
+        write((byte) '[');
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                write((byte) ',');
+            }
+            writeObject(batch.get(i));
+        }
+        write((byte) ']');
+        return result();
+    }
+
+    // only the id, time and stats of the sample, for range queries
+    public ByteBuffer encodeRanges(AmbientData data) {
+
+        position = 0;
+        write(ID);
+        write(idBytes(data.getId()));
+        write(ID_TIME);
+        writeLong(data.getSlotTime());
+        writeStatistics(data.getStatistics());
+        write(END);
+        return result();
+    }
+
+    protected void writeObject(AmbientData data) {
+
+        write(ID);
+        write(idBytes(data.getId()));
+        write(TEMP);
+        writeFixed(data.getTemperatureValue(), 1);
+        write(HUMI);
+        writeFixed(data.getHumidityValue(), 1);
+        write(LIGHT);
+        writeFixed(data.getLightValue(), 0);
+        write(SOUND);
+        writeFixed(data.getSoundRms(), 0);
+        write(SOUND_PEAK);
+        writeFixed(data.getSoundPeak(), 0);
+        write(SOUND_LEQ);
+        writeFixed(data.getSoundLeq(), 1);
+        write(AIRQ);
+        writeFixed(data.getAirQualityValue(), 0);
+        write(AIRQ_TEXT);
+        write(AIR_QUALITY_TEXTS[data.getAirQuality().ordinal()]);
+        write(MOTION);
+        write(data.isMotionDetected() ? TRUE : FALSE);
+        writeStatistics(data.getStatistics());
+        write(END);
+    }
+
+    // stats by window and channel, as min, max and mean
+    protected void writeStatistics(WindowStats statistics) {
+
+        if (statistics.getWindowCount() == 0) {
+            return;
+        }
+
+        write(STATS);
+        for (int i = 0; i < statistics.getWindowCount(); i++) {
+            if (i > 0) {
+                write((byte) ',');
+            }
+            write((byte) '"');
+            // labels are short ascii texts like 1h
+            String label = statistics.getLabel(i);
+            for (int c = 0; c < label.length(); c++) {
+                write((byte) label.charAt(c));
+            }
+            write((byte) '"');
+            write((byte) ':');
+            write((byte) '{');
+            for (Channel channel : CHANNELS) {
+                if (channel.ordinal() > 0) {
+                    write((byte) ',');
+                }
+                write(CHANNEL_KEYS[channel.ordinal()]);
+                writeStat(statistics.getMin(i, channel), channel);
+                write((byte) ',');
+                writeStat(statistics.getMax(i, channel), channel);
+                write((byte) ',');
+                writeStat(statistics.getMean(i, channel), channel);
+                write((byte) ']');
+            }
+            write((byte) '}');
+        }
+        write((byte) '}');
+    }
+
+    private void writeStat(double value, Channel channel) {
+
+        if (Double.isNaN(value)) {
+            write(NULL);
+        } else {
+            writeFixed(value, channel.getPrecision());
+        }
+    }
+
+    protected ByteBuffer result() {
+
+        view.clear();
+        view.limit(position);
+        return view;
+    }
+
+    protected void write(byte b) {
+
+        ensureCapacity(1);
+        buffer[position++] = b;
+    }
+
+    protected void write(byte[] bytes) {
+
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensureCapacity(int length) {
+
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            view = ByteBuffer.wrap(buffer);
+        }
+    }
+
+    private byte[] idBytes(String id) {
+
+        if (id != cachedId) {
+            cachedIdBytes = String.valueOf(id).getBytes(StandardCharsets.UTF_8);
+            cachedId = id;
+        }
+        return cachedIdBytes;
+    }
+
+    protected void writeLong(long value) {
+
+        if (value == Long.MIN_VALUE) {
+            write(ascii(Long.toString(value)));
+            return;
+        }
+        if (value < 0) {
+            write((byte) '-');
+            value = -value;
+        }
+        writeDigits(value, 0);
+    }
+
+    // same result as String.format("%.<precision>f"), which rounds half up
+    // the shortest decimal representation of the value
+    protected void writeFixed(double value, int precision) {
+
+        double magnitude = Math.abs(value);
+
+        if (Double.isNaN(value) || Double.isInfinite(value) || magnitude * SCALES[precision] >= MAX_FAST_VALUE) {
+            // rare values, not worth a fast path
+            write(ascii(String.format(Locale.ROOT, "%." + precision + "f", value)));
+            return;
+        }
+
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            write((byte) '-');
+        }
+
+        double scale = SCALES[precision];
+
+        // largest k such that the decimal k / scale does not exceed the value
+        // divisions of exact integers are correctly rounded, so comparing them
+        // with the value behaves like comparing decimal representations
+        long k = (long) (magnitude * scale);
+        while (k > 0 && k / scale > magnitude) {
+            k--;
+        }
+        while ((k + 1) / scale <= magnitude) {
+            k++;
+        }
+
+        // round half up against the midpoint between k and k + 1
+        double tie = (2.0 * k + 1) / (2.0 * scale);
+        if (magnitude >= tie) {
+            k++;
+        }
+
+        writeDigits(k, precision);
+    }
+
+    private void writeDigits(long value, int fractionDigits) {
+
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0 || count <= fractionDigits);
+
+        ensureCapacity(count + 1);
+        for (int i = count - 1; i >= 0; i--) {
+            if (i == fractionDigits - 1) {
+                buffer[position++] = '.';
+            }
+            buffer[position++] = digits[i];
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
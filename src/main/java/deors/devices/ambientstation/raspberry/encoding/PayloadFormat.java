@@ -0,0 +1,30 @@
+package deors.devices.ambientstation.raspberry.encoding;
+
+import java.util.Locale;
+
+public enum PayloadFormat {
+
+    JSON {
+        @Override
+        public AmbientDataEncoder newEncoder() {
+            return new JsonAmbientDataEncoder();
+        }
+    },
+    BINARY {
+        @Override
+        public AmbientDataEncoder newEncoder() {
+            return new BinaryAmbientDataEncoder();
+        }
+    };
+
+    public abstract AmbientDataEncoder newEncoder();
+
+    // json is the default when no format is configured
+    public static PayloadFormat fromProperty(String value) {
+
+        if (value == null || value.isBlank()) {
+            return JSON;
+        }
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,37 @@
+package deors.devices.ambientstation.raspberry.flight;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// one read of a sensor or the button on the grovepi
+@Name(DeviceReadEvent.NAME)
+@Label("Device Read")
+@Category("Ambient Station")
+@StackTrace(false)
+public class DeviceReadEvent extends jdk.jfr.Event {
+
+    public static final String NAME = "deors.ambientstation.DeviceRead";
+
+    @Label("Device")
+    public String device;
+
+    @Label("Port")
+    public int port;
+
+    @Label("Success")
+    public boolean success;
+
+    // ends the event begun before the read and commits it if enabled
+    public void finish(String device, int port, boolean success) {
+
+        end();
+        if (shouldCommit()) {
+            this.device = device;
+            this.port = port;
+            this.success = success;
+            commit();
+        }
+    }
+}
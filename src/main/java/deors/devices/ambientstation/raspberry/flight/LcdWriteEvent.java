@@ -0,0 +1,35 @@
+package deors.devices.ambientstation.raspberry.flight;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// one text or colour write to the lcd
+@Name("deors.ambientstation.LcdWrite")
+@Label("LCD Write")
+@Category("Ambient Station")
+@StackTrace(false)
+public class LcdWriteEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Text")
+    public String text;
+
+    @Label("Success")
+    public boolean success;
+
+    // ends the event begun before the write and commits it if enabled
+    public void finish(String operation, String text, boolean success) {
+
+        end();
+        if (shouldCommit()) {
+            this.operation = operation;
+            this.text = text;
+            this.success = success;
+            commit();
+        }
+    }
+}
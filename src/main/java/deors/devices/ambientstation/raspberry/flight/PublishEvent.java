@@ -0,0 +1,41 @@
+package deors.devices.ambientstation.raspberry.flight;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// one message published externally, its duration is the publish latency
+@Name("deors.ambientstation.Publish")
+@Label("Publish")
+@Category("Ambient Station")
+@StackTrace(false)
+public class PublishEvent extends jdk.jfr.Event {
+
+    @Label("Samples")
+    public int samples;
+
+    @Label("Payload Size")
+    @DataAmount
+    public int payloadSize;
+
+    @Label("QoS")
+    public int qos;
+
+    @Label("Success")
+    public boolean success;
+
+    // ends the event begun before publishing and commits it if enabled
+    public void finish(int samples, int payloadSize, int qos, boolean success) {
+
+        end();
+        if (shouldCommit()) {
+            this.samples = samples;
+            this.payloadSize = payloadSize;
+            this.qos = qos;
+            this.success = success;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package deors.devices.ambientstation.raspberry.flight;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import jdk.jfr.Timestamp;
+
+// one sampling cycle, from taking the readings to buffering the sample
+@Name("deors.ambientstation.SamplingCycle")
+@Label("Sampling Cycle")
+@Category("Ambient Station")
+@StackTrace(false)
+public class SamplingCycleEvent extends jdk.jfr.Event {
+
+    @Label("Slot")
+    public long slot;
+
+    @Label("Slot Time")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    public long slotTime;
+
+    @Label("Lag")
+    @Description("Time from the slot to the start of the cycle")
+    @Timespan(Timespan.NANOSECONDS)
+    public long lag;
+
+    @Label("Buffered")
+    @Description("Whether the sample was buffered for publishing")
+    public boolean buffered;
+
+    @Label("Buffer Size")
+    public int bufferSize;
+
+    // ends the event begun before taking the readings and commits it if enabled
+    public void finish(long slot, long slotTime, long lag, boolean buffered, int bufferSize) {
+
+        end();
+        if (shouldCommit()) {
+            this.slot = slot;
+            this.slotTime = slotTime;
+            this.lag = lag;
+            this.buffered = buffered;
+            this.bufferSize = bufferSize;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package deors.devices.ambientstation.raspberry.flight;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+// continuous flight recording of the station, kept in a bounded ring
+// by age and size, and written to a file on demand or when errors pile up
+//
+// errors are counted over a sliding window; when the threshold is reached
+// the recording is dumped on the executor, at most once per dump interval,
+// so a failing bus leaves a recording of what led to it and not a log flood
+//
+// the recording is named "station", so jcmd <pid> JFR.dump name=station
+// dumps it as well
+public class StationRecording implements Closeable {
+
+    public static final String NAME = "station";
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Recording recording;
+
+    private final Path dir;
+
+    private final Executor executor;
+
+    // times of the latest errors, as a ring the size of the threshold
+    private final long[] errorNanos;
+    private int nextError = 0;
+    private long errors = 0;
+
+    private final long errorWindowNanos;
+
+    private final long dumpIntervalNanos;
+
+    // when the latest dump for errors was started, 0 before the first one
+    private long lastErrorDumpNanos = 0;
+
+    private final AtomicBoolean dumping = new AtomicBoolean();
+
+    private long dumps = 0;
+
+    // the logger
+    private static Logger logger = Logger.getLogger(StationRecording.class.getName());
+
+    public StationRecording(Path dir, String settings, Duration maxAge, long maxSize, Duration deviceThreshold,
+            int errorThreshold, Duration errorWindow, Duration dumpInterval, Executor executor)
+            throws IOException, ParseException {
+        super();
+        this.dir = dir;
+        this.executor = executor;
+        this.errorNanos = new long[Math.max(1, errorThreshold)];
+        this.errorWindowNanos = errorWindow.toNanos();
+        this.dumpIntervalNanos = dumpInterval.toNanos();
+
+        Files.createDirectories(dir);
+
+        recording = new Recording(Configuration.getConfiguration(settings));
+        recording.setName(NAME);
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxSize);
+        // sound is read hundreds of times per second, a threshold
+        // keeps only the slow reads when the ring must cover longer
+        recording.enable(DeviceReadEvent.NAME).withThreshold(deviceThreshold);
+    }
+
+    public void start() {
+
+        recording.start();
+
+        logger.info(String.format("flight recording started, dumped to %s", dir));
+    }
+
+    // counts an error, and dumps the recording when too many are seen
+    public void error() {
+
+        long now = System.nanoTime();
+        synchronized (this) {
+            errors++;
+            errorNanos[nextError] = now;
+            nextError = (nextError + 1) % errorNanos.length;
+            // the next slot holds the oldest of the latest errors
+            if (errors < errorNanos.length || now - errorNanos[nextError] > errorWindowNanos) {
+                return;
+            }
+            if (lastErrorDumpNanos != 0 && now - lastErrorDumpNanos < dumpIntervalNanos) {
+                return;
+            }
+            lastErrorDumpNanos = now;
+        }
+
+        executor.execute(() -> dumpQuietly("errors"));
+    }
+
+    private void dumpQuietly(String reason) {
+
+        try {
+            dump(reason);
+        } catch (IOException ioe) {
+            logger.severe(String.format("flight recording could not be dumped: %s", ioe.getMessage()));
+        }
+    }
+
+    // writes what the ring holds now to a new file, returns null when
+    // another dump is being written
+    public Path dump(String reason) throws IOException {
+
+        if (!dumping.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            Path file = dir.resolve(String.format("station-%s-%s.jfr", FILE_TIME.format(LocalDateTime.now()), reason));
+            recording.dump(file);
+            synchronized (this) {
+                dumps++;
+            }
+            logger.warning(String.format("flight recording dumped to %s", file));
+            return file;
+        } finally {
+            dumping.set(false);
+        }
+    }
+
+    public synchronized long getErrorCount() {
+        return errors;
+    }
+
+    public synchronized long getDumpCount() {
+        return dumps;
+    }
+
+    public void logStats() {
+        logger.info(String.format("flight recording stats - errors=%d dumps=%d size=%d",
+            getErrorCount(), getDumpCount(), recording.getSize()));
+    }
+
+    @Override
+    public void close() {
+        recording.close();
+    }
+}
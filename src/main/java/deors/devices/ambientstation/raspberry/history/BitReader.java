@@ -0,0 +1,36 @@
+package deors.devices.ambientstation.raspberry.history;
+
+import java.nio.ByteBuffer;
+
+// reads bit fields written by BitWriter, with absolute gets on a buffer
+class BitReader {
+
+    private final ByteBuffer buffer;
+
+    private long position;
+
+    BitReader(ByteBuffer buffer, int byteOffset) {
+        super();
+        this.buffer = buffer;
+        this.position = (long) byteOffset << 3;
+    }
+
+    long read(int bits) {
+
+        long result = 0;
+        while (bits > 0) {
+            int index = (int) (position >>> 3);
+            int available = 8 - (int) (position & 7);
+            int count = Math.min(available, bits);
+            int chunk = (Byte.toUnsignedInt(buffer.get(index)) >>> (available - count)) & ((1 << count) - 1);
+            result = (result << count) | chunk;
+            bits -= count;
+            position += count;
+        }
+        return result;
+    }
+
+    boolean readBit() {
+        return read(1) != 0;
+    }
+}
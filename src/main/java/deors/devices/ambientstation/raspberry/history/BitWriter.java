@@ -0,0 +1,46 @@
+package deors.devices.ambientstation.raspberry.history;
+
+import java.util.Arrays;
+
+// writes bit fields, most significant bit first, into a byte array
+class BitWriter {
+
+    private final byte[] buffer;
+
+    // position of the next bit, from the start of the array
+    private long position;
+
+    BitWriter(byte[] buffer) {
+        super();
+        this.buffer = buffer;
+    }
+
+    // clears the array and starts writing at the given byte, bits are or-ed in place
+    void reset(int byteOffset) {
+
+        Arrays.fill(buffer, (byte) 0);
+        position = (long) byteOffset << 3;
+    }
+
+    void write(long value, int bits) {
+
+        while (bits > 0) {
+            int index = (int) (position >>> 3);
+            int free = 8 - (int) (position & 7);
+            int count = Math.min(free, bits);
+            int chunk = (int) (value >>> (bits - count)) & ((1 << count) - 1);
+            buffer[index] |= (byte) (chunk << (free - count));
+            bits -= count;
+            position += count;
+        }
+    }
+
+    void writeBit(boolean bit) {
+        write(bit ? 1 : 0, 1);
+    }
+
+    // bits left before the end of the array
+    long remaining() {
+        return ((long) buffer.length << 3) - position;
+    }
+}
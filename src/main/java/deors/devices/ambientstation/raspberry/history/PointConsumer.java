@@ -0,0 +1,8 @@
+package deors.devices.ambientstation.raspberry.history;
+
+// receives the points of a range query, in time order
+@FunctionalInterface
+public interface PointConsumer {
+
+    void accept(long time, double value);
+}
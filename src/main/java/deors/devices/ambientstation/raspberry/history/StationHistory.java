@@ -0,0 +1,129 @@
+package deors.devices.ambientstation.raspberry.history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.statistics.Channel;
+
+// sensor history of the station, one compressed store per channel
+// in a common directory
+//
+// values are kept with the decimals they are published with, so a
+// reading that did not change takes one bit per point
+public class StationHistory implements Closeable {
+
+    private static final String FILE_SUFFIX = ".tsdb";
+
+    private static final Channel[] CHANNELS = Channel.values();
+
+    private final Map<Channel, TimeSeriesStore> stores = new EnumMap<>(Channel.class);
+
+    // samples left out since the last one recorded, only used by record
+    private long skipped = 0;
+
+    // the logger
+    private static Logger logger = Logger.getLogger(StationHistory.class.getName());
+
+    // retention is bounded per channel by maxBytes, and by maxAge when given
+    public StationHistory(Path directory, int blockSize, long maxBytes, Duration maxAge, boolean force) throws IOException {
+        super();
+
+        int maxBlocks = (int) Math.min(Integer.MAX_VALUE, maxBytes / blockSize);
+        try {
+            for (Channel channel : CHANNELS) {
+                stores.put(channel, new TimeSeriesStore(directory.resolve(channel.getKey() + FILE_SUFFIX),
+                    blockSize, maxBlocks, maxAge, force));
+            }
+        } catch (IOException | RuntimeException ex) {
+            closeStores();
+            throw ex;
+        }
+    }
+
+    // samples older than the last one recorded, as after the clock is set
+    // back, are left out until the time catches up; returns false for them
+    public boolean record(AmbientData data) throws IOException {
+
+        long time = data.getSlotTime();
+        try {
+            // every channel takes the same times, so the first one decides
+            append(Channel.TEMPERATURE, time, data.getTemperatureValue());
+        } catch (IllegalArgumentException iae) {
+            if (skipped++ == 0) {
+                logger.warning(String.format("samples are left out of the history until the time catches up: %s",
+                    iae.getMessage()));
+            }
+            return false;
+        }
+        append(Channel.HUMIDITY, time, data.getHumidityValue());
+        append(Channel.LIGHT, time, data.getLightValue());
+        append(Channel.SOUND, time, data.getSoundRms());
+        append(Channel.AIR_QUALITY, time, data.getAirQualityValue());
+
+        if (skipped > 0) {
+            logger.info(String.format("history recording resumed, %d samples were left out", skipped));
+            skipped = 0;
+        }
+        return true;
+    }
+
+    private void append(Channel channel, long time, double value) throws IOException {
+        stores.get(channel).append(time, channel.round(value));
+    }
+
+    public int query(Channel channel, long from, long to, PointConsumer consumer) throws IOException {
+        return stores.get(channel).query(from, to, consumer);
+    }
+
+    public TimeSeriesStore getStore(Channel channel) {
+        return stores.get(channel);
+    }
+
+    public void flush() throws IOException {
+
+        for (TimeSeriesStore store : stores.values()) {
+            store.flush();
+        }
+    }
+
+    public void logStats() {
+
+        try {
+            long bytes = 0;
+            int blocks = 0;
+            for (TimeSeriesStore store : stores.values()) {
+                bytes += store.getFileSize();
+                blocks += store.getBlockCount();
+            }
+            logger.info(String.format("history stats - blocks=%d bytes=%d", blocks, bytes));
+        } catch (IOException ioe) {
+            logger.warning(String.format("history size could not be read: %s", ioe.getMessage()));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeStores();
+    }
+
+    private void closeStores() throws IOException {
+
+        IOException failure = null;
+        for (TimeSeriesStore store : stores.values()) {
+            try {
+                store.close();
+            } catch (IOException ioe) {
+                failure = ioe;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package deors.devices.ambientstation.raspberry.history;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+// one fixed-size block of compressed points, as laid out on storage
+//
+// the header is an i32 magic, an i32 crc32 of everything after it,
+// the i64 block sequence, the i64 first and last times and the i32
+// point count, followed by the points as a bit stream
+//
+// timestamps are stored as delta-of-delta with variable length prefixes,
+// so a steady sampling period takes one bit per point, and values are
+// xor-ed with the previous one, so a repeated reading takes one bit and a
+// small change only stores its meaningful bits
+//
+// the first point time is in the header and its value is stored raw
+class TimeSeriesBlock {
+
+    static final int MAGIC = 0x54534231;
+
+    static final int HEADER_SIZE = 36;
+
+    private static final int CRC_OFFSET = 4;
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int FIRST_TIME_OFFSET = 16;
+    private static final int LAST_TIME_OFFSET = 24;
+    private static final int COUNT_OFFSET = 32;
+
+    // worst case point: 4 + 32 bits of time and 2 + 5 + 6 + 64 bits of value
+    private static final int MAX_POINT_BITS = 113;
+
+    private final byte[] bytes;
+    private final ByteBuffer buffer;
+    private final BitWriter writer;
+    private final CRC32 crc = new CRC32();
+
+    // encoder state
+    private int count;
+    private long firstTime;
+    private long lastTime;
+    private long lastDelta;
+    private long lastValueBits;
+    private int lastLeading;
+    private int lastTrailing;
+
+    TimeSeriesBlock(int size) {
+        super();
+        bytes = new byte[size];
+        buffer = ByteBuffer.wrap(bytes);
+        writer = new BitWriter(bytes);
+    }
+
+    void start(long sequence) {
+
+        writer.reset(HEADER_SIZE);
+        buffer.putInt(0, MAGIC);
+        buffer.putLong(SEQUENCE_OFFSET, sequence);
+        count = 0;
+        lastDelta = 0;
+        lastLeading = -1;
+        lastTrailing = 0;
+    }
+
+    // returns false when the point does not fit and a new block is needed
+    boolean append(long time, double value) {
+
+        long valueBits = Double.doubleToLongBits(value);
+
+        if (count == 0) {
+            writer.write(valueBits, 64);
+            firstTime = time;
+            buffer.putLong(FIRST_TIME_OFFSET, time);
+        } else {
+            if (writer.remaining() < MAX_POINT_BITS) {
+                return false;
+            }
+            long delta = time - lastTime;
+            long deltaOfDelta = delta - lastDelta;
+            if (deltaOfDelta < Integer.MIN_VALUE || deltaOfDelta > Integer.MAX_VALUE) {
+                return false;
+            }
+            writeTime(deltaOfDelta);
+            writeValue(valueBits ^ lastValueBits);
+            lastDelta = delta;
+        }
+
+        lastTime = time;
+        lastValueBits = valueBits;
+        count++;
+        buffer.putLong(LAST_TIME_OFFSET, time);
+        buffer.putInt(COUNT_OFFSET, count);
+        return true;
+    }
+
+    private void writeTime(long deltaOfDelta) {
+
+        if (deltaOfDelta == 0) {
+            writer.writeBit(false);
+        } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+            writer.write(0b10, 2);
+            writer.write(deltaOfDelta + 63, 7);
+        } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+            writer.write(0b110, 3);
+            writer.write(deltaOfDelta + 255, 9);
+        } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+            writer.write(0b1110, 4);
+            writer.write(deltaOfDelta + 2047, 12);
+        } else {
+            writer.write(0b1111, 4);
+            writer.write(deltaOfDelta, 32);
+        }
+    }
+
+    private void writeValue(long xor) {
+
+        if (xor == 0) {
+            writer.writeBit(false);
+            return;
+        }
+
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+
+        if (lastLeading >= 0 && leading >= lastLeading && trailing >= lastTrailing) {
+            // the meaningful bits fit in the previous window
+            writer.write(0b10, 2);
+            writer.write(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+        } else {
+            int meaningful = 64 - leading - trailing;
+            writer.write(0b11, 2);
+            writer.write(leading, 5);
+            writer.write(meaningful - 1, 6);
+            writer.write(xor >>> trailing, meaningful);
+            lastLeading = leading;
+            lastTrailing = trailing;
+        }
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getFirstTime() {
+        return firstTime;
+    }
+
+    long getLastTime() {
+        return lastTime;
+    }
+
+    // the block with its crc updated, ready to be written
+    ByteBuffer seal() {
+
+        crc.reset();
+        crc.update(bytes, SEQUENCE_OFFSET, bytes.length - SEQUENCE_OFFSET);
+        buffer.putInt(CRC_OFFSET, (int) crc.getValue());
+        return buffer.duplicate().clear();
+    }
+
+    byte[] copy() {
+        return bytes.clone();
+    }
+
+    // header fields of a block read from storage, without decoding it
+
+    static boolean isValid(ByteBuffer block, CRC32 crc) {
+
+        if (block.getInt(0) != MAGIC || block.getInt(COUNT_OFFSET) <= 0) {
+            return false;
+        }
+        crc.reset();
+        crc.update(block.duplicate().position(SEQUENCE_OFFSET));
+        return block.getInt(CRC_OFFSET) == (int) crc.getValue();
+    }
+
+    static long getSequence(ByteBuffer block) {
+        return block.getLong(SEQUENCE_OFFSET);
+    }
+
+    static long getFirstTime(ByteBuffer block) {
+        return block.getLong(FIRST_TIME_OFFSET);
+    }
+
+    static long getLastTime(ByteBuffer block) {
+        return block.getLong(LAST_TIME_OFFSET);
+    }
+
+    static int getCount(ByteBuffer block) {
+        return block.getInt(COUNT_OFFSET);
+    }
+
+    // decodes the points of a block within [from, to], returns how many were accepted
+    static int decode(ByteBuffer block, long from, long to, PointConsumer consumer) {
+
+        int count = getCount(block);
+        BitReader reader = new BitReader(block, HEADER_SIZE);
+
+        long time = getFirstTime(block);
+        long valueBits = reader.read(64);
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+        int accepted = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                delta += readDeltaOfDelta(reader);
+                time += delta;
+
+                if (reader.readBit()) {
+                    if (reader.readBit()) {
+                        leading = (int) reader.read(5);
+                        int meaningful = (int) reader.read(6) + 1;
+                        trailing = 64 - leading - meaningful;
+                    }
+                    valueBits ^= reader.read(64 - leading - trailing) << trailing;
+                }
+            }
+            if (time > to) {
+                break;
+            }
+            if (time >= from) {
+                consumer.accept(time, Double.longBitsToDouble(valueBits));
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    private static long readDeltaOfDelta(BitReader reader) {
+
+        if (!reader.readBit()) {
+            return 0;
+        }
+        if (!reader.readBit()) {
+            return reader.read(7) - 63;
+        }
+        if (!reader.readBit()) {
+            return reader.read(9) - 255;
+        }
+        if (!reader.readBit()) {
+            return reader.read(12) - 2047;
+        }
+        return (int) reader.read(32);
+    }
+}
@@ -0,0 +1,282 @@
+package deors.devices.ambientstation.raspberry.history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+// compressed history of one channel, kept in a file of fixed-size blocks
+//
+// points are appended to a block in memory, written to its slot in the
+// file when full and on every flush, and the file is used as a ring of at
+// most maxBlocks slots, so disk use is bounded to maxBlocks x blockSize
+// bytes; with a maximum age, blocks holding only older points are expired
+// and their slots reused before the file grows any further
+//
+// the time span of every block is kept in memory, so range queries only
+// read and decompress the blocks overlapping the range
+//
+// a block torn by a crash fails its crc and its slot is reused first
+public class TimeSeriesStore implements Closeable {
+
+    // path of the block file
+    private final Path path;
+
+    // size of every block
+    private final int blockSize;
+
+    // maximum number of blocks in the file
+    private final int maxBlocks;
+
+    // maximum age of the points kept, in ms, 0 when unbounded
+    private final long maxAgeMillis;
+
+    // whether every block written is forced to the storage device
+    private final boolean force;
+
+    private final FileChannel channel;
+
+    // written blocks oldest first, free slots first of all
+    private final ArrayDeque<Slot> slots = new ArrayDeque<>();
+
+    // block being written and its slot, -1 until the first point
+    private final TimeSeriesBlock current;
+    private int currentIndex = -1;
+    private long nextSequence;
+
+    // slots used in the file
+    private int allocated;
+
+    // whether the current block changed since last written
+    private boolean dirty = false;
+
+    // blocks decompressed by range queries
+    private final LongAdder decodedBlocks = new LongAdder();
+
+    // the logger
+    private static Logger logger = Logger.getLogger(TimeSeriesStore.class.getName());
+
+    public TimeSeriesStore(Path path, int blockSize, int maxBlocks, Duration maxAge, boolean force) throws IOException {
+        super();
+        if (blockSize < 256) {
+            throw new IllegalArgumentException("history block size must be at least 256 bytes");
+        }
+        if (maxBlocks < 2) {
+            throw new IllegalArgumentException("history needs at least two blocks");
+        }
+        this.path = path;
+        this.blockSize = blockSize;
+        this.maxBlocks = maxBlocks;
+        this.maxAgeMillis = maxAge == null ? 0 : maxAge.toMillis();
+        this.force = force;
+
+        current = new TimeSeriesBlock(blockSize);
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        recoverSlots();
+
+        logger.info(String.format("history opened at %s with %d blocks", path, slots.size()));
+    }
+
+    private void recoverSlots() throws IOException {
+
+        // a file bigger than the configured limit is trimmed to it
+        allocated = (int) Math.min(channel.size() / blockSize, maxBlocks);
+        channel.truncate((long) allocated * blockSize);
+
+        ByteBuffer block = ByteBuffer.allocate(blockSize);
+        CRC32 crc = new CRC32();
+        List<Slot> written = new ArrayList<>();
+        for (int index = 0; index < allocated; index++) {
+            readBlock(index, block);
+            if (TimeSeriesBlock.isValid(block, crc)) {
+                written.add(new Slot(index, TimeSeriesBlock.getSequence(block), TimeSeriesBlock.getFirstTime(block),
+                    TimeSeriesBlock.getLastTime(block), TimeSeriesBlock.getCount(block)));
+            } else {
+                slots.addLast(new Slot(index, -1, 0, 0, 0));
+            }
+        }
+        written.sort(Comparator.comparingLong(slot -> slot.sequence));
+        slots.addAll(written);
+        nextSequence = written.isEmpty() ? 0 : written.get(written.size() - 1).sequence + 1;
+    }
+
+    private void readBlock(int index, ByteBuffer block) throws IOException {
+
+        block.clear();
+        long position = (long) index * blockSize;
+        while (block.hasRemaining()) {
+            if (channel.read(block, position + block.position()) < 0) {
+                throw new IOException("unexpected end of the history file");
+            }
+        }
+    }
+
+    // points must be appended in time order
+    public synchronized void append(long time, double value) throws IOException {
+
+        if (currentIndex >= 0 && current.getCount() > 0 && time < current.getLastTime()) {
+            throw new IllegalArgumentException(String.format(
+                "history point at %d is older than the last one at %d", time, current.getLastTime()));
+        }
+
+        if (currentIndex < 0) {
+            startBlock(time);
+        }
+        if (!current.append(time, value)) {
+            writeCurrent();
+            slots.addLast(new Slot(currentIndex, nextSequence - 1,
+                current.getFirstTime(), current.getLastTime(), current.getCount()));
+            startBlock(time);
+            current.append(time, value);
+        }
+        dirty = true;
+    }
+
+    private void startBlock(long time) {
+
+        // free and expired slots are reused first, then the file grows up to its limit
+        Slot oldest = slots.peekFirst();
+        if (oldest != null && (oldest.count == 0 || allocated >= maxBlocks || isExpired(oldest, time))) {
+            slots.removeFirst();
+            currentIndex = oldest.index;
+        } else {
+            currentIndex = allocated++;
+        }
+        current.start(nextSequence++);
+    }
+
+    private boolean isExpired(Slot slot, long now) {
+        return maxAgeMillis > 0 && slot.lastTime < now - maxAgeMillis;
+    }
+
+    private void writeCurrent() throws IOException {
+
+        ByteBuffer block = current.seal();
+        long position = (long) currentIndex * blockSize;
+        while (block.hasRemaining()) {
+            channel.write(block, position + block.position());
+        }
+        if (force) {
+            channel.force(false);
+        }
+        dirty = false;
+    }
+
+    // writes the block being filled, so a restart loses nothing appended before
+    public synchronized void flush() throws IOException {
+
+        if (dirty && current.getCount() > 0) {
+            writeCurrent();
+        }
+    }
+
+    // sends the points within [from, to] to the consumer, oldest first,
+    // and returns how many were sent
+    //
+    // blocks are read without holding the store lock, and a slot reused
+    // while being read is detected by its sequence and skipped
+    public int query(long from, long to, PointConsumer consumer) throws IOException {
+
+        List<Slot> candidates = new ArrayList<>();
+        byte[] currentCopy = null;
+        synchronized (this) {
+            long newest = current.getCount() > 0 ? current.getLastTime() : Long.MIN_VALUE;
+            if (maxAgeMillis > 0 && newest != Long.MIN_VALUE) {
+                from = Math.max(from, newest - maxAgeMillis);
+            }
+            for (Slot slot : slots) {
+                if (slot.count > 0 && slot.lastTime >= from && slot.firstTime <= to) {
+                    candidates.add(slot);
+                }
+            }
+            if (current.getCount() > 0 && current.getLastTime() >= from && current.getFirstTime() <= to) {
+                currentCopy = current.copy();
+            }
+        }
+
+        int points = 0;
+        ByteBuffer block = ByteBuffer.allocate(blockSize);
+        CRC32 crc = new CRC32();
+        for (Slot slot : candidates) {
+            readBlock(slot.index, block);
+            if (!TimeSeriesBlock.isValid(block, crc) || TimeSeriesBlock.getSequence(block) != slot.sequence) {
+                continue;
+            }
+            decodedBlocks.increment();
+            points += TimeSeriesBlock.decode(block, from, to, consumer);
+        }
+        if (currentCopy != null) {
+            decodedBlocks.increment();
+            points += TimeSeriesBlock.decode(ByteBuffer.wrap(currentCopy), from, to, consumer);
+        }
+        return points;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // blocks holding points, including the one being filled
+    public synchronized int getBlockCount() {
+
+        int count = current.getCount() > 0 ? 1 : 0;
+        for (Slot slot : slots) {
+            if (slot.count > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized long getFileSize() throws IOException {
+        return channel.size();
+    }
+
+    public long getDecodedBlocks() {
+        return decodedBlocks.sum();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // position and time span of a written block
+    private static class Slot {
+
+        final int index;
+        final long sequence;
+        final long firstTime;
+        final long lastTime;
+        final int count;
+
+        Slot(int index, long sequence, long firstTime, long lastTime, int count) {
+            this.index = index;
+            this.sequence = sequence;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package deors.devices.ambientstation.raspberry.http;
+
+import java.util.Locale;
+
+// what the live stream does with a client whose frames pile up
+public enum SlowClientPolicy {
+
+    // the oldest frames not yet started are skipped, the client stays connected
+    SKIP,
+
+    // the client is disconnected, it may reconnect and start afresh
+    DISCONNECT;
+
+    // accepts skip and disconnect, defaults to skip
+    public static SlowClientPolicy fromProperty(String value) {
+
+        if (value == null || value.isBlank()) {
+            return SKIP;
+        }
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
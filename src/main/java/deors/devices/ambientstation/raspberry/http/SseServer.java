@@ -0,0 +1,394 @@
+package deors.devices.ambientstation.raspberry.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.encoding.JsonAmbientDataEncoder;
+
+// live stream of every sample as server-sent events, on /stream
+//
+// each sample is encoded once into a read-only frame, handed over to the
+// selector thread without blocking, and written to every client through
+// non-blocking channels; clients share the frame bytes, each with its own
+// position
+//
+// a client whose frames pile up beyond its queue is handled by the slow
+// client policy, so a slow reader never holds back the others nor the
+// sampling cycle
+public class SseServer implements Closeable {
+
+    private static final String PATH = "/stream";
+
+    private static final byte[] STREAM_HEADERS = ascii("HTTP/1.1 200 OK\r\n"
+        + "Content-Type: text/event-stream\r\n"
+        + "Cache-Control: no-cache\r\n"
+        + "Connection: keep-alive\r\n\r\n");
+    private static final byte[] NOT_FOUND = ascii("HTTP/1.1 404 Not Found\r\n"
+        + "Content-Length: 0\r\nConnection: close\r\n\r\n");
+    private static final byte[] BAD_REQUEST = ascii("HTTP/1.1 400 Bad Request\r\n"
+        + "Content-Length: 0\r\nConnection: close\r\n\r\n");
+    private static final byte[] BUSY = ascii("HTTP/1.1 503 Service Unavailable\r\n"
+        + "Content-Length: 0\r\nConnection: close\r\n\r\n");
+
+    private static final byte[] DATA = ascii("data: ");
+    private static final byte[] FRAME_END = ascii("\n\n");
+
+    // longest request head accepted
+    private static final int MAX_REQUEST = 2048;
+
+    private final Selector selector;
+
+    private final ServerSocketChannel serverChannel;
+
+    private final Thread thread;
+
+    private final int maxClients;
+
+    // frames queued per client before the slow client policy applies
+    private final int clientQueue;
+
+    private final SlowClientPolicy policy;
+
+    // frames handed over by the sampling cycle to the selector thread
+    private final BlockingQueue<ByteBuffer> frames;
+
+    // connections, only used by the selector thread
+    private final List<Client> clients = new ArrayList<>();
+
+    // scratch buffer for reads from streaming clients
+    private final ByteBuffer discard = ByteBuffer.allocate(256);
+
+    // only used by the sampling cycle through publish()
+    private final JsonAmbientDataEncoder encoder = new JsonAmbientDataEncoder();
+
+    private volatile int streamingClients = 0;
+    private volatile boolean running = true;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder handoverDropped = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+
+    // the logger
+    private static Logger logger = Logger.getLogger(SseServer.class.getName());
+
+    public SseServer(InetSocketAddress address, int maxClients, int clientQueue, SlowClientPolicy policy) throws IOException {
+        super();
+        if (clientQueue < 2) {
+            throw new IllegalArgumentException("live stream client queue needs room for at least two frames");
+        }
+        this.maxClients = maxClients;
+        this.clientQueue = clientQueue;
+        this.policy = policy;
+        this.frames = new ArrayBlockingQueue<>(clientQueue);
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        thread = new Thread(this::run, "sse");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+
+        thread.start();
+
+        logger.info(String.format("live stream listening on port %d, %s slow clients",
+            getPort(), policy.toString().toLowerCase(Locale.ROOT)));
+    }
+
+    // called by the sampling cycle, never blocks
+    public void publish(AmbientData data) {
+
+        // nobody is listening, nothing to encode
+        if (streamingClients == 0) {
+            return;
+        }
+
+        ByteBuffer json = encoder.encode(data);
+        ByteBuffer frame = ByteBuffer.allocate(DATA.length + json.remaining() + FRAME_END.length);
+        frame.put(DATA).put(json).put(FRAME_END).flip();
+
+        if (frames.offer(frame.asReadOnlyBuffer())) {
+            selector.wakeup();
+        } else {
+            handoverDropped.increment();
+        }
+    }
+
+    private void run() {
+
+        while (running) {
+            try {
+                selector.select(1000);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Client client = (Client) key.attachment();
+                        if (key.isReadable()) {
+                            client.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            client.flush();
+                        }
+                    }
+                }
+
+                ByteBuffer frame;
+                while ((frame = frames.poll()) != null) {
+                    broadcast(frame);
+                }
+            } catch (IOException ioe) {
+                logger.warning(String.format("live stream error: %s", ioe.getMessage()));
+            }
+        }
+
+        for (Client client : new ArrayList<>(clients)) {
+            client.close();
+        }
+    }
+
+    private void accept() throws IOException {
+
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Client client = new Client(channel);
+        client.key = channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+
+        if (clients.size() > maxClients) {
+            client.reject(BUSY);
+        }
+    }
+
+    private void broadcast(ByteBuffer frame) {
+
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            if (client.streaming) {
+                client.send(frame);
+            }
+        }
+        published.increment();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getClientCount() {
+        return streamingClients;
+    }
+
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    public long getDisconnectedCount() {
+        return disconnected.sum();
+    }
+
+    public void logStats() {
+
+        logger.info(String.format("live stream stats - clients=%d published=%d skipped=%d disconnected=%d dropped=%d",
+            streamingClients, published.sum(), skipped.sum(), disconnected.sum(), handoverDropped.sum()));
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        serverChannel.close();
+        selector.close();
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // one connection, only used by the selector thread
+    private class Client {
+
+        final SocketChannel channel;
+        SelectionKey key;
+
+        // request head, until the stream starts
+        ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST);
+
+        // frames not yet written, the first one may be partially written
+        final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+
+        // response headers, never skipped
+        ByteBuffer headers;
+
+        boolean streaming = false;
+        boolean closeWhenFlushed = false;
+        boolean closed = false;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() {
+
+            try {
+                if (request == null || closeWhenFlushed) {
+                    // nothing is expected from a streaming client but its goodbye
+                    discard.clear();
+                    if (channel.read(discard) < 0) {
+                        close();
+                    }
+                    return;
+                }
+                if (channel.read(request) < 0) {
+                    close();
+                    return;
+                }
+                parseRequest();
+            } catch (IOException ioe) {
+                close();
+            }
+        }
+
+        private void parseRequest() {
+
+            String head = new String(request.array(), 0, request.position(), StandardCharsets.US_ASCII);
+            if (!head.contains("\r\n\r\n")) {
+                if (!request.hasRemaining()) {
+                    reject(BAD_REQUEST);
+                }
+                return;
+            }
+            request = null;
+
+            String[] line = head.substring(0, head.indexOf("\r\n")).split(" ");
+            String path = line.length == 3 ? line[1] : "";
+            int query = path.indexOf('?');
+            if (query >= 0) {
+                path = path.substring(0, query);
+            }
+            if (!"GET".equals(line[0]) || !PATH.equals(path)) {
+                reject(NOT_FOUND);
+                return;
+            }
+
+            streaming = true;
+            streamingClients++;
+            headers = ByteBuffer.wrap(STREAM_HEADERS);
+            pending.addLast(headers);
+            flush();
+        }
+
+        void reject(byte[] response) {
+
+            closeWhenFlushed = true;
+            pending.addLast(ByteBuffer.wrap(response));
+            flush();
+        }
+
+        void send(ByteBuffer frame) {
+
+            if (pending.size() >= clientQueue) {
+                if (policy == SlowClientPolicy.DISCONNECT) {
+                    disconnected.increment();
+                    close();
+                    return;
+                }
+                // the headers and a frame partially written must be finished,
+                // the next one is skipped
+                ByteBuffer first = pending.pollFirst();
+                if (first == headers || first.position() > 0) {
+                    pending.pollFirst();
+                    pending.addFirst(first);
+                }
+                skipped.increment();
+            }
+            pending.addLast(frame.duplicate());
+            if (pending.size() == 1) {
+                flush();
+            }
+        }
+
+        void flush() {
+
+            try {
+                while (!pending.isEmpty()) {
+                    ByteBuffer first = pending.peekFirst();
+                    channel.write(first);
+                    if (first.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    pending.pollFirst();
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                if (closeWhenFlushed) {
+                    close();
+                }
+            } catch (IOException ioe) {
+                close();
+            }
+        }
+
+        void close() {
+
+            if (closed) {
+                return;
+            }
+            closed = true;
+            clients.remove(this);
+            if (streaming) {
+                streamingClients--;
+            }
+            pending.clear();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                logger.log(Level.FINE, "live stream client could not be closed", ioe);
+            }
+        }
+    }
+}
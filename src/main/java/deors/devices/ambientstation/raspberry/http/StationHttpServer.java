@@ -0,0 +1,261 @@
+package deors.devices.ambientstation.raspberry.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.encoding.JsonAmbientDataEncoder;
+import deors.devices.ambientstation.raspberry.metrics.MetricsRegistry;
+import deors.devices.ambientstation.raspberry.publishers.ConnectionState;
+
+// read-only http endpoints of the station, on the jdk built-in server
+//
+// /current   the latest sample, as published
+// /ranges    min, max and mean of the latest sample by window
+// /health    station status, 503 when the sampling cycle stalls
+// /metrics   station metrics in the prometheus text format
+//
+// response bodies are serialized once per sampling cycle by update(), and
+// every request just writes the latest bytes, so polling never formats
+// anything nor touches the sensors; only metrics are written per request,
+// as they are scraped far less often than samples are taken
+public class StationHttpServer implements Closeable {
+
+    private static final String CURRENT = "/current";
+    private static final String RANGES = "/ranges";
+    private static final String HEALTH = "/health";
+    private static final String METRICS = "/metrics";
+
+    private static final String JSON = "application/json";
+
+    private static final byte[] NOT_READY = "{\"status\":\"starting\"}".getBytes(StandardCharsets.US_ASCII);
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    // health turns to 503 when the latest sample is older than this
+    private final long staleAfterMillis;
+
+    // only used by the sampling cycle through update()
+    private final JsonAmbientDataEncoder encoder = new JsonAmbientDataEncoder();
+
+    // bodies of the latest cycle, null until the first one
+    private final AtomicReference<Responses> responses = new AtomicReference<>();
+
+    private final LongAdder requests = new LongAdder();
+
+    // null when metrics are not served
+    private final MetricsRegistry metrics;
+
+    // the logger
+    private static Logger logger = Logger.getLogger(StationHttpServer.class.getName());
+
+    public StationHttpServer(InetSocketAddress address, int threads, Duration staleAfter, MetricsRegistry metrics)
+            throws IOException {
+        super();
+        this.staleAfterMillis = staleAfter.toMillis();
+        this.metrics = metrics;
+
+        executor = Executors.newFixedThreadPool(Math.max(1, threads), new HttpThreadFactory());
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext(CURRENT, this::handleCurrent);
+        server.createContext(RANGES, this::handleRanges);
+        server.createContext(HEALTH, this::handleHealth);
+        if (metrics != null) {
+            server.createContext(METRICS, this::handleMetrics);
+        }
+        // any other path, answered here as the server drops the connection otherwise
+        server.createContext("/", exchange -> accept(exchange, null));
+    }
+
+    public void start() {
+
+        server.start();
+
+        logger.info(String.format("http endpoints listening on port %d", getPort()));
+    }
+
+    // serializes the responses of a sampling cycle, called once per cycle
+    public void update(AmbientData data, ConnectionState publisherState, int buffered) {
+
+        byte[] current = bytes(encoder.encode(data));
+        byte[] ranges = bytes(encoder.encodeRanges(data));
+        String publisher = publisherState.toString().toLowerCase(Locale.ROOT);
+        byte[] health = health(data, "up", publisher, buffered);
+        byte[] stale = health(data, "stale", publisher, buffered);
+
+        responses.set(new Responses(data.getSlotTime(), current, ranges, health, stale));
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+
+        byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+
+    private static byte[] health(AmbientData data, String status, String publisher, int buffered) {
+
+        return String.format("{\"id\":\"%s\",\"status\":\"%s\",\"time\":%d,\"publisher\":\"%s\",\"buffered\":%d}",
+            data.getId(), status, data.getSlotTime(), publisher, buffered).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void handleCurrent(HttpExchange exchange) throws IOException {
+
+        if (accept(exchange, CURRENT)) {
+            Responses latest = responses.get();
+            send(exchange, latest == null ? 503 : 200, latest == null ? NOT_READY : latest.current);
+        }
+    }
+
+    private void handleRanges(HttpExchange exchange) throws IOException {
+
+        if (accept(exchange, RANGES)) {
+            Responses latest = responses.get();
+            send(exchange, latest == null ? 503 : 200, latest == null ? NOT_READY : latest.ranges);
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+
+        if (accept(exchange, HEALTH)) {
+            Responses latest = responses.get();
+            if (latest == null) {
+                send(exchange, 503, NOT_READY);
+            } else if (System.currentTimeMillis() - latest.slotTime > staleAfterMillis) {
+                send(exchange, 503, latest.stale);
+            } else {
+                send(exchange, 200, latest.health);
+            }
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+
+        if (accept(exchange, METRICS)) {
+            send(exchange, 200, metrics.toPrometheus().getBytes(StandardCharsets.UTF_8), MetricsRegistry.CONTENT_TYPE);
+        }
+    }
+
+    // only GET and HEAD of the exact path are served
+    private boolean accept(HttpExchange exchange, String path) throws IOException {
+
+        requests.increment();
+
+        if (path == null || !path.equals(exchange.getRequestURI().getPath())) {
+            sendEmpty(exchange, 404);
+            return false;
+        }
+        String method = exchange.getRequestMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+            sendEmpty(exchange, 405);
+            return false;
+        }
+        return true;
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        send(exchange, status, body, JSON);
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] body, String contentType) throws IOException {
+
+        try (exchange) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                sendEmpty(exchange, status);
+                return;
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    // a response without body ends the exchange as soon as the headers are
+    // sent, and the server drops the connection unless the request was read
+    // to the end, so clients reusing it would fail
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+
+        try (exchange) {
+            exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+            exchange.sendResponseHeaders(status, -1);
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public void logStats() {
+        logger.info(String.format("http stats - requests=%d", requests.sum()));
+    }
+
+    @Override
+    public void close() {
+
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // bodies serialized in one cycle, never modified afterwards
+    private static class Responses {
+
+        final long slotTime;
+        final byte[] current;
+        final byte[] ranges;
+        final byte[] health;
+        final byte[] stale;
+
+        Responses(long slotTime, byte[] current, byte[] ranges, byte[] health, byte[] stale) {
+            this.slotTime = slotTime;
+            this.current = current;
+            this.ranges = ranges;
+            this.health = health;
+            this.stale = stale;
+        }
+    }
+
+    private static class HttpThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "http-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
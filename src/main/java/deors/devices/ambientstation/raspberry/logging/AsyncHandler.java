@@ -0,0 +1,162 @@
+package deors.devices.ambientstation.raspberry.logging;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+
+// hands log records to a bounded queue and writes them to the target
+// handler from a worker thread, so the sampling cycle never waits for
+// formatting or for a slow console or journal
+//
+// when the queue is full new records are dropped and counted, and the
+// worker writes how many were lost once it catches up
+//
+// set it up in logging.properties with the keys of this class name and
+//   .target      handler the records are written to, ConsoleHandler
+//   .capacity    records waiting to be written, 1000
+//   .level       lowest level handled, ALL
+// the source class and method are not kept, formats show the logger name
+public class AsyncHandler extends Handler {
+
+    // how long close waits for the worker to write what is queued
+    private static final long CLOSE_TIMEOUT_MILLIS = 2000;
+
+    private final Handler target;
+
+    private final BlockingQueue<LogRecord> queue;
+
+    private final Thread worker;
+
+    private volatile boolean closed = false;
+
+    private final LongAdder dropped = new LongAdder();
+
+    // dropped records already written as lost, only used by the worker
+    private long reported = 0;
+
+    // created by the log manager, configured from the logging properties
+    public AsyncHandler() {
+        this(createTarget(getProperty("target", ConsoleHandler.class.getName())),
+            Integer.parseInt(getProperty("capacity", "1000")));
+
+        setLevel(Level.parse(getProperty("level", Level.ALL.getName())));
+    }
+
+    public AsyncHandler(Handler target, int capacity) {
+        super();
+        this.target = target;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        worker = new Thread(this::work, "log-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private static String getProperty(String key, String defValue) {
+
+        String value = LogManager.getLogManager().getProperty(AsyncHandler.class.getName() + "." + key);
+        return value == null || value.isBlank() ? defValue : value.trim();
+    }
+
+    private static Handler createTarget(String className) {
+
+        try {
+            return (Handler) Class.forName(className, true, ClassLoader.getSystemClassLoader())
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException ex) {
+            throw new IllegalArgumentException(String.format("log handler %s could not be created", className), ex);
+        }
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+
+        if (record == null || !isLoggable(record)) {
+            return;
+        }
+        // once closed, the few records logged on the way out are written at once
+        if (closed) {
+            target.publish(record);
+            return;
+        }
+        if (!queue.offer(record)) {
+            dropped.increment();
+        }
+    }
+
+    private void work() {
+
+        try {
+            while (!closed) {
+                LogRecord record = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    write(record);
+                }
+                reportDropped();
+            }
+        } catch (InterruptedException ie) {
+            // closing
+        }
+    }
+
+    private void write(LogRecord record) {
+
+        try {
+            target.publish(record);
+        } catch (RuntimeException ex) {
+            reportError("log record could not be written", ex, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    private void reportDropped() {
+
+        long count = dropped.sum();
+        if (count > reported && queue.isEmpty()) {
+            LogRecord record = new LogRecord(Level.WARNING,
+                String.format("%d log records were dropped, the log queue was full", count - reported));
+            record.setLoggerName(AsyncHandler.class.getName());
+            write(record);
+            reported = count;
+        }
+    }
+
+    @Override
+    public void flush() {
+        target.flush();
+    }
+
+    @Override
+    public void close() {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            worker.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        LogRecord record;
+        while ((record = queue.poll()) != null) {
+            write(record);
+        }
+        reportDropped();
+        target.close();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+}
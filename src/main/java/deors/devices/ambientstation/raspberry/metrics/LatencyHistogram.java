@@ -0,0 +1,116 @@
+package deors.devices.ambientstation.raspberry.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+
+    // default bucket upper bounds, from 100 us to 1 s
+    public static final long[] DEFAULT_BOUNDS_NANOS = {
+        TimeUnit.MICROSECONDS.toNanos(100),
+        TimeUnit.MICROSECONDS.toNanos(500),
+        TimeUnit.MILLISECONDS.toNanos(1),
+        TimeUnit.MILLISECONDS.toNanos(2),
+        TimeUnit.MILLISECONDS.toNanos(5),
+        TimeUnit.MILLISECONDS.toNanos(10),
+        TimeUnit.MILLISECONDS.toNanos(20),
+        TimeUnit.MILLISECONDS.toNanos(50),
+        TimeUnit.MILLISECONDS.toNanos(100),
+        TimeUnit.MILLISECONDS.toNanos(200),
+        TimeUnit.MILLISECONDS.toNanos(500),
+        TimeUnit.SECONDS.toNanos(1)
+    };
+
+    // inclusive upper bound of each bucket, the last bucket has no bound
+    private final long[] boundsNanos;
+
+    // observations per bucket, one more than bounds for the overflow bucket
+    private final AtomicLongArray counts;
+
+    // totals to calculate the mean
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    // maximum observed value
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram() {
+        this(DEFAULT_BOUNDS_NANOS);
+    }
+
+    public LatencyHistogram(long[] boundsNanos) {
+        super();
+        this.boundsNanos = boundsNanos.clone();
+        this.counts = new AtomicLongArray(boundsNanos.length + 1);
+    }
+
+    public void record(long nanos) {
+
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sumNanos.add(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    private int bucketOf(long value) {
+
+        // few buckets, a linear scan is as fast as a binary search
+        for (int i = 0; i < boundsNanos.length; i++) {
+            if (value <= boundsNanos[i]) {
+                return i;
+            }
+        }
+        return boundsNanos.length;
+    }
+
+    public int getBucketCount() {
+        return counts.length();
+    }
+
+    public long getBucketBoundNanos(int bucket) {
+        return bucket < boundsNanos.length ? boundsNanos[bucket] : Long.MAX_VALUE;
+    }
+
+    public long getBucketValue(int bucket) {
+        return counts.get(bucket);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanMillis() {
+        long total = getCount();
+        return total == 0 ? 0.0 : (double) getSumNanos() / total / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("count=%d mean=%.3fms max=%.3fms",
+            getCount(), getMeanMillis(), (double) getMaxNanos() / TimeUnit.MILLISECONDS.toNanos(1)));
+        for (int i = 0; i < counts.length(); i++) {
+            long value = counts.get(i);
+            if (value > 0) {
+                if (i < boundsNanos.length) {
+                    sb.append(String.format(" <=%.1fms:%d", (double) boundsNanos[i] / TimeUnit.MILLISECONDS.toNanos(1), value));
+                } else {
+                    sb.append(String.format(" >%.1fms:%d", (double) boundsNanos[i - 1] / TimeUnit.MILLISECONDS.toNanos(1), value));
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,155 @@
+package deors.devices.ambientstation.raspberry.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// station metrics by name, written in the prometheus text format
+//
+// the registry only keeps references to counters, gauges and histograms
+// owned by the station parts, which update them without knowing about it,
+// so nothing is done for the metrics until they are scraped
+public class MetricsRegistry {
+
+    // prefix of every metric name
+    private static final String PREFIX = "ambientstation_";
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // families in registration order
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    // counts of something that only goes up, like samples dropped
+    public synchronized void counter(String name, String help, String labels, LongSupplier value) {
+        family(name + "_total", help, "counter").series.add(new Series(labels, value, null));
+    }
+
+    // values that go up and down, like buffered samples
+    public synchronized void gauge(String name, String help, String labels, LongSupplier value) {
+        family(name, help, "gauge").series.add(new Series(labels, value, null));
+    }
+
+    // latency histograms, written in seconds
+    public synchronized void histogram(String name, String help, String labels, LatencyHistogram histogram) {
+        family(name + "_seconds", help, "histogram").series.add(new Series(labels, null, histogram));
+    }
+
+    // latency and failures of an operation, labelled with its name
+    public synchronized void operation(String operation, OperationMetrics metrics) {
+
+        String labels = label("operation", operation);
+        histogram("operation_duration", "Duration of device, publishing and connection operations.",
+            labels, metrics.getLatency());
+        counter("operation_failures", "Operations that failed.", labels, metrics::getFailureCount);
+    }
+
+    // a label pair, to be used as the labels of a series
+    public static String label(String name, String value) {
+        return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+    }
+
+    private Family family(String name, String help, String type) {
+
+        Family family = families.computeIfAbsent(PREFIX + name, key -> new Family(key, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(String.format("metric %s is already a %s", family.name, family.type));
+        }
+        return family;
+    }
+
+    public synchronized String toPrometheus() {
+
+        StringBuilder sb = new StringBuilder(4096);
+        for (Family family : families.values()) {
+            sb.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            sb.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Series series : family.series) {
+                if (series.histogram != null) {
+                    writeHistogram(sb, family.name, series.labels, series.histogram);
+                } else {
+                    writeSample(sb, family.name, series.labels, null, Long.toString(series.value.getAsLong()));
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void writeHistogram(StringBuilder sb, String name, String labels, LatencyHistogram histogram) {
+
+        // buckets are cumulative, and the count is taken from them so
+        // the +Inf bucket always matches it while observations go on
+        long cumulative = 0;
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            cumulative += histogram.getBucketValue(i);
+            long bound = histogram.getBucketBoundNanos(i);
+            String le = bound == Long.MAX_VALUE ? "+Inf" : formatSeconds(bound);
+            writeSample(sb, name + "_bucket", labels, "le=\"" + le + '"', Long.toString(cumulative));
+        }
+        writeSample(sb, name + "_sum", labels, null, formatSeconds(histogram.getSumNanos()));
+        writeSample(sb, name + "_count", labels, null, Long.toString(cumulative));
+    }
+
+    private static void writeSample(StringBuilder sb, String name, String labels, String extraLabel, String value) {
+
+        sb.append(name);
+        boolean hasLabels = labels != null && !labels.isEmpty();
+        if (hasLabels || extraLabel != null) {
+            sb.append('{');
+            if (hasLabels) {
+                sb.append(labels);
+            }
+            if (extraLabel != null) {
+                sb.append(hasLabels ? "," : "").append(extraLabel);
+            }
+            sb.append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static String formatSeconds(long nanos) {
+
+        // plain decimal notation, trailing zeros removed
+        String text = String.format(Locale.ROOT, "%.9f", nanos / NANOS_PER_SECOND);
+        int end = text.length();
+        while (text.charAt(end - 1) == '0') {
+            end--;
+        }
+        if (text.charAt(end - 1) == '.') {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    private static class Family {
+
+        final String name;
+        final String help;
+        final String type;
+        final List<Series> series = new ArrayList<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private static class Series {
+
+        final String labels;
+        final LongSupplier value;
+        final LatencyHistogram histogram;
+
+        Series(String labels, LongSupplier value, LatencyHistogram histogram) {
+            this.labels = labels;
+            this.value = value;
+            this.histogram = histogram;
+        }
+    }
+}
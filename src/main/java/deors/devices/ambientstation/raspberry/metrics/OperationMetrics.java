@@ -0,0 +1,63 @@
+package deors.devices.ambientstation.raspberry.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// latency and failures of one kind of operation, like a sensor read
+// callers take System.nanoTime() before the operation and report the end
+// with success() or failure(), so nothing is allocated per operation
+public class OperationMetrics {
+
+    // from 100 us to 5 s, device access on the i2c bus takes a few ms
+    // and a degrading bus shows as a shift to the higher buckets
+    public static final long[] DEFAULT_BOUNDS_NANOS = {
+        100_000L,
+        250_000L,
+        500_000L,
+        1_000_000L,
+        2_500_000L,
+        5_000_000L,
+        10_000_000L,
+        25_000_000L,
+        50_000_000L,
+        100_000_000L,
+        250_000_000L,
+        500_000_000L,
+        1_000_000_000L,
+        5_000_000_000L
+    };
+
+    private final LatencyHistogram latency;
+
+    private final LongAdder failures = new LongAdder();
+
+    public OperationMetrics() {
+        this(DEFAULT_BOUNDS_NANOS);
+    }
+
+    public OperationMetrics(long[] boundsNanos) {
+        super();
+        this.latency = new LatencyHistogram(boundsNanos);
+    }
+
+    public void success(long startNanos) {
+        latency.record(System.nanoTime() - startNanos);
+    }
+
+    // failed operations count in the latency too, a timeout is slow
+    public void failure(long startNanos) {
+        latency.record(System.nanoTime() - startNanos);
+        failures.increment();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+}
@@ -0,0 +1,282 @@
+package deors.devices.ambientstation.raspberry.publishers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import deors.devices.ambientstation.raspberry.Durations;
+import deors.devices.ambientstation.raspberry.metrics.LatencyHistogram;
+
+// publishes without waiting for the broker acknowledgement, keeping up to
+// a configured number of messages in flight; publish only blocks when the
+// window is full, and acknowledgements are measured in the completion callbacks
+public class AsyncMqttPublisher implements Publisher {
+
+    public String topic;
+
+    private MqttAsyncClient mqttClient;
+
+    // quality of service of the published messages
+    private int qos;
+
+    // permits for messages in flight, released when acknowledged or failed
+    private Semaphore inFlight;
+    private int maxInFlight;
+
+    // how long publish waits for room in the in-flight window
+    private Duration windowTimeout;
+
+    // how long close waits for the messages in flight and the disconnection
+    private Duration closeTimeout;
+
+    // delivery outcomes and acknowledgement latency
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+
+    // failures already reported by checkDelivery
+    private long reportedFailures = 0;
+
+    // what each message in flight carries to the completion callback
+    private static class Sent {
+
+        private final long nanos;
+        private final DeliveryCallback callback;
+
+        private Sent(long nanos, DeliveryCallback callback) {
+            this.nanos = nanos;
+            this.callback = callback;
+        }
+    }
+
+    // completion callback shared by every message
+    private final IMqttActionListener completion = new IMqttActionListener() {
+
+        @Override
+        public void onSuccess(IMqttToken token) {
+            Sent sent = (Sent) token.getUserContext();
+            delivered.increment();
+            inFlight.release();
+            ackLatency.record(System.nanoTime() - sent.nanos);
+            if (sent.callback != null) {
+                sent.callback.completed(true);
+            }
+        }
+
+        @Override
+        public void onFailure(IMqttToken token, Throwable ex) {
+            // counted before the permit is released, so no failure is missed
+            // when checkDelivery finds nothing in flight
+            Sent sent = (Sent) token.getUserContext();
+            failed.increment();
+            inFlight.release();
+            logger.log(Level.WARNING, "message could not be delivered to the MQTT broker", ex);
+            if (sent.callback != null) {
+                sent.callback.completed(false);
+            }
+        }
+    };
+
+    private Logger logger = Logger.getLogger(AsyncMqttPublisher.class.getName());
+
+    @Override
+    public void connect(Properties properties) throws IOException {
+
+        if (mqttClient != null) {
+            return;
+        }
+
+        String deviceId = properties.getProperty("device.id");
+        String brokerUrl = properties.getProperty("publisher.mqtt.broker.url");
+
+        topic = properties.getProperty("publisher.mqtt.topic");
+        qos = Integer.parseInt(properties.getProperty("publisher.mqtt.qos", "2").trim());
+        maxInFlight = Integer.parseInt(properties.getProperty("publisher.mqtt.inflight", "10").trim());
+        windowTimeout = Durations.parse(properties.getProperty("publisher.mqtt.inflight.timeout"), Duration.ofSeconds(10));
+        closeTimeout = Durations.parse(properties.getProperty("publisher.mqtt.close.timeout"), Duration.ofSeconds(1));
+        inFlight = new Semaphore(maxInFlight);
+
+        logger.info("connecting with the MQTT broker at: " + brokerUrl);
+        logger.info("messages will be published at topic: " + topic);
+        logger.info(String.format("messages will be published with qos %d and up to %d in flight", qos, maxInFlight));
+
+        try {
+            mqttClient = new MqttAsyncClient(brokerUrl, deviceId, new MemoryPersistence());
+            MqttConnectOptions connOpts = new MqttConnectOptions();
+            connOpts.setCleanSession(true);
+            // lost connections are recovered by paho itself, the first
+            // connection and broken publishers are retried by ConnectionManager
+            connOpts.setAutomaticReconnect(Boolean.parseBoolean(properties.getProperty("publisher.mqtt.reconnect", "true").trim()));
+            connOpts.setConnectionTimeout((int) Durations.parse(properties.getProperty("publisher.mqtt.connect.timeout"), Duration.ofSeconds(10)).toSeconds());
+            connOpts.setMaxInflight(maxInFlight);
+            mqttClient.connect(connOpts).waitForCompletion();
+
+            logger.info("connection with the MQTT broker established");
+        } catch (MqttException ex) {
+            // retries are logged by the connection manager
+            logger.log(Level.FINE, "unable to connect to the MQTT broker", ex);
+            closeClient();
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public void publish(String message) throws IOException {
+
+        if (mqttClient != null && message != null) {
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("publishing message to the MQTT broker: " + message);
+            }
+
+            publish(message.getBytes(StandardCharsets.UTF_8), null);
+        }
+    }
+
+    @Override
+    public boolean publishesBytes() {
+        return true;
+    }
+
+    @Override
+    public void publish(ByteBuffer message) throws IOException {
+        publish(message, (DeliveryCallback) null);
+    }
+
+    @Override
+    public void publish(ByteBuffer message, DeliveryCallback callback) throws IOException {
+
+        if (mqttClient != null && message != null) {
+
+            // payloads are logged at fine only, every publish at info floods the journal
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("publishing message to the MQTT broker: " + StandardCharsets.UTF_8.decode(message.duplicate()));
+            }
+
+            // the message stays in flight after returning, so it gets its own copy
+            byte[] payload = new byte[message.remaining()];
+            message.get(payload);
+            publish(payload, callback);
+        }
+    }
+
+    private void publish(byte[] payload, DeliveryCallback callback) throws IOException {
+
+        try {
+            if (!inFlight.tryAcquire(windowTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new IOException("no acknowledgement from the MQTT broker, the in-flight window is full");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the in-flight window", ie);
+        }
+
+        final MqttMessage data = new MqttMessage(payload);
+        data.setQos(qos);
+        try {
+            mqttClient.publish(topic, data, new Sent(System.nanoTime(), callback), completion);
+        } catch (MqttException ex) {
+            inFlight.release();
+            logger.log(Level.SEVERE, "unable to publish message to the MQTT broker", ex);
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized Delivery checkDelivery() {
+
+        long failures = failed.sum();
+        if (failures != reportedFailures) {
+            reportedFailures = failures;
+            return Delivery.FAILED;
+        }
+        return inFlight != null && getInFlight() > 0 ? Delivery.PENDING : Delivery.DELIVERED;
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public LatencyHistogram getAckLatency() {
+        return ackLatency;
+    }
+
+    @Override
+    public void logStats() {
+
+        if (inFlight != null) {
+            logger.info(String.format("mqtt stats - delivered=%d failed=%d inflight=%d ack latency %s",
+                getDelivered(), getFailed(), getInFlight(), ackLatency));
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        MqttAsyncClient client = mqttClient;
+        return client != null && client.isConnected();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (mqttClient != null) {
+            try {
+                // give the messages in flight a short chance to be acknowledged,
+                // unacknowledged ones are published again by the caller anyway
+                if (!inFlight.tryAcquire(maxInFlight, closeTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                    logger.warning(String.format("closing with %d messages not acknowledged", getInFlight()));
+                } else {
+                    inFlight.release(maxInFlight);
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                if (mqttClient.isConnected()) {
+                    mqttClient.disconnect(closeTimeout.toMillis()).waitForCompletion(closeTimeout.toMillis());
+                }
+            } catch (MqttException ex) {
+                logger.log(Level.SEVERE, "error closing the connection with the MQTT broker", ex);
+                throw new IOException(ex);
+            } finally {
+                closeClient();
+            }
+        }
+    }
+
+    private void closeClient() {
+
+        try {
+            if (mqttClient != null) {
+                mqttClient.close();
+            }
+        } catch (MqttException ex) {
+            logger.log(Level.FINE, "error releasing the MQTT client", ex);
+        } finally {
+            mqttClient = null;
+        }
+    }
+}
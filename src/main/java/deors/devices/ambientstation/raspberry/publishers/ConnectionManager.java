@@ -0,0 +1,237 @@
+package deors.devices.ambientstation.raspberry.publishers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import deors.devices.ambientstation.raspberry.metrics.OperationMetrics;
+import deors.devices.ambientstation.raspberry.scheduling.Backoff;
+import deors.devices.ambientstation.raspberry.scheduling.StationScheduler;
+
+// keeps the external publisher connected in the background
+// connection attempts run as scheduler tasks, retried with exponential
+// backoff and jitter, so publishing never waits for a broker that is down;
+// meanwhile getPublisher() returns null and samples stay buffered
+// only the first failure of a series is logged as a warning
+public class ConnectionManager implements Closeable {
+
+    private final StationScheduler scheduler;
+
+    // creates a new publisher for every connection attempt
+    private final Supplier<Publisher> factory;
+
+    private final Properties properties;
+
+    // delays between attempts, only used under the manager lock
+    private final Backoff backoff;
+
+    // consecutive failures reported as the failed state
+    private final int failureThreshold;
+
+    // connected publisher, null while not connected
+    private volatile Publisher publisher;
+
+    private volatile ConnectionState state = ConnectionState.DISCONNECTED;
+
+    // attempt counters, only changed under the manager lock
+    private int consecutiveFailures = 0;
+    private long attempts = 0;
+    private long failures = 0;
+
+    private boolean closed = false;
+
+    // time taken by each connection attempt
+    private final OperationMetrics connectMetrics = new OperationMetrics();
+
+    // the logger
+    private static Logger logger = Logger.getLogger(ConnectionManager.class.getName());
+
+    public ConnectionManager(StationScheduler scheduler, Supplier<Publisher> factory, Properties properties,
+            Backoff backoff, int failureThreshold) {
+        super();
+        this.scheduler = scheduler;
+        this.factory = factory;
+        this.properties = properties;
+        this.backoff = backoff;
+        this.failureThreshold = Math.max(1, failureThreshold);
+    }
+
+    public synchronized void start() {
+
+        if (state == ConnectionState.DISCONNECTED && !closed) {
+            state = ConnectionState.CONNECTING;
+            scheduler.execute("connect", this::connect);
+        }
+    }
+
+    private void connect() {
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            attempts++;
+        }
+
+        Publisher candidate = factory.get();
+        if (candidate == null) {
+            // a configuration problem, retrying does not help
+            setState(ConnectionState.FAILED);
+            logger.severe("the external publisher could not be created, check publisher.impl");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            // don't trust the publisher will not make
+            // any changes in the properties
+            // actually IBM Watson IoT client does
+            Properties copy = new Properties();
+            copy.putAll(properties);
+
+            candidate.connect(copy);
+            connectMetrics.success(start);
+        } catch (IOException | RuntimeException ex) {
+            connectMetrics.failure(start);
+            closeQuietly(candidate);
+            retry("connection with the external publisher could not be established", ex);
+            return;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                closeQuietly(candidate);
+                return;
+            }
+            if (consecutiveFailures > 0) {
+                logger.info(String.format("connection with the external publisher established after %d failed attempts", consecutiveFailures));
+            }
+            publisher = candidate;
+            consecutiveFailures = 0;
+            backoff.reset();
+            state = ConnectionState.CONNECTED;
+        }
+    }
+
+    // called when publishing fails, the publisher is closed and a new one is connected after a while
+    // closing may wait for the messages still in flight, so it runs as a task of its own
+    // instead of holding up the publishing task that reported the failure
+    public void publishFailed(Publisher failed, IOException ioe) {
+
+        synchronized (this) {
+            if (failed != publisher) {
+                // already handled
+                return;
+            }
+            publisher = null;
+        }
+        try {
+            scheduler.execute("close", () -> closeQuietly(failed));
+        } catch (RejectedExecutionException ree) {
+            // the station is shutting down
+            closeQuietly(failed);
+        }
+        retry("information could not be published externally", ioe);
+    }
+
+    private synchronized void retry(String message, Exception ex) {
+
+        if (closed) {
+            return;
+        }
+
+        consecutiveFailures++;
+        failures++;
+        long delay = backoff.nextDelayMillis();
+
+        if (consecutiveFailures == 1) {
+            logger.warning(String.format("%s: %s, retrying in %d ms", message, ex.getMessage(), delay));
+        } else if (logger.isLoggable(Level.FINE)) {
+            logger.fine(String.format("%s: %s, retrying in %d ms (%d consecutive failures)", message, ex.getMessage(), delay, consecutiveFailures));
+        }
+
+        if (consecutiveFailures == failureThreshold) {
+            logger.severe(String.format("connection with the external publisher failed %d times in a row, still retrying", consecutiveFailures));
+        }
+        state = consecutiveFailures >= failureThreshold ? ConnectionState.FAILED : ConnectionState.BACKING_OFF;
+
+        try {
+            scheduler.schedule("connect", this::connect, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ree) {
+            // the station is shutting down
+        }
+    }
+
+    private synchronized void setState(ConnectionState state) {
+        this.state = state;
+    }
+
+    // the connected publisher, or null when it cannot take messages now
+    public Publisher getPublisher() {
+
+        Publisher current = publisher;
+        return current != null && current.isConnected() ? current : null;
+    }
+
+    // a publisher whose client lost the connection and reconnects by
+    // itself is not reported as connected
+    public ConnectionState getState() {
+
+        ConnectionState current = state;
+        Publisher connected = publisher;
+        if (current == ConnectionState.CONNECTED && connected != null && !connected.isConnected()) {
+            return ConnectionState.RECONNECTING;
+        }
+        return current;
+    }
+
+    public OperationMetrics getConnectMetrics() {
+        return connectMetrics;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public void logStats() {
+
+        synchronized (this) {
+            logger.info(String.format("connection stats - state=%s attempts=%d failures=%d consecutive=%d",
+                getState(), attempts, failures, consecutiveFailures));
+        }
+
+        Publisher current = publisher;
+        if (current != null) {
+            current.logStats();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        Publisher current;
+        synchronized (this) {
+            closed = true;
+            current = publisher;
+            publisher = null;
+            state = ConnectionState.DISCONNECTED;
+        }
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void closeQuietly(Publisher candidate) {
+
+        try {
+            candidate.close();
+        } catch (IOException | RuntimeException ex) {
+            logger.log(Level.FINE, "publisher could not be closed", ex);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package deors.devices.ambientstation.raspberry.publishers;
+
+// health of the connection with the external publisher
+public enum ConnectionState {
+
+    // not started or closed
+    DISCONNECTED,
+
+    // first connection attempt in progress
+    CONNECTING,
+
+    // connected and publishing
+    CONNECTED,
+
+    // connected before, the client is restoring a lost connection by itself
+    RECONNECTING,
+
+    // waiting to retry after a failed connection or publication
+    BACKING_OFF,
+
+    // too many consecutive failures, retries go on with the same backoff,
+    // or the publisher could not be created at all, which is not retried
+    FAILED
+}
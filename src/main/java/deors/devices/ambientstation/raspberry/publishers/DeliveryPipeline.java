@@ -0,0 +1,185 @@
+package deors.devices.ambientstation.raspberry.publishers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.buffering.SampleBuffer;
+import deors.devices.ambientstation.raspberry.encoding.AmbientDataEncoder;
+import deors.devices.ambientstation.raspberry.flight.PublishEvent;
+import deors.devices.ambientstation.raspberry.metrics.OperationMetrics;
+
+// drains the sample buffer to the connected publisher in batches
+//
+// full batches are published while there are any, and a partial batch once
+// its oldest sample has waited for the linger time; samples stay buffered
+// while the connection is pending and until their message is published
+//
+// with a durable buffer, samples handed to a publisher that delivers later
+// are committed only once it confirms their delivery, one batch at a time
+//
+// only used by the publishing task
+public class DeliveryPipeline {
+
+    // what the station shows or records about publishing
+    public interface Listener {
+
+        // a batch was delivered and committed
+        void delivered(int samples);
+
+        // a message could not be published
+        void failed();
+    }
+
+    private final SampleBuffer sampleBuffer;
+
+    private final ConnectionManager connectionManager;
+
+    private final AmbientDataEncoder encoder;
+
+    // samples per message and how long a sample may wait for a full batch
+    private final int batchSize;
+    private final Duration batchLinger;
+
+    // how long a publisher may take to confirm a delivery
+    private final Duration deliveryTimeout;
+
+    // qos recorded with the publish events
+    private final int qos;
+
+    private final OperationMetrics publishes;
+
+    private final Listener listener;
+
+    // the batch waiting for its delivery, the publisher it went to and since when
+    private int pendingDelivery = 0;
+    private Publisher pendingPublisher;
+    private long pendingSinceNanos;
+
+    // batch being published
+    private final List<AmbientData> batch = new ArrayList<>();
+
+    // the logger
+    private static Logger logger = Logger.getLogger(DeliveryPipeline.class.getName());
+
+    public DeliveryPipeline(SampleBuffer sampleBuffer, ConnectionManager connectionManager, AmbientDataEncoder encoder,
+            int batchSize, Duration batchLinger, Duration deliveryTimeout, int qos,
+            OperationMetrics publishes, Listener listener) {
+        super();
+        this.sampleBuffer = sampleBuffer;
+        this.connectionManager = connectionManager;
+        this.encoder = encoder;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchLinger = batchLinger;
+        this.deliveryTimeout = deliveryTimeout;
+        this.qos = qos;
+        this.publishes = publishes;
+        this.listener = listener;
+    }
+
+    public void publish() {
+
+        try {
+            while (true) {
+                if (pendingDelivery > 0 && !checkPendingDelivery()) {
+                    return;
+                }
+
+                batch.clear();
+                int count = sampleBuffer.peek(batch, batchSize);
+                if (count == 0) {
+                    return;
+                }
+                boolean lingered = System.currentTimeMillis() - batch.get(0).getSlotTime() >= batchLinger.toMillis();
+                if (count < batchSize && !lingered) {
+                    return;
+                }
+
+                Publisher publisher = connectionManager.getPublisher();
+                if (publisher == null) {
+                    return;
+                }
+
+                ByteBuffer message = batchSize == 1 ? encoder.encode(batch.get(0)) : encoder.encodeBatch(batch);
+                int payloadSize = message.remaining();
+                PublishEvent event = new PublishEvent();
+                event.begin();
+                long start = System.nanoTime();
+                try {
+                    if (publisher.publishesBytes()) {
+                        publisher.publish(message);
+                    } else {
+                        // only text formats get here, binary ones need a publisher of bytes
+                        publisher.publish(StandardCharsets.UTF_8.decode(message).toString());
+                    }
+                    publishes.success(start);
+                    event.finish(count, payloadSize, qos, true);
+                } catch (IOException ioe) {
+                    publishes.failure(start);
+                    event.finish(count, payloadSize, qos, false);
+                    listener.failed();
+                    connectionManager.publishFailed(publisher, ioe);
+                    return;
+                }
+
+                // a durable buffer keeps the samples until they are delivered
+                if (sampleBuffer.isDurable()) {
+                    Publisher.Delivery delivery = publisher.checkDelivery();
+                    if (delivery == Publisher.Delivery.PENDING) {
+                        pendingDelivery = count;
+                        pendingPublisher = publisher;
+                        pendingSinceNanos = System.nanoTime();
+                        return;
+                    }
+                    if (delivery == Publisher.Delivery.FAILED) {
+                        logger.warning(String.format("%d samples were not delivered, they are published again", count));
+                        return;
+                    }
+                }
+                sampleBuffer.commit(count);
+                listener.delivered(count);
+
+                if (count < batchSize) {
+                    return;
+                }
+            }
+        } catch (IOException ioe) {
+            logger.severe(String.format("buffered samples could not be read for publishing: %s", ioe.getMessage()));
+        }
+    }
+
+    // commits the batch waiting for delivery once delivered, or leaves it to be
+    // published again when it failed; returns false while it is still on its way
+    private boolean checkPendingDelivery() throws IOException {
+
+        Publisher.Delivery delivery = pendingPublisher.checkDelivery();
+        if (delivery == Publisher.Delivery.PENDING) {
+            if (System.nanoTime() - pendingSinceNanos < deliveryTimeout.toNanos()) {
+                return false;
+            }
+            if (pendingPublisher.retriesDelivery()) {
+                // still retrying, replacing it would only publish the batch twice
+                logger.warning(String.format("%d samples not delivered after %d ms, still waiting",
+                    pendingDelivery, deliveryTimeout.toMillis()));
+                pendingSinceNanos = System.nanoTime();
+                return false;
+            }
+            // never confirmed, the publisher is replaced and the batch published again
+            connectionManager.publishFailed(pendingPublisher,
+                new IOException(String.format("delivery not confirmed after %d ms", deliveryTimeout.toMillis())));
+        } else if (delivery == Publisher.Delivery.DELIVERED) {
+            sampleBuffer.commit(pendingDelivery);
+            listener.delivered(pendingDelivery);
+        } else {
+            logger.warning(String.format("%d samples were not delivered, they are published again", pendingDelivery));
+        }
+        pendingDelivery = 0;
+        pendingPublisher = null;
+        return true;
+    }
+}
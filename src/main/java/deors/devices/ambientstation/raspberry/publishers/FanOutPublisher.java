@@ -0,0 +1,186 @@
+package deors.devices.ambientstation.raspberry.publishers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import deors.devices.ambientstation.raspberry.Durations;
+import deors.devices.ambientstation.raspberry.scheduling.Backoff;
+
+// publishes the same messages to several sinks, each one with its own
+// publisher, bounded queue and worker, see PublisherSink
+//
+// sinks are listed in publisher.fanout.sinks and configured with
+// publisher.fanout.<sink>.impl, .queue.capacity and .overflow
+// any other publisher.fanout.<sink>.<key> overrides <key> for that sink only,
+// e.g. publisher.fanout.backup.publisher.mqtt.broker.url
+//
+// every sink retries its own undelivered messages, a sink that fails or
+// times out is never torn down or replayed to by the others
+//
+// sink queues are in memory and not durable: by default a message counts
+// as delivered once queued, and is lost if the station stops before the
+// sink published it; sinks with publisher.fanout.<sink>.durable set are
+// waited for instead, a durable outbox is only committed once they all
+// delivered the batch, so a durable sink never drops messages but, while
+// it is slow or down, holds back the outbox and with it every other sink
+public class FanOutPublisher implements Publisher {
+
+    private static final String PREFIX = "publisher.fanout.";
+
+    private final List<PublisherSink> sinks = new ArrayList<>();
+
+    // sinks waited for before reporting a delivery, a subset of sinks
+    private final List<PublisherSink> durableSinks = new ArrayList<>();
+
+    private Logger logger = Logger.getLogger(FanOutPublisher.class.getName());
+
+    @Override
+    public void connect(Properties properties) throws IOException {
+
+        if (!sinks.isEmpty()) {
+            return;
+        }
+
+        String names = properties.getProperty(PREFIX + "sinks", "");
+        for (String name : names.split(",")) {
+            name = name.trim();
+            if (!name.isEmpty()) {
+                boolean durable = Boolean.parseBoolean(properties.getProperty(PREFIX + name + ".durable", "false").trim());
+                PublisherSink sink = createSink(name, durable, properties);
+                sinks.add(sink);
+                if (durable) {
+                    durableSinks.add(sink);
+                }
+            }
+        }
+        if (sinks.isEmpty()) {
+            throw new IOException("no sinks configured in " + PREFIX + "sinks");
+        }
+
+        // sinks connect by themselves, in the background
+        for (PublisherSink sink : sinks) {
+            sink.start();
+        }
+    }
+
+    private PublisherSink createSink(String name, boolean durable, Properties properties) throws IOException {
+
+        Properties sinkProperties = new Properties();
+        sinkProperties.putAll(properties);
+        String sinkPrefix = PREFIX + name + ".";
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(sinkPrefix)) {
+                sinkProperties.setProperty(key.substring(sinkPrefix.length()), properties.getProperty(key));
+            }
+        }
+
+        String impl = sinkProperties.getProperty("impl");
+        if (impl == null || impl.isBlank()) {
+            throw new IOException(String.format("no publisher configured for sink %s in %simpl", name, sinkPrefix));
+        }
+        Publisher probe = PublisherFactory.getInstance().getPublisher(impl.trim());
+        if (probe != null && !probe.publishesBytes()) {
+            throw new IOException(String.format("publisher %s of sink %s does not publish bytes", impl.trim(), name));
+        }
+        int capacity = Integer.parseInt(sinkProperties.getProperty("queue.capacity", "100").trim());
+        // a durable sink is waited for rather than losing messages
+        OverflowPolicy overflow = durable ? OverflowPolicy.BLOCK : OverflowPolicy.fromProperty(sinkProperties.getProperty("overflow"));
+
+        Backoff backoff = new Backoff(
+            Durations.parse(sinkProperties.getProperty("publisher.connect.backoff.initial"), Duration.ofSeconds(1)),
+            Durations.parse(sinkProperties.getProperty("publisher.connect.backoff.max"), Duration.ofMinutes(5)),
+            Double.parseDouble(sinkProperties.getProperty("publisher.connect.backoff.jitter", "0.5").trim()));
+
+        logger.info(String.format("sink %s publishes with %s, queue capacity %d, %s on overflow%s",
+            name, impl.trim(), capacity, overflow, durable ? ", durable" : ""));
+
+        return new PublisherSink(name, () -> PublisherFactory.getInstance().getPublisher(impl.trim()),
+            sinkProperties, capacity, overflow, backoff);
+    }
+
+    @Override
+    public void publish(String message) throws IOException {
+
+        if (message != null) {
+            offer(message.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public boolean publishesBytes() {
+        return true;
+    }
+
+    @Override
+    public void publish(ByteBuffer message) throws IOException {
+
+        if (message != null) {
+            // one copy shared by every sink
+            byte[] payload = new byte[message.remaining()];
+            message.get(payload);
+            offer(payload);
+        }
+    }
+
+    private void offer(byte[] payload) throws IOException {
+
+        for (PublisherSink sink : sinks) {
+            sink.offer(payload);
+        }
+    }
+
+    // pending while any durable sink has not delivered yet, never failed
+    // as the sinks retry by themselves
+    @Override
+    public Delivery checkDelivery() {
+
+        for (PublisherSink sink : durableSinks) {
+            if (sink.checkDelivery() == Delivery.PENDING) {
+                return Delivery.PENDING;
+            }
+        }
+        return Delivery.DELIVERED;
+    }
+
+    @Override
+    public boolean retriesDelivery() {
+        return true;
+    }
+
+    public List<PublisherSink> getSinks() {
+        return Collections.unmodifiableList(sinks);
+    }
+
+    @Override
+    public void logStats() {
+
+        for (PublisherSink sink : sinks) {
+            sink.logStats();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        IOException failure = null;
+        for (PublisherSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException ioe) {
+                failure = ioe;
+            }
+        }
+        sinks.clear();
+        durableSinks.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package deors.devices.ambientstation.raspberry.publishers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+// appends every message as one line to a local file
+// binary messages are written base64 encoded so lines stay intact
+public class FilePublisher implements Publisher {
+
+    private static final ByteBuffer NEW_LINE = ByteBuffer.wrap(new byte[] { '\n' }).asReadOnlyBuffer();
+
+    private FileChannel channel;
+
+    // whether messages are binary, and then base64 encoded
+    private boolean binary;
+
+    // whether every message is forced to the storage device
+    private boolean force;
+
+    private Logger logger = Logger.getLogger(FilePublisher.class.getName());
+
+    @Override
+    public void connect(Properties properties) throws IOException {
+
+        if (channel != null) {
+            return;
+        }
+
+        String fileName = properties.getProperty("publisher.file.path");
+        if (fileName == null || fileName.isBlank()) {
+            throw new IOException("no file configured in publisher.file.path");
+        }
+        binary = "binary".equalsIgnoreCase(properties.getProperty("publisher.format", "json").trim());
+        force = Boolean.parseBoolean(properties.getProperty("publisher.file.force", "false").trim());
+
+        Path path = Paths.get(fileName.trim());
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        logger.info("messages will be appended to file: " + path);
+    }
+
+    @Override
+    public void publish(String message) throws IOException {
+
+        if (channel != null && message != null) {
+            publish(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Override
+    public boolean publishesBytes() {
+        return true;
+    }
+
+    @Override
+    public void publish(ByteBuffer message) throws IOException {
+
+        if (channel != null && message != null) {
+            ByteBuffer line = binary ? Base64.getEncoder().encode(message) : message;
+            ByteBuffer[] buffers = { line, NEW_LINE.duplicate() };
+            while (buffers[1].hasRemaining()) {
+                channel.write(buffers);
+            }
+            if (force) {
+                channel.force(false);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } finally {
+                channel = null;
+            }
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package deors.devices.ambientstation.raspberry.publishers;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -11,12 +14,17 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
+import deors.devices.ambientstation.raspberry.Durations;
+
 public class MqttPublisher implements Publisher {
 
     public String topic;
 
     private MqttClient mqttClient;
 
+    // quality of service of the published messages
+    private int qos;
+
     private Logger logger = Logger.getLogger(MqttPublisher.class.getName());
 
     @Override
@@ -30,19 +38,27 @@ public class MqttPublisher implements Publisher {
         String brokerUrl = properties.getProperty("publisher.mqtt.broker.url");
 
         topic = properties.getProperty("publisher.mqtt.topic");
+        qos = Integer.parseInt(properties.getProperty("publisher.mqtt.qos", "2").trim());
 
         logger.info("connecting with the MQTT broker at: " + brokerUrl);
         logger.info("messages will be published at topic: " + topic);
+        logger.info("messages will be published with qos: " + qos);
 
         try {
             mqttClient = new MqttClient(brokerUrl, deviceId, new MemoryPersistence());
             MqttConnectOptions connOpts = new MqttConnectOptions();
             connOpts.setCleanSession(true);
+            // lost connections are recovered by paho itself, the first
+            // connection and broken publishers are retried by ConnectionManager
+            connOpts.setAutomaticReconnect(Boolean.parseBoolean(properties.getProperty("publisher.mqtt.reconnect", "true").trim()));
+            connOpts.setConnectionTimeout((int) Durations.parse(properties.getProperty("publisher.mqtt.connect.timeout"), Duration.ofSeconds(10)).toSeconds());
             mqttClient.connect(connOpts);
 
             logger.info("connection with the MQTT broker established");
         } catch (MqttException ex) {
-            logger.log(Level.SEVERE, "unable to connect to the MQTT broker", ex);
+            // retries are logged by the connection manager
+            logger.log(Level.FINE, "unable to connect to the MQTT broker", ex);
+            closeClient();
             throw new IOException(ex);
         }
     }
@@ -52,29 +68,82 @@ public class MqttPublisher implements Publisher {
 
         if (mqttClient != null && message != null) {
 
-            logger.info("publishing message to the MQTT broker: " + message);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("publishing message to the MQTT broker: " + message);
+            }
 
-            final MqttMessage data = new MqttMessage(message.getBytes());
-            data.setQos(2);
-            try {
-                mqttClient.publish(topic, data);
-            } catch (MqttException ex) {
-                logger.log(Level.SEVERE, "unable to publish message to the MQTT broker", ex);
-                throw new IOException(ex);
+            publish(message.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public boolean publishesBytes() {
+        return true;
+    }
+
+    @Override
+    public void publish(ByteBuffer message) throws IOException {
+
+        if (mqttClient != null && message != null) {
+
+            // payloads are logged at fine only, every publish at info floods the journal
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("publishing message to the MQTT broker: " + StandardCharsets.UTF_8.decode(message.duplicate()));
             }
+
+            // paho keeps a reference to the payload array, so it gets its own copy
+            byte[] payload = new byte[message.remaining()];
+            message.get(payload);
+            publish(payload);
+        }
+    }
+
+    private void publish(byte[] payload) throws IOException {
+
+        final MqttMessage data = new MqttMessage(payload);
+        data.setQos(qos);
+        try {
+            mqttClient.publish(topic, data);
+        } catch (MqttException ex) {
+            logger.log(Level.SEVERE, "unable to publish message to the MQTT broker", ex);
+            throw new IOException(ex);
         }
     }
 
+    @Override
+    public boolean isConnected() {
+        MqttClient client = mqttClient;
+        return client != null && client.isConnected();
+    }
+
     @Override
     public void close() throws IOException {
 
         if (mqttClient != null) {
             try {
-                mqttClient.disconnect();
+                if (mqttClient.isConnected()) {
+                    mqttClient.disconnect();
+                }
             } catch (MqttException ex) {
                 logger.log(Level.SEVERE, "error closing the connection with the MQTT broker", ex);
                 throw new IOException(ex);
+            } finally {
+                closeClient();
+            }
+        }
+    }
+
+    // releases the client threads, a new publisher is created for every connection
+    private void closeClient() {
+
+        try {
+            if (mqttClient != null) {
+                mqttClient.close();
             }
+        } catch (MqttException ex) {
+            logger.log(Level.FINE, "error releasing the MQTT client", ex);
+        } finally {
+            mqttClient = null;
         }
     }
 }
@@ -0,0 +1,25 @@
+package deors.devices.ambientstation.raspberry.publishers;
+
+import java.util.Locale;
+
+// what a sink does with a new message when its queue is full
+public enum OverflowPolicy {
+
+    // the oldest queued message is dropped to make room
+    DROP_OLDEST,
+
+    // the new message is dropped
+    DROP_NEWEST,
+
+    // publishing waits until there is room, holding back every sink
+    BLOCK;
+
+    // accepts drop-oldest, drop-newest and block, defaults to drop-oldest
+    public static OverflowPolicy fromProperty(String value) {
+
+        if (value == null || value.isBlank()) {
+            return DROP_OLDEST;
+        }
+        return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+}
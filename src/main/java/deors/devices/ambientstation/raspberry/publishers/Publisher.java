@@ -2,11 +2,69 @@ package deors.devices.ambientstation.raspberry.publishers;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Properties;
 
 public interface Publisher extends Closeable {
 
+    // what became of the messages published so far
+    enum Delivery {
+        DELIVERED,
+        PENDING,
+        FAILED
+    }
+
+    // told once what became of one message
+    @FunctionalInterface
+    interface DeliveryCallback {
+
+        void completed(boolean delivered);
+    }
+
     void connect(Properties properties) throws IOException;
 
     void publish(String message) throws IOException;
+
+    // publishes the remaining bytes of the buffer, which the caller may reuse afterwards
+    // only for publishers that publish bytes, others take text messages only
+    default void publish(ByteBuffer message) throws IOException {
+        throw new UnsupportedOperationException(String.format("%s does not publish bytes", getClass().getName()));
+    }
+
+    // whether publish(ByteBuffer) sends the bytes as they are, which binary
+    // payloads need; text payloads go to the other publishers as strings
+    default boolean publishesBytes() {
+        return false;
+    }
+
+    // publishes like publish(message) and tells the callback what became of
+    // this message; publishers delivering after publish returns override it
+    // and call back once the delivery is confirmed or failed
+    default void publish(ByteBuffer message, DeliveryCallback callback) throws IOException {
+        publish(message);
+        callback.completed(true);
+    }
+
+    // whether the publisher can take messages now, publishers reconnecting
+    // by themselves after a connection loss report false meanwhile
+    default boolean isConnected() {
+        return true;
+    }
+
+    // for publishers delivering after publish returns: pending while any
+    // message published so far is on its way, and failed once for every
+    // series of messages of which some could not be delivered
+    default Delivery checkDelivery() {
+        return Delivery.DELIVERED;
+    }
+
+    // whether the publisher retries undelivered messages by itself, so a
+    // delivery taking long is waited for instead of replacing the publisher
+    default boolean retriesDelivery() {
+        return false;
+    }
+
+    // logs delivery statistics, for publishers that keep them
+    default void logStats() {
+    }
 }
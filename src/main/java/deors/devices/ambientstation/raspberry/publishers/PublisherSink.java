@@ -0,0 +1,382 @@
+package deors.devices.ambientstation.raspberry.publishers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import deors.devices.ambientstation.raspberry.scheduling.Backoff;
+
+// one destination of the fan-out publisher, with its own bounded queue and
+// worker thread, so a slow or unreachable sink never holds back the others
+//
+// the worker connects and reconnects with backoff, and publishes as fast as
+// its publisher takes messages; publishers delivering after publish returns
+// keep several messages in flight and call back for each one
+// messages that fail, or are not confirmed in time, are published again
+// before the queued ones, so a sink delivers at least once
+//
+// the queue is in memory only, queued messages are lost on close
+public class PublisherSink implements Closeable {
+
+    // how long close waits for the worker to finish the message being published
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    // how long a message in flight may wait for its delivery to be confirmed
+    private static final long DELIVERY_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    // a message published and waiting for its delivery to be confirmed
+    private static class InFlight {
+
+        private final byte[] message;
+        private final long sentNanos;
+
+        private InFlight(byte[] message, long sentNanos) {
+            this.message = message;
+            this.sentNanos = sentNanos;
+        }
+    }
+
+    private final String name;
+
+    // creates a new publisher for every connection attempt
+    private final Supplier<Publisher> factory;
+
+    private final Properties properties;
+
+    // queued messages, guarded by the sink lock
+    private final ArrayDeque<byte[]> queue;
+
+    // messages published and not yet confirmed, oldest first, guarded by the sink lock
+    private final ArrayDeque<InFlight> inFlight = new ArrayDeque<>();
+
+    // messages to publish again, before the queued ones, guarded by the sink lock
+    private final ArrayDeque<byte[]> retries = new ArrayDeque<>();
+
+    // whether a delivery failed since the worker last backed off, and whether
+    // any was confirmed meanwhile, guarded by the sink lock
+    private boolean deliveryFailed = false;
+    private boolean deliveryConfirmed = false;
+
+    private final int capacity;
+    private final OverflowPolicy overflow;
+
+    // delays between attempts, only used by the worker
+    private final Backoff backoff;
+
+    private final Thread worker;
+
+    private volatile boolean closed = false;
+
+    private volatile ConnectionState state = ConnectionState.DISCONNECTED;
+
+    // message counters
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    // the logger
+    private static Logger logger = Logger.getLogger(PublisherSink.class.getName());
+
+    public PublisherSink(String name, Supplier<Publisher> factory, Properties properties,
+            int capacity, OverflowPolicy overflow, Backoff backoff) {
+        super();
+        if (capacity < 1) {
+            throw new IllegalArgumentException("sink queue capacity must be positive");
+        }
+        this.name = name;
+        this.factory = factory;
+        this.properties = properties;
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.backoff = backoff;
+        this.queue = new ArrayDeque<>(capacity);
+
+        worker = new Thread(this::work, "sink-" + name);
+        worker.setDaemon(true);
+    }
+
+    public void start() {
+        worker.start();
+    }
+
+    // queues a message, which is shared between sinks and must not be modified
+    public void offer(byte[] message) throws InterruptedIOException {
+
+        synchronized (this) {
+            while (!closed && queue.size() >= capacity) {
+                if (overflow == OverflowPolicy.DROP_NEWEST) {
+                    dropped.increment();
+                    return;
+                }
+                if (overflow == OverflowPolicy.DROP_OLDEST) {
+                    queue.removeFirst();
+                    dropped.increment();
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(String.format("interrupted while waiting for room in sink %s", name));
+                }
+            }
+            if (closed) {
+                return;
+            }
+            queue.addLast(message);
+            notifyAll();
+        }
+    }
+
+    // the next message to publish, already counted as in flight; null when
+    // closing, or when a delivery failed or a message in flight expired
+    private synchronized InFlight take() throws InterruptedException {
+
+        while (true) {
+            long left = inFlight.isEmpty() ? Long.MAX_VALUE
+                : inFlight.peekFirst().sentNanos + DELIVERY_TIMEOUT_NANOS - System.nanoTime();
+            if (closed || deliveryFailed || left <= 0) {
+                return null;
+            }
+            if (!retries.isEmpty() || !queue.isEmpty()) {
+                break;
+            }
+            // woken up by new messages and callbacks, or when the oldest message in flight expires
+            wait(left == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMillis(left) + 1);
+        }
+        InFlight message = new InFlight(retries.isEmpty() ? queue.removeFirst() : retries.removeFirst(), System.nanoTime());
+        inFlight.addLast(message);
+        // room for publishers blocked by a full queue
+        notifyAll();
+        return message;
+    }
+
+    // called by the publisher once per message
+    private synchronized void completed(InFlight message, boolean delivered) {
+
+        // messages given up on were already queued again
+        if (!inFlight.remove(message)) {
+            return;
+        }
+        if (delivered) {
+            published.increment();
+            deliveryConfirmed = true;
+        } else {
+            retries.addLast(message.message);
+            deliveryFailed = true;
+        }
+        notifyAll();
+    }
+
+    // publishes the messages in flight again, in order
+    private synchronized void requeueInFlight() {
+
+        while (!inFlight.isEmpty()) {
+            retries.addLast(inFlight.removeFirst().message);
+        }
+        notifyAll();
+    }
+
+    private void work() {
+
+        Publisher publisher = null;
+        try {
+            while (!closed) {
+                if (publisher == null) {
+                    publisher = connect();
+                    if (publisher == null) {
+                        continue;
+                    }
+                }
+                InFlight message = take();
+                if (message == null) {
+                    if (closed) {
+                        break;
+                    }
+                    boolean failed;
+                    synchronized (this) {
+                        failed = deliveryFailed;
+                        deliveryFailed = false;
+                        // a failure after deliveries went well starts a new series of retries
+                        if (deliveryConfirmed) {
+                            backoff.reset();
+                            deliveryConfirmed = false;
+                        }
+                    }
+                    if (failed) {
+                        retry("message could not be delivered", new IOException("delivery failed"));
+                    } else {
+                        // never confirmed, everything in flight is published again on a new connection
+                        closeQuietly(publisher);
+                        publisher = null;
+                        requeueInFlight();
+                        retry("message could not be delivered", new IOException("delivery not confirmed"));
+                    }
+                    continue;
+                }
+                try {
+                    publisher.publish(ByteBuffer.wrap(message.message), delivered -> completed(message, delivered));
+                } catch (IOException ioe) {
+                    closeQuietly(publisher);
+                    publisher = null;
+                    requeueInFlight();
+                    retry("message could not be published", ioe);
+                }
+            }
+        } catch (InterruptedException ie) {
+            // closing
+        } finally {
+            if (publisher != null) {
+                closeQuietly(publisher);
+            }
+            state = ConnectionState.DISCONNECTED;
+        }
+    }
+
+    private Publisher connect() throws InterruptedException {
+
+        if (state == ConnectionState.DISCONNECTED) {
+            state = ConnectionState.CONNECTING;
+        }
+
+        Publisher publisher = factory.get();
+        if (publisher == null) {
+            // a configuration problem, retrying does not help
+            state = ConnectionState.FAILED;
+            logger.severe(String.format("the publisher of sink %s could not be created, check its impl", name));
+            synchronized (this) {
+                while (!closed) {
+                    wait();
+                }
+            }
+            return null;
+        }
+
+        try {
+            // every attempt gets its own copy, publishers may change them
+            Properties copy = new Properties();
+            copy.putAll(properties);
+
+            publisher.connect(copy);
+        } catch (IOException | RuntimeException ex) {
+            closeQuietly(publisher);
+            retry("connection could not be established", ex);
+            return null;
+        }
+
+        if (backoff.getAttempts() > 0) {
+            logger.info(String.format("sink %s connected after %d failed attempts", name, backoff.getAttempts()));
+        }
+        backoff.reset();
+        state = ConnectionState.CONNECTED;
+        return publisher;
+    }
+
+    private void retry(String message, Exception ex) throws InterruptedException {
+
+        failures.increment();
+        long delay = backoff.nextDelayMillis();
+
+        if (backoff.getAttempts() == 1) {
+            logger.warning(String.format("sink %s: %s: %s, retrying in %d ms", name, message, ex.getMessage(), delay));
+        } else if (logger.isLoggable(Level.FINE)) {
+            logger.fine(String.format("sink %s: %s: %s, retrying in %d ms", name, message, ex.getMessage(), delay));
+        }
+        state = ConnectionState.BACKING_OFF;
+
+        synchronized (this) {
+            if (!closed) {
+                wait(delay);
+            }
+        }
+    }
+
+    // pending while messages are queued, in flight or to be published again
+    public synchronized Publisher.Delivery checkDelivery() {
+        return queue.isEmpty() && inFlight.isEmpty() && retries.isEmpty()
+            ? Publisher.Delivery.DELIVERED : Publisher.Delivery.PENDING;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ConnectionState getState() {
+        return state;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public void logStats() {
+
+        logger.info(String.format("sink stats - %s state=%s queued=%d/%d inflight=%d published=%d dropped=%d failures=%d",
+            name, state, getQueueDepth(), capacity, getInFlight(), getPublishedCount(), getDroppedCount(), getFailureCount()));
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        int lost;
+        synchronized (this) {
+            closed = true;
+            lost = queue.size() + inFlight.size() + retries.size();
+            queue.clear();
+            inFlight.clear();
+            retries.clear();
+            notifyAll();
+        }
+        if (lost > 0) {
+            logger.warning(String.format("sink %s closed with %d messages not published", name, lost));
+        }
+
+        // the message being published is given a chance to finish
+        try {
+            worker.join(CLOSE_TIMEOUT_MILLIS);
+            if (worker.isAlive()) {
+                worker.interrupt();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("interrupted while closing sink %s", name));
+        }
+    }
+
+    private void closeQuietly(Publisher publisher) {
+
+        try {
+            publisher.close();
+        } catch (IOException | RuntimeException ex) {
+            logger.log(Level.FINE, String.format("publisher of sink %s could not be closed", name), ex);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package deors.devices.ambientstation.raspberry.replay;
+
+// the readings taken by one sampling cycle, before any processing
+// instances are reused from one record to the next
+public class RawReadings {
+
+    // slot time of the cycle, ms since the epoch
+    long time;
+
+    // NaN until the first temperature and humidity reading
+    double temperature = Double.NaN;
+    double humidity = Double.NaN;
+
+    double airQuality;
+    double light;
+
+    double soundRms;
+    double soundPeak;
+    double soundLeq;
+    int soundSamples;
+
+    boolean motion;
+
+    public void set(long time, double temperature, double humidity, double airQuality, double light,
+            double soundRms, double soundPeak, double soundLeq, int soundSamples, boolean motion) {
+
+        this.time = time;
+        this.temperature = temperature;
+        this.humidity = humidity;
+        this.airQuality = airQuality;
+        this.light = light;
+        this.soundRms = soundRms;
+        this.soundPeak = soundPeak;
+        this.soundLeq = soundLeq;
+        this.soundSamples = soundSamples;
+        this.motion = motion;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public double getTemperature() {
+        return temperature;
+    }
+
+    public double getHumidity() {
+        return humidity;
+    }
+
+    public double getAirQuality() {
+        return airQuality;
+    }
+
+    public double getLight() {
+        return light;
+    }
+
+    public double getSoundRms() {
+        return soundRms;
+    }
+
+    public double getSoundPeak() {
+        return soundPeak;
+    }
+
+    public double getSoundLeq() {
+        return soundLeq;
+    }
+
+    public int getSoundSamples() {
+        return soundSamples;
+    }
+
+    public boolean isMotion() {
+        return motion;
+    }
+}
@@ -0,0 +1,91 @@
+package deors.devices.ambientstation.raspberry.replay;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// reads a recording written by ReadingsRecorder, one record at a time
+public class ReadingsReader implements Closeable {
+
+    private final DataInputStream in;
+
+    public ReadingsReader(Path path) throws IOException {
+        super();
+
+        in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 65536));
+        try {
+            if (in.readInt() != ReadingsRecorder.MAGIC) {
+                throw new IOException(String.format("not a readings recording: %s", path));
+            }
+            int version = in.readUnsignedByte();
+            if (version != ReadingsRecorder.VERSION) {
+                throw new IOException(String.format("unsupported recording version %d: %s", version, path));
+            }
+        } catch (IOException ioe) {
+            in.close();
+            throw ioe;
+        }
+    }
+
+    // updates the readings with the next record, fields not in the record
+    // keep their previous value; false at the end of the recording
+    public boolean next(RawReadings readings) throws IOException {
+
+        int flags = in.read();
+        if (flags < 0) {
+            return false;
+        }
+
+        try {
+            if ((flags & ReadingsRecorder.ABSOLUTE_TIME) != 0) {
+                readings.time = in.readLong();
+            } else {
+                long zigzag = readVarint();
+                readings.time += (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            if ((flags & ReadingsRecorder.TEMPERATURE_HUMIDITY) != 0) {
+                readings.temperature = in.readFloat();
+                readings.humidity = in.readFloat();
+            }
+            if ((flags & ReadingsRecorder.AIR_QUALITY) != 0) {
+                readings.airQuality = in.readFloat();
+            }
+            if ((flags & ReadingsRecorder.LIGHT) != 0) {
+                readings.light = in.readFloat();
+            }
+            if ((flags & ReadingsRecorder.SOUND) != 0) {
+                readings.soundRms = in.readFloat();
+                readings.soundPeak = in.readFloat();
+                readings.soundLeq = in.readFloat();
+                readings.soundSamples = (int) readVarint();
+            }
+            readings.motion = (flags & ReadingsRecorder.MOTION) != 0;
+            return true;
+        } catch (EOFException eof) {
+            // a record torn at the end of the file
+            return false;
+        }
+    }
+
+    private long readVarint() throws IOException {
+
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint in the recording");
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,174 @@
+package deors.devices.ambientstation.raspberry.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+// appends the raw readings of every sampling cycle to a recording file
+//
+// the file starts with the magic ASRR and a version byte, followed by
+// records of a flags byte, the time and the fields that changed since
+// the previous record, so a steady reading takes no room at all:
+//
+//   0x80  time is an absolute i64, otherwise a zigzag varint delta in ms
+//   0x01  temperature and humidity follow, as f32
+//   0x02  air quality follows, as f32
+//   0x04  light follows, as f32
+//   0x08  sound rms, peak and leq follow, as f32, and a varint sample count
+//   0x10  motion was detected
+//
+// sensor values fit in a float, sound levels are rounded to one
+//
+// every file opening starts with an absolute record, so recordings can be
+// appended across restarts, and a record torn by a crash ends the replay
+public class ReadingsRecorder implements Closeable {
+
+    static final int MAGIC = 0x41535252;
+    static final int VERSION = 1;
+
+    static final int ABSOLUTE_TIME = 0x80;
+    static final int TEMPERATURE_HUMIDITY = 0x01;
+    static final int AIR_QUALITY = 0x02;
+    static final int LIGHT = 0x04;
+    static final int SOUND = 0x08;
+    static final int MOTION = 0x10;
+
+    private final Path path;
+
+    private final DataOutputStream out;
+
+    // previous record, as written
+    private boolean first = true;
+    private long time;
+    private int temperature;
+    private int humidity;
+    private int airQuality;
+    private int light;
+    private int soundRms;
+    private int soundPeak;
+    private int soundLeq;
+    private int soundSamples;
+
+    private long records = 0;
+
+    // the logger
+    private static Logger logger = Logger.getLogger(ReadingsRecorder.class.getName());
+
+    public ReadingsRecorder(Path path) throws IOException {
+        super();
+        this.path = path;
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        boolean empty = !Files.exists(path) || Files.size(path) == 0;
+        out = new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 65536));
+        if (empty) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+        }
+
+        logger.info(String.format("raw readings are recorded to: %s", path));
+    }
+
+    public synchronized void record(RawReadings readings) throws IOException {
+
+        int newTemperature = Float.floatToIntBits((float) readings.temperature);
+        int newHumidity = Float.floatToIntBits((float) readings.humidity);
+        int newAirQuality = Float.floatToIntBits((float) readings.airQuality);
+        int newLight = Float.floatToIntBits((float) readings.light);
+        int newSoundRms = Float.floatToIntBits((float) readings.soundRms);
+        int newSoundPeak = Float.floatToIntBits((float) readings.soundPeak);
+        int newSoundLeq = Float.floatToIntBits((float) readings.soundLeq);
+
+        int flags = readings.motion ? MOTION : 0;
+        if (first) {
+            flags |= ABSOLUTE_TIME | TEMPERATURE_HUMIDITY | AIR_QUALITY | LIGHT | SOUND;
+        } else {
+            if (newTemperature != temperature || newHumidity != humidity) {
+                flags |= TEMPERATURE_HUMIDITY;
+            }
+            if (newAirQuality != airQuality) {
+                flags |= AIR_QUALITY;
+            }
+            if (newLight != light) {
+                flags |= LIGHT;
+            }
+            if (newSoundRms != soundRms || newSoundPeak != soundPeak || newSoundLeq != soundLeq
+                    || readings.soundSamples != soundSamples) {
+                flags |= SOUND;
+            }
+        }
+
+        out.writeByte(flags);
+        if ((flags & ABSOLUTE_TIME) != 0) {
+            out.writeLong(readings.time);
+        } else {
+            long delta = readings.time - time;
+            writeVarint(out, (delta << 1) ^ (delta >> 63));
+        }
+        if ((flags & TEMPERATURE_HUMIDITY) != 0) {
+            out.writeInt(newTemperature);
+            out.writeInt(newHumidity);
+        }
+        if ((flags & AIR_QUALITY) != 0) {
+            out.writeInt(newAirQuality);
+        }
+        if ((flags & LIGHT) != 0) {
+            out.writeInt(newLight);
+        }
+        if ((flags & SOUND) != 0) {
+            out.writeInt(newSoundRms);
+            out.writeInt(newSoundPeak);
+            out.writeInt(newSoundLeq);
+            writeVarint(out, readings.soundSamples);
+        }
+
+        first = false;
+        time = readings.time;
+        temperature = newTemperature;
+        humidity = newHumidity;
+        airQuality = newAirQuality;
+        light = newLight;
+        soundRms = newSoundRms;
+        soundPeak = newSoundPeak;
+        soundLeq = newSoundLeq;
+        soundSamples = readings.soundSamples;
+        records++;
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        out.close();
+
+        logger.info(String.format("%d raw readings were recorded to: %s", records, path));
+    }
+}
@@ -0,0 +1,107 @@
+package deors.devices.ambientstation.raspberry.replay;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+// feeds a recording back through the sampling cycle, keeping the recorded
+// slot times, at the recorded pace, some times faster, or as fast as the
+// cycle goes
+public class Replay implements Runnable {
+
+    // runs one sampling cycle with the recorded readings
+    @FunctionalInterface
+    public interface Cycle {
+
+        void run(long slot, RawReadings readings);
+    }
+
+    private final Path path;
+
+    // 1 replays in real time, infinity as fast as possible
+    private final double speed;
+
+    private final Cycle cycle;
+
+    private volatile boolean stopped = false;
+
+    private volatile long replayed = 0;
+
+    // the logger
+    private static Logger logger = Logger.getLogger(Replay.class.getName());
+
+    public Replay(Path path, double speed, Cycle cycle) {
+        super();
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("replay speed must be positive");
+        }
+        this.path = path;
+        this.speed = speed;
+        this.cycle = cycle;
+    }
+
+    // accepts 1x, 10x, 10 or max, defaults to real time
+    public static double parseSpeed(String value) {
+
+        if (value == null || value.isBlank()) {
+            return 1;
+        }
+        String text = value.trim().toLowerCase(Locale.ROOT);
+        if ("max".equals(text)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (text.endsWith("x")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException(String.format("invalid replay speed: %s", value), nfe);
+        }
+    }
+
+    @Override
+    public void run() {
+
+        logger.info(String.format("replaying %s at %s speed", path,
+            Double.isInfinite(speed) ? "maximum" : speed + "x"));
+
+        RawReadings readings = new RawReadings();
+        long startNanos = System.nanoTime();
+        long firstTime = 0;
+
+        try (ReadingsReader reader = new ReadingsReader(path)) {
+            while (!stopped && reader.next(readings)) {
+                if (replayed == 0) {
+                    firstTime = readings.getTime();
+                } else if (!Double.isInfinite(speed)) {
+                    // each record is due when its recorded offset, scaled, has elapsed
+                    long dueNanos = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(readings.getTime() - firstTime) / speed);
+                    long waitNanos;
+                    while (!stopped && (waitNanos = dueNanos - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(waitNanos);
+                    }
+                }
+                cycle.run(replayed, readings);
+                replayed++;
+            }
+        } catch (IOException ioe) {
+            logger.severe(String.format("recording could not be replayed: %s", ioe.getMessage()));
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        logger.info(String.format("replay finished - records=%d recorded=%d ms elapsed=%d ms",
+            replayed, replayed == 0 ? 0 : readings.getTime() - firstTime, elapsedMillis));
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public long getReplayedCount() {
+        return replayed;
+    }
+}
@@ -0,0 +1,62 @@
+package deors.devices.ambientstation.raspberry.reporting;
+
+// band around the last reported value of a channel, changes within
+// the band are not worth reporting
+// the band is absolute, like 0.2, or relative to the reported value, like 5%
+public final class Deadband {
+
+    // any change leaves the band
+    public static final Deadband NONE = new Deadband(0, false);
+
+    private final double width;
+
+    private final boolean percent;
+
+    private Deadband(double width, boolean percent) {
+        super();
+        if (width < 0 || Double.isNaN(width) || Double.isInfinite(width)) {
+            throw new IllegalArgumentException("deadband width must be a positive number");
+        }
+        this.width = width;
+        this.percent = percent;
+    }
+
+    public static Deadband absolute(double width) {
+        return new Deadband(width, false);
+    }
+
+    public static Deadband percent(double width) {
+        return new Deadband(width, true);
+    }
+
+    // parses deadbands like 0.5 or 10%, blank values mean no deadband
+    public static Deadband parse(String value) {
+
+        if (value == null || value.isBlank()) {
+            return NONE;
+        }
+
+        String text = value.trim();
+        try {
+            if (text.endsWith("%")) {
+                return percent(Double.parseDouble(text.substring(0, text.length() - 1).trim()));
+            }
+            return absolute(Double.parseDouble(text));
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException(String.format("invalid deadband: %s", value), nfe);
+        }
+    }
+
+    // whether the current value is out of the band around the reported one
+    public boolean isExceeded(double reported, double current) {
+
+        double change = Math.abs(current - reported);
+        double band = percent ? Math.abs(reported) * width / 100 : width;
+        return band == 0 ? change != 0 : change > band;
+    }
+
+    @Override
+    public String toString() {
+        return percent ? width + "%" : Double.toString(width);
+    }
+}
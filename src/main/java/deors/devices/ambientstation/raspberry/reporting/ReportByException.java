@@ -0,0 +1,74 @@
+package deors.devices.ambientstation.raspberry.reporting;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+
+// decides which samples are worth publishing: a sample is reported when any
+// channel leaves its deadband around the last reported value, when the air
+// quality category or the motion status change, or when nothing was reported
+// for the heartbeat interval, so a quiet station is still known to be alive
+// shouldReport is only called from the sampling cycle
+public class ReportByException {
+
+    private final Deadband temperature;
+    private final Deadband humidity;
+    private final Deadband light;
+    private final Deadband sound;
+    private final Deadband airQuality;
+
+    // longest time without a report
+    private final long heartbeatMillis;
+
+    // last sample reported
+    private AmbientData reported;
+
+    private final LongAdder reportedCount = new LongAdder();
+    private final LongAdder suppressedCount = new LongAdder();
+
+    public ReportByException(Deadband temperature, Deadband humidity, Deadband light, Deadband sound,
+            Deadband airQuality, Duration heartbeat) {
+        super();
+        this.temperature = temperature;
+        this.humidity = humidity;
+        this.light = light;
+        this.sound = sound;
+        this.airQuality = airQuality;
+        this.heartbeatMillis = heartbeat.toMillis();
+    }
+
+    public boolean shouldReport(AmbientData data) {
+
+        if (reported == null
+                || data.getSlotTime() - reported.getSlotTime() >= heartbeatMillis
+                || data.getAirQuality() != reported.getAirQuality()
+                || data.isMotionDetected() != reported.isMotionDetected()
+                || temperature.isExceeded(reported.getTemperatureValue(), data.getTemperatureValue())
+                || humidity.isExceeded(reported.getHumidityValue(), data.getHumidityValue())
+                || light.isExceeded(reported.getLightValue(), data.getLightValue())
+                || sound.isExceeded(reported.getSoundRms(), data.getSoundRms())
+                || airQuality.isExceeded(reported.getAirQualityValue(), data.getAirQualityValue())) {
+            reported = data;
+            reportedCount.increment();
+            return true;
+        }
+
+        suppressedCount.increment();
+        return false;
+    }
+
+    public long getReportedCount() {
+        return reportedCount.sum();
+    }
+
+    public long getSuppressedCount() {
+        return suppressedCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("temp=%s humi=%s light=%s sound=%s airq=%s heartbeat=%d ms",
+            temperature, humidity, light, sound, airQuality, heartbeatMillis);
+    }
+}
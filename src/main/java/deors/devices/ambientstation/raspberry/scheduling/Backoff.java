@@ -0,0 +1,51 @@
+package deors.devices.ambientstation.raspberry.scheduling;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+// exponential backoff with jitter, delays double from the initial delay
+// up to the maximum and a random part of each delay, up to the jitter
+// fraction, is taken off so that stations restarted together by the same
+// outage do not retry in lockstep
+// instances are not thread safe
+public class Backoff {
+
+    // first and largest delay
+    private final long initialMillis;
+    private final long maxMillis;
+
+    // fraction of each delay that may be taken off at random, 0 to 1
+    private final double jitter;
+
+    // delays handed out since the last reset
+    private int attempts = 0;
+
+    public Backoff(Duration initial, Duration max, double jitter) {
+        super();
+        if (initial.isNegative() || initial.isZero() || max.compareTo(initial) < 0) {
+            throw new IllegalArgumentException("backoff delays must be positive and the maximum not below the initial delay");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("backoff jitter must be between 0 and 1");
+        }
+        this.initialMillis = initial.toMillis();
+        this.maxMillis = max.toMillis();
+        this.jitter = jitter;
+    }
+
+    public long nextDelayMillis() {
+
+        // the exponent is capped long before the double would overflow
+        double delay = Math.min(maxMillis, initialMillis * Math.pow(2, Math.min(attempts, 62)));
+        attempts++;
+        return Math.round(delay * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    public void reset() {
+        attempts = 0;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,153 @@
+package deors.devices.ambientstation.raspberry.scheduling;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import deors.devices.ambientstation.raspberry.metrics.LatencyHistogram;
+
+public class FixedRateSampler {
+
+    // a sample taken on a slot of the fixed rate timeline
+    @FunctionalInterface
+    public interface SampleTask {
+
+        void sample(long slot, long slotNanos, long slotTimeMillis);
+    }
+
+    // scheduler where slots are run
+    private final StationScheduler scheduler;
+
+    // task name, also used in the scheduler statistics
+    private final String name;
+
+    // configured period between slots
+    private final long periodNanos;
+
+    // the work done on every slot
+    private final SampleTask task;
+
+    // timeline origin, both monotonic and wall clock
+    private long originNanos;
+    private long originMillis;
+
+    // next slot to be run, only touched by the slot chain
+    private volatile long nextSlot;
+
+    // pending slot run
+    private volatile ScheduledFuture<?> pending;
+
+    // running flag
+    private volatile boolean running;
+
+    // slots whose work took longer than the period
+    private final LongAdder overruns = new LongAdder();
+
+    // slots never run because a previous one overran them
+    private final LongAdder skippedSlots = new LongAdder();
+
+    // delay between the slot time and the actual start of the work
+    private final LatencyHistogram jitter = new LatencyHistogram();
+
+    // the logger
+    private static Logger logger = Logger.getLogger(FixedRateSampler.class.getName());
+
+    public FixedRateSampler(StationScheduler scheduler, String name, long period, TimeUnit unit, SampleTask task) {
+        super();
+        if (period <= 0) {
+            throw new IllegalArgumentException("sampling period must be positive");
+        }
+        this.scheduler = scheduler;
+        this.name = name;
+        this.periodNanos = unit.toNanos(period);
+        this.task = task;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    public long getOverruns() {
+        return overruns.sum();
+    }
+
+    public long getSkippedSlots() {
+        return skippedSlots.sum();
+    }
+
+    public LatencyHistogram getJitter() {
+        return jitter;
+    }
+
+    public synchronized void start() {
+
+        if (running) {
+            return;
+        }
+        running = true;
+        originNanos = System.nanoTime();
+        originMillis = System.currentTimeMillis();
+        nextSlot = 0;
+        scheduleSlot(0);
+    }
+
+    public synchronized void stop() {
+
+        running = false;
+        ScheduledFuture<?> future = pending;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private void scheduleSlot(long slot) {
+
+        if (!running || scheduler.isShutdown()) {
+            return;
+        }
+        long delay = slotNanos(slot) - System.nanoTime();
+        pending = scheduler.schedule(name, this::runSlot, Math.max(0, delay), TimeUnit.NANOSECONDS);
+    }
+
+    private long slotNanos(long slot) {
+        return originNanos + slot * periodNanos;
+    }
+
+    private void runSlot() {
+
+        long slot = nextSlot;
+        long slotNanos = slotNanos(slot);
+        long start = System.nanoTime();
+        jitter.record(start - slotNanos);
+
+        try {
+            task.sample(slot, slotNanos, originMillis + TimeUnit.NANOSECONDS.toMillis(slot * periodNanos));
+        } finally {
+            long end = System.nanoTime();
+            if (end - slotNanos > periodNanos) {
+                overruns.increment();
+            }
+
+            // the next slot is the first one still in the future
+            // slots already passed are skipped instead of run in a burst
+            long next = slot + 1;
+            if (end >= slotNanos(next)) {
+                next = (end - originNanos) / periodNanos + 1;
+                skippedSlots.add(next - slot - 1);
+            }
+            nextSlot = next;
+            scheduleSlot(next);
+        }
+    }
+
+    public void logStats() {
+
+        logger.info(String.format("sampler stats - %s: period=%dms overruns=%d skipped=%d jitter %s",
+            name, TimeUnit.NANOSECONDS.toMillis(periodNanos), getOverruns(), getSkippedSlots(), jitter));
+    }
+}
@@ -0,0 +1,122 @@
+package deors.devices.ambientstation.raspberry.scheduling;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class StationScheduler {
+
+    // the shared executor running every station task
+    private final ScheduledThreadPoolExecutor executor;
+
+    // run statistics per task name
+    private final ConcurrentMap<String, TaskStats> stats = new ConcurrentHashMap<>();
+
+    // the logger
+    private static Logger logger = Logger.getLogger(StationScheduler.class.getName());
+
+    public StationScheduler(int threads) {
+        super();
+        executor = new ScheduledThreadPoolExecutor(threads, new StationThreadFactory());
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+    }
+
+    public ScheduledFuture<?> schedule(String name, Runnable task, long delay, TimeUnit unit) {
+
+        return executor.schedule(instrument(name, task), delay, unit);
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(String name, Runnable task, long initialDelay, long period, TimeUnit unit) {
+
+        return executor.scheduleAtFixedRate(instrument(name, task), initialDelay, period, unit);
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(String name, Runnable task, long initialDelay, long delay, TimeUnit unit) {
+
+        return executor.scheduleWithFixedDelay(instrument(name, task), initialDelay, delay, unit);
+    }
+
+    public void execute(String name, Runnable task) {
+
+        executor.execute(instrument(name, task));
+    }
+
+    public Collection<TaskStats> getTaskStats() {
+
+        List<TaskStats> result = new ArrayList<>(stats.values());
+        result.sort(Comparator.comparing(TaskStats::getName));
+        return result;
+    }
+
+    public void logTaskStats() {
+
+        for (TaskStats taskStats : getTaskStats()) {
+            logger.info(String.format("task stats - %s", taskStats));
+        }
+    }
+
+    public boolean isShutdown() {
+
+        return executor.isShutdown();
+    }
+
+    public boolean shutdown(long timeout, TimeUnit unit) {
+
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeout, unit)) {
+                return true;
+            }
+            logger.warning("station tasks did not finish in time, interrupting them");
+            executor.shutdownNow();
+            return executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException ie) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Runnable instrument(String name, Runnable task) {
+
+        TaskStats taskStats = stats.computeIfAbsent(name, TaskStats::new);
+
+        return () -> {
+            long start = System.nanoTime();
+            boolean failed = false;
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                // never let an exception cancel a periodic task
+                failed = true;
+                logger.log(Level.SEVERE, String.format("station task %s failed", name), ex);
+            } finally {
+                taskStats.record(System.nanoTime() - start, failed);
+            }
+        };
+    }
+
+    private static class StationThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "station-" + counter.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        }
+    }
+}
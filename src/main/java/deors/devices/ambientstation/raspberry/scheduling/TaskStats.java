@@ -0,0 +1,67 @@
+package deors.devices.ambientstation.raspberry.scheduling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TaskStats {
+
+    // task name
+    private final String name;
+
+    // number of completed runs
+    private final LongAdder runs = new LongAdder();
+
+    // number of runs that ended with an exception
+    private final LongAdder failures = new LongAdder();
+
+    // accumulated and maximum run time in nanoseconds
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public TaskStats(String name) {
+        super();
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanMillis() {
+        long count = getRuns();
+        return count == 0 ? 0.0 : (double) getTotalNanos() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    void record(long elapsedNanos, boolean failed) {
+
+        runs.increment();
+        if (failed) {
+            failures.increment();
+        }
+        totalNanos.add(elapsedNanos);
+        maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: runs=%d failures=%d mean=%.2fms max=%.2fms",
+            name, getRuns(), getFailures(), getMeanMillis(), (double) getMaxNanos() / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,68 @@
+package deors.devices.ambientstation.raspberry.simulation;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import deors.devices.ambientstation.raspberry.Durations;
+
+// timing and faults of one simulated device: every access takes the
+// latency plus a uniform random jitter, and fails with the given rate
+public class DeviceProfile {
+
+    public static final DeviceProfile IDEAL = new DeviceProfile(Duration.ZERO, Duration.ZERO, 0);
+
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final double failureRate;
+
+    public DeviceProfile(Duration latency, Duration jitter, double failureRate) {
+        super();
+        if (failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("failure rate must be between 0 and 1");
+        }
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+        this.failureRate = failureRate;
+    }
+
+    // reads latency, jitter and failure rate under the prefix,
+    // keeping the given profile values for those not set
+    public static DeviceProfile fromProperties(Properties properties, String prefix, DeviceProfile defaults) {
+
+        String failures = properties.getProperty(prefix + "failure.rate");
+        return new DeviceProfile(
+            Durations.parse(properties.getProperty(prefix + "latency"), Duration.ofNanos(defaults.latencyNanos)),
+            Durations.parse(properties.getProperty(prefix + "jitter"), Duration.ofNanos(defaults.jitterNanos)),
+            failures == null || failures.isBlank() ? defaults.failureRate : Double.parseDouble(failures.trim()));
+    }
+
+    // waits as long as the device would take, then fails now and then
+    public void access(String device, Random random) throws IOException {
+
+        long nanos = latencyNanos;
+        if (jitterNanos > 0) {
+            nanos += (long) (random.nextDouble() * jitterNanos);
+        }
+        if (nanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(String.format("%s access was interrupted", device));
+            }
+        }
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            throw new IOException(String.format("simulated %s failure", device));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("latency %d us, jitter %d us, failure rate %.3f",
+            latencyNanos / 1000, jitterNanos / 1000, failureRate);
+    }
+}
@@ -0,0 +1,63 @@
+package deors.devices.ambientstation.raspberry.simulation;
+
+import java.time.Duration;
+import java.util.Properties;
+import java.util.Random;
+
+import deors.devices.ambientstation.raspberry.Durations;
+
+// synthetic sensor signal: a sine wave around an offset, with gaussian
+// noise, clamped to the range of the device
+public class Signal {
+
+    private final double offset;
+    private final double amplitude;
+    private final long periodMillis;
+    private final double noise;
+    private final double min;
+    private final double max;
+
+    public Signal(double offset, double amplitude, Duration period, double noise, double min, double max) {
+        super();
+        if (period.isZero() || period.isNegative()) {
+            throw new IllegalArgumentException("signal period must be positive");
+        }
+        this.offset = offset;
+        this.amplitude = amplitude;
+        this.periodMillis = period.toMillis();
+        this.noise = noise;
+        this.min = min;
+        this.max = max;
+    }
+
+    // reads offset, amplitude, period and noise under the prefix,
+    // keeping the given signal values for those not set
+    public static Signal fromProperties(Properties properties, String prefix, Signal defaults) {
+
+        return new Signal(
+            getDouble(properties, prefix + "offset", defaults.offset),
+            getDouble(properties, prefix + "amplitude", defaults.amplitude),
+            Durations.parse(properties.getProperty(prefix + "period"), Duration.ofMillis(defaults.periodMillis)),
+            getDouble(properties, prefix + "noise", defaults.noise),
+            defaults.min,
+            defaults.max);
+    }
+
+    private static double getDouble(Properties properties, String key, double defValue) {
+
+        String value = properties.getProperty(key);
+        return value == null || value.isBlank() ? defValue : Double.parseDouble(value.trim());
+    }
+
+    public double value(long timeMillis, Random random) {
+
+        double phase = 2 * Math.PI * Math.floorMod(timeMillis, periodMillis) / periodMillis;
+        double value = offset + amplitude * Math.sin(phase) + noise * random.nextGaussian();
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f +/- %.1f every %d ms, noise %.1f", offset, amplitude, periodMillis, noise);
+    }
+}
@@ -0,0 +1,249 @@
+package deors.devices.ambientstation.raspberry.simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import org.iot.raspberry.grovepi.GroveIO;
+import org.iot.raspberry.grovepi.GrovePi;
+import org.iot.raspberry.grovepi.GrovePiCommands;
+import org.iot.raspberry.grovepi.GrovePiSequence;
+import org.iot.raspberry.grovepi.GrovePiSequenceVoid;
+import org.iot.raspberry.grovepi.devices.GroveRgbLcd;
+
+// GrovePi board simulated at the command level, so the Grove device classes
+// run unchanged on any machine
+//
+// every port produces a synthetic signal, analog ports in the 0-1023 range,
+// digital ports high when their signal reaches 0.5, and dht ports a
+// temperature and a humidity; outputs keep the last value written
+//
+// each device, a0-a2, d2-d8 or lcd, has its own latency, jitter and failure
+// rate, and as on the real board one access is served at a time
+//
+// the waits of the Grove device classes are honoured, so reads take as long
+// as on the real board, 100 ms for analog and digital inputs and 600 ms for a
+// dht; grovepi.simulated.sleep = false skips them for zero latency boards
+//
+// configured with grovepi.simulated.<device>.<setting>, and with
+// grovepi.simulated.<setting> for every device at once:
+//   latency, jitter, failure.rate   timing and faults of the device
+//   offset, amplitude, period, noise   signal of an input
+//   temperature.* and humidity.*      signals of a dht
+//   grovepi.simulated.seed            repeatable random values
+//   grovepi.simulated.sleep           whether device class waits are kept
+public class SimulatedGrovePi implements GrovePi {
+
+    static final String LCD = "lcd";
+
+    private static final String PREFIX = "grovepi.simulated.";
+
+    // device names by pin, so reads do not build strings
+    private static final String[] ANALOG_PORTS = new String[16];
+    private static final String[] DIGITAL_PORTS = new String[16];
+
+    static {
+        for (int pin = 0; pin < 16; pin++) {
+            ANALOG_PORTS[pin] = "a" + pin;
+            DIGITAL_PORTS[pin] = "d" + pin;
+        }
+    }
+
+    private static final Signal ANALOG = new Signal(400, 200, Duration.ofMinutes(10), 20, 0, 1023);
+    private static final Signal DIGITAL = new Signal(0, 0, Duration.ofMinutes(1), 0, 0, 1);
+    private static final String TEMPERATURE_SUFFIX = ".temperature";
+    private static final String HUMIDITY_SUFFIX = ".humidity";
+
+    private static final Signal TEMPERATURE = new Signal(21, 2, Duration.ofHours(1), 0.1, -40, 80);
+    private static final Signal HUMIDITY = new Signal(50, 10, Duration.ofHours(1), 0.5, 0, 100);
+
+    private final Properties properties;
+
+    private final Random random;
+
+    private final DeviceProfile defaultProfile;
+
+    // whether the waits between command and reply take their time
+    private final boolean sleeps;
+
+    // resolved on first use, only used under the board lock
+    private final Map<String, DeviceProfile> profiles = new HashMap<>();
+    private final Map<String, Signal> signals = new HashMap<>();
+    private final Map<Integer, Boolean> outputs = new HashMap<>();
+
+    private final SimulatedIO io = new SimulatedIO();
+
+    private final SimulatedLcd lcd = new SimulatedLcd(this);
+
+    private final LongAdder accesses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    // the logger
+    private static Logger logger = Logger.getLogger(SimulatedGrovePi.class.getName());
+
+    public SimulatedGrovePi(Properties properties) {
+        super();
+        this.properties = properties;
+
+        String seed = properties.getProperty(PREFIX + "seed");
+        this.random = seed == null || seed.isBlank() ? new Random() : new Random(Long.parseLong(seed.trim()));
+        this.defaultProfile = DeviceProfile.fromProperties(properties, PREFIX, DeviceProfile.IDEAL);
+        this.sleeps = Boolean.parseBoolean(properties.getProperty(PREFIX + "sleep", "true").trim());
+
+        logger.info(String.format("simulated grovepi board, devices take %s unless configured, %s",
+            defaultProfile, sleeps ? "with the device waits of the real board" : "without device waits"));
+    }
+
+    @Override
+    public synchronized <T> T exec(GrovePiSequence<T> sequence) throws IOException {
+        return sequence.execute(io);
+    }
+
+    @Override
+    public synchronized void execVoid(GrovePiSequenceVoid sequence) throws IOException {
+        sequence.execute(io);
+    }
+
+    @Override
+    public GroveRgbLcd getLCD() {
+        return lcd;
+    }
+
+    // waits and fails as the device profile says
+    synchronized void access(String device) throws IOException {
+
+        accesses.increment();
+        try {
+            profile(device).access(device, random);
+        } catch (IOException ioe) {
+            failures.increment();
+            throw ioe;
+        }
+    }
+
+    private DeviceProfile profile(String device) {
+        return profiles.computeIfAbsent(device,
+            key -> DeviceProfile.fromProperties(properties, PREFIX + key + ".", defaultProfile));
+    }
+
+    private double signal(String key, Signal defaults) {
+
+        Signal signal = signals.computeIfAbsent(key,
+            k -> Signal.fromProperties(properties, PREFIX + k + ".", defaults));
+        return signal.value(System.currentTimeMillis(), random);
+    }
+
+    // last value written to a digital output
+    public synchronized boolean getDigitalOutput(int pin) {
+        return outputs.getOrDefault(pin, false);
+    }
+
+    public long getAccessCount() {
+        return accesses.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    @Override
+    public void close() {
+        logger.info(String.format("simulated grovepi board closed after %d accesses and %d failures",
+            accesses.sum(), failures.sum()));
+    }
+
+    // answers the commands of the Grove device classes, under the board lock
+    private class SimulatedIO implements GroveIO {
+
+        private int command = GrovePiCommands.unused;
+        private int pin;
+
+        @Override
+        public void write(int... data) throws IOException {
+
+            command = data[0];
+            pin = data.length > 1 ? data[1] : 0;
+
+            if (command == GrovePiCommands.dWrite_cmd) {
+                access(digital());
+                outputs.put(pin, data[2] != 0);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            switch (command) {
+                case GrovePiCommands.dRead_cmd:
+                    access(digital());
+                    return signal(digital(), DIGITAL) >= 0.5 ? 1 : 0;
+                case GrovePiCommands.dht_temp_cmd:
+                    // status byte before the readings
+                    return command;
+                default:
+                    throw new IOException(String.format("unexpected read after command %d", command));
+            }
+        }
+
+        @Override
+        public byte[] read(byte[] buffer) throws IOException {
+
+            switch (command) {
+                case GrovePiCommands.aRead_cmd:
+                    access(analog());
+                    int value = (int) Math.round(signal(analog(), ANALOG));
+                    buffer[0] = (byte) command;
+                    buffer[1] = (byte) (value >> 8);
+                    buffer[2] = (byte) value;
+                    return buffer;
+                case GrovePiCommands.dht_temp_cmd:
+                    access(digital());
+                    buffer[0] = (byte) command;
+                    ByteBuffer.wrap(buffer, 1, 8).order(ByteOrder.LITTLE_ENDIAN)
+                        .putFloat((float) signal(digital() + TEMPERATURE_SUFFIX, TEMPERATURE))
+                        .putFloat((float) signal(digital() + HUMIDITY_SUFFIX, HUMIDITY));
+                    return buffer;
+                default:
+                    throw new IOException(String.format("unexpected read after command %d", command));
+            }
+        }
+
+        // the wait the device classes give the board to answer, under the board
+        // lock as on the real one, on top of the device profile
+        @Override
+        public void sleep(long millis) {
+
+            if (!sleeps) {
+                return;
+            }
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private String analog() throws IOException {
+            return port(ANALOG_PORTS);
+        }
+
+        private String digital() throws IOException {
+            return port(DIGITAL_PORTS);
+        }
+
+        private String port(String[] ports) throws IOException {
+
+            if (pin < 0 || pin >= ports.length) {
+                throw new IOException(String.format("invalid pin %d", pin));
+            }
+            return ports[pin];
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package deors.devices.ambientstation.raspberry.simulation;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.iot.raspberry.grovepi.devices.GroveRgbLcd;
+
+// lcd that keeps the last text and colour, taking as long as its profile says
+// and sharing the bus of the board
+public class SimulatedLcd extends GroveRgbLcd {
+
+    private final SimulatedGrovePi board;
+
+    private volatile String text = "";
+    private volatile int[] rgb = { 0, 0, 0 };
+
+    private final LongAdder writes = new LongAdder();
+
+    SimulatedLcd(SimulatedGrovePi board) {
+        super();
+        this.board = board;
+    }
+
+    @Override
+    public void setRGB(int r, int g, int b) throws IOException {
+
+        board.access(SimulatedGrovePi.LCD);
+        rgb = new int[] { r, g, b };
+        writes.increment();
+    }
+
+    @Override
+    public void setText(String text) throws IOException {
+
+        board.access(SimulatedGrovePi.LCD);
+        this.text = text;
+        writes.increment();
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int[] getRGB() {
+        return rgb.clone();
+    }
+
+    public long getWriteCount() {
+        return writes.sum();
+    }
+
+    @Override
+    public void close() {
+    }
+}
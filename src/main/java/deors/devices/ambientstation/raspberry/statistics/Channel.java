@@ -0,0 +1,39 @@
+package deors.devices.ambientstation.raspberry.statistics;
+
+// sensor channels with rolling statistics, with the key and decimals
+// they are published with
+public enum Channel {
+
+    TEMPERATURE("temp", 1),
+    HUMIDITY("humi", 1),
+    LIGHT("light", 0),
+    SOUND("sound", 0),
+    AIR_QUALITY("airq", 0);
+
+    private final String key;
+
+    private final int precision;
+
+    Channel(String key, int precision) {
+        this.key = key;
+        this.precision = precision;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    // rounds a value to the decimals it is published with
+    public double round(double value) {
+
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return value;
+        }
+        double scale = precision == 0 ? 1 : Math.pow(10, precision);
+        return Math.round(value * scale) / scale;
+    }
+}
@@ -0,0 +1,75 @@
+package deors.devices.ambientstation.raspberry.statistics;
+
+import java.time.Duration;
+import java.util.List;
+
+// rolling windows of every channel, fed and read by the sampling cycle
+// each window is split in the same number of buckets, see RollingWindow
+public class RollingStatistics {
+
+    // channels, values() returns a new array on every call
+    private static final Channel[] CHANNELS = Channel.values();
+
+    private final Duration[] windows;
+
+    private final String[] labels;
+
+    // windows by channel and window
+    private final RollingWindow[][] rolling;
+
+    public RollingStatistics(List<Duration> windows, int buckets) {
+        super();
+        if (windows.size() > WindowStats.MAX_WINDOWS) {
+            throw new IllegalArgumentException(String.format("at most %d statistics windows are supported", WindowStats.MAX_WINDOWS));
+        }
+        this.windows = windows.toArray(new Duration[0]);
+        this.labels = WindowStats.labels(this.windows);
+
+        rolling = new RollingWindow[CHANNELS.length][this.windows.length];
+        for (Channel channel : CHANNELS) {
+            for (int i = 0; i < this.windows.length; i++) {
+                rolling[channel.ordinal()][i] = new RollingWindow(this.windows[i], buckets);
+            }
+        }
+    }
+
+    public void add(Channel channel, long timeMillis, double value) {
+
+        for (RollingWindow window : rolling[channel.ordinal()]) {
+            window.add(timeMillis, value);
+        }
+    }
+
+    public RollingWindow getWindow(Channel channel, int window) {
+        return rolling[channel.ordinal()][window];
+    }
+
+    public int getWindowCount() {
+        return windows.length;
+    }
+
+    // allocated once per cycle and shared by every reader of the cycle
+    public WindowStats snapshot() {
+
+        double[] values = new double[windows.length * CHANNELS.length * 3];
+        for (Channel channel : CHANNELS) {
+            for (int i = 0; i < windows.length; i++) {
+                RollingWindow window = rolling[channel.ordinal()][i];
+                int index = WindowStats.index(i, channel);
+                values[index] = window.getMin();
+                values[index + 1] = window.getMax();
+                values[index + 2] = window.getMean();
+            }
+        }
+        return WindowStats.of(windows, labels, values);
+    }
+
+    public void clear() {
+
+        for (RollingWindow[] channelWindows : rolling) {
+            for (RollingWindow window : channelWindows) {
+                window.clear();
+            }
+        }
+    }
+}
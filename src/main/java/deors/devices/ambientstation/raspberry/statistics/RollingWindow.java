@@ -0,0 +1,201 @@
+package deors.devices.ambientstation.raspberry.statistics;
+
+import java.time.Duration;
+
+// min, max and mean of one channel over a sliding time window
+//
+// the window is split in a fixed number of buckets, each one keeping the
+// min, max, sum and count of its samples, so memory does not depend on the
+// sampling rate and the window slides one bucket at a time
+// min and max of the closed buckets come from monotonic deques of bucket
+// numbers and the mean from running sums, all kept in preallocated arrays,
+// so adding a sample is O(1) amortized and allocates nothing
+//
+// values are as of the last sample added, instances are not thread safe
+public class RollingWindow {
+
+    private final Duration window;
+
+    private final long bucketMillis;
+
+    private final int buckets;
+
+    // aggregates of the closed buckets, indexed by bucket number modulo buckets
+    private final double[] mins;
+    private final double[] maxs;
+    private final double[] sums;
+    private final long[] counts;
+
+    // closed buckets still in the window, oldest first
+    private final long[] closed;
+    private int closedHead = 0;
+    private int closedSize = 0;
+
+    // closed bucket numbers with increasing mins and decreasing maxs
+    private final long[] minDeque;
+    private int minHead = 0;
+    private int minSize = 0;
+    private final long[] maxDeque;
+    private int maxHead = 0;
+    private int maxSize = 0;
+
+    // sum and count of the closed buckets still in the window
+    private double sum = 0;
+    private long count = 0;
+
+    // bucket being filled
+    private long current = Long.MIN_VALUE;
+    private double currentMin;
+    private double currentMax;
+    private double currentSum;
+    private long currentCount = 0;
+
+    public RollingWindow(Duration window, int buckets) {
+        super();
+        if (buckets < 1 || window.toMillis() < buckets) {
+            throw new IllegalArgumentException("rolling window needs at least one bucket of at least 1 ms");
+        }
+        this.window = window;
+        this.buckets = buckets;
+        this.bucketMillis = window.toMillis() / buckets;
+
+        mins = new double[buckets];
+        maxs = new double[buckets];
+        sums = new double[buckets];
+        counts = new long[buckets];
+        closed = new long[buckets];
+        minDeque = new long[buckets];
+        maxDeque = new long[buckets];
+    }
+
+    public void add(long timeMillis, double value) {
+
+        if (Double.isNaN(value)) {
+            return;
+        }
+
+        // a time going backwards is counted in the current bucket
+        long bucket = Math.floorDiv(timeMillis, bucketMillis);
+        if (bucket > current) {
+            roll(bucket);
+        }
+
+        if (currentCount == 0 || value < currentMin) {
+            currentMin = value;
+        }
+        if (currentCount == 0 || value > currentMax) {
+            currentMax = value;
+        }
+        currentSum += value;
+        currentCount++;
+    }
+
+    private void roll(long bucket) {
+
+        if (currentCount > 0) {
+            close();
+        }
+
+        current = bucket;
+        currentSum = 0;
+        currentCount = 0;
+
+        // the window covers the current bucket and the buckets - 1 before it
+        long oldest = bucket - buckets + 1;
+        while (closedSize > 0 && closed[closedHead] < oldest) {
+            int slot = slot(closed[closedHead]);
+            sum -= sums[slot];
+            count -= counts[slot];
+            closedHead = (closedHead + 1) % buckets;
+            closedSize--;
+        }
+        if (count == 0) {
+            // no drift left behind by the running sum
+            sum = 0;
+        }
+        while (minSize > 0 && minDeque[minHead] < oldest) {
+            minHead = (minHead + 1) % buckets;
+            minSize--;
+        }
+        while (maxSize > 0 && maxDeque[maxHead] < oldest) {
+            maxHead = (maxHead + 1) % buckets;
+            maxSize--;
+        }
+    }
+
+    private void close() {
+
+        int slot = slot(current);
+        mins[slot] = currentMin;
+        maxs[slot] = currentMax;
+        sums[slot] = currentSum;
+        counts[slot] = currentCount;
+
+        closed[(closedHead + closedSize) % buckets] = current;
+        closedSize++;
+        sum += currentSum;
+        count += currentCount;
+
+        // buckets that can no longer be the min or max leave the deques
+        while (minSize > 0 && mins[slot(minDeque[(minHead + minSize - 1) % buckets])] >= currentMin) {
+            minSize--;
+        }
+        minDeque[(minHead + minSize) % buckets] = current;
+        minSize++;
+
+        while (maxSize > 0 && maxs[slot(maxDeque[(maxHead + maxSize - 1) % buckets])] <= currentMax) {
+            maxSize--;
+        }
+        maxDeque[(maxHead + maxSize) % buckets] = current;
+        maxSize++;
+    }
+
+    private int slot(long bucket) {
+        return (int) Math.floorMod(bucket, (long) buckets);
+    }
+
+    // NaN when the window has no samples
+    public double getMin() {
+
+        double min = minSize > 0 ? mins[slot(minDeque[minHead])] : Double.NaN;
+        if (currentCount > 0 && !(min <= currentMin)) {
+            min = currentMin;
+        }
+        return min;
+    }
+
+    public double getMax() {
+
+        double max = maxSize > 0 ? maxs[slot(maxDeque[maxHead])] : Double.NaN;
+        if (currentCount > 0 && !(max >= currentMax)) {
+            max = currentMax;
+        }
+        return max;
+    }
+
+    public double getMean() {
+
+        long total = count + currentCount;
+        return total == 0 ? Double.NaN : (sum + currentSum) / total;
+    }
+
+    public long getCount() {
+        return count + currentCount;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public void clear() {
+
+        closedSize = 0;
+        minSize = 0;
+        maxSize = 0;
+        sum = 0;
+        count = 0;
+        current = Long.MIN_VALUE;
+        currentSum = 0;
+        currentCount = 0;
+    }
+}
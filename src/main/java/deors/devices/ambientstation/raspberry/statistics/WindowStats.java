@@ -0,0 +1,86 @@
+package deors.devices.ambientstation.raspberry.statistics;
+
+import java.time.Duration;
+
+import deors.devices.ambientstation.raspberry.Durations;
+
+// immutable min, max and mean of every channel over every window,
+// as of one sampling cycle; values are NaN for windows without samples
+public final class WindowStats {
+
+    // stats are published for a few windows only
+    public static final int MAX_WINDOWS = 8;
+
+    private static final int CHANNELS = Channel.values().length;
+
+    public static final WindowStats EMPTY = new WindowStats(new Duration[0], new String[0], new double[0]);
+
+    private final Duration[] windows;
+
+    // short window labels like 1m or 1h, shared between snapshots
+    private final String[] labels;
+
+    // min, max and mean by window and channel
+    private final double[] values;
+
+    private WindowStats(Duration[] windows, String[] labels, double[] values) {
+        super();
+        this.windows = windows;
+        this.labels = labels;
+        this.values = values;
+    }
+
+    // the arrays are kept, not copied, and must not be modified afterwards
+    static WindowStats of(Duration[] windows, String[] labels, double[] values) {
+        return new WindowStats(windows, labels, values);
+    }
+
+    // builds stats from decoded values, ordered by window, channel and min, max, mean
+    public static WindowStats of(Duration[] windows, double[] values) {
+
+        if (windows.length > MAX_WINDOWS) {
+            throw new IllegalArgumentException(String.format("at most %d statistics windows are supported", MAX_WINDOWS));
+        }
+        if (values.length != windows.length * CHANNELS * 3) {
+            throw new IllegalArgumentException("statistics values do not match the windows");
+        }
+        return new WindowStats(windows.clone(), labels(windows), values.clone());
+    }
+
+    static String[] labels(Duration[] windows) {
+
+        String[] labels = new String[windows.length];
+        for (int i = 0; i < windows.length; i++) {
+            labels[i] = Durations.format(windows[i]);
+        }
+        return labels;
+    }
+
+    static int index(int window, Channel channel) {
+        return (window * CHANNELS + channel.ordinal()) * 3;
+    }
+
+    public int getWindowCount() {
+        return windows.length;
+    }
+
+    public Duration getWindow(int window) {
+        return windows[window];
+    }
+
+    public String getLabel(int window) {
+        return labels[window];
+    }
+
+    public double getMin(int window, Channel channel) {
+        return values[index(window, channel)];
+    }
+
+    public double getMax(int window, Channel channel) {
+        return values[index(window, channel) + 1];
+    }
+
+    public double getMean(int window, Channel channel) {
+        return values[index(window, channel) + 2];
+    }
+}
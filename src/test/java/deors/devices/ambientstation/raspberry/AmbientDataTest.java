@@ -1,22 +1,77 @@
 package deors.devices.ambientstation.raspberry;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
 
+import deors.devices.ambientstation.raspberry.statistics.Channel;
+import deors.devices.ambientstation.raspberry.statistics.RollingStatistics;
+
 public class AmbientDataTest {
 
     @Test
     public void testJsonTransformation() {
 
-        AmbientData d = new AmbientData("id1");
+        AmbientData.Builder d = new AmbientData.Builder("id1");
         d.setTemperatureValue(20.1);
         d.setHumidityValue(58.1);
         d.setLightValue(50);
-        d.setSoundValue(53);
+        d.setSoundRms(53);
+        d.setSoundPeak(112);
+        d.setSoundLeq(34.49);
         d.setAirQualityValue(49);
         d.setMotionDetected(true);
-        String s = d.toJson();
+        d.setSlotTime(1600000000500L);
+        String s = d.build().toJson();
+
+        assertEquals("{\"id\":\"id1\",\"temp\":20.1,\"humi\":58.1,\"light\":50,\"sound\":53,\"soundpeak\":112,\"soundleq\":34.5,\"airq\":49,\"airqtext\":\"normal indoor air\",\"motion\":true}", s);
+    }
+
+    @Test
+    public void testSnapshotIsNotAffectedByLaterChanges() {
+
+        RollingStatistics statistics = new RollingStatistics(List.of(Duration.ofMinutes(1)), 60);
+
+        AmbientData.Builder b = new AmbientData.Builder("id1");
+        b.setSlotTime(1000);
+        b.setTemperatureValue(20.1);
+        b.updateStatistics(statistics);
+        AmbientData first = b.build();
+
+        b.setSlotTime(2000);
+        b.setTemperatureValue(25.3);
+        b.updateStatistics(statistics);
+        AmbientData second = b.build();
+
+        assertEquals(20.1, first.getTemperatureValue());
+        assertEquals(20.1, first.getStatistics().getMax(0, Channel.TEMPERATURE));
+        assertEquals(25.3, second.getTemperatureValue());
+        assertEquals(20.1, second.getStatistics().getMin(0, Channel.TEMPERATURE));
+        assertEquals(25.3, second.getStatistics().getMax(0, Channel.TEMPERATURE));
+        assertEquals(22.7, second.getStatistics().getMean(0, Channel.TEMPERATURE), 1e-9);
+    }
+
+    @Test
+    public void testJsonIncludesStatistics() {
+
+        RollingStatistics statistics = new RollingStatistics(List.of(Duration.ofMinutes(1), Duration.ofHours(1)), 60);
+
+        AmbientData.Builder b = new AmbientData.Builder("id1");
+        b.setSlotTime(1600000000500L);
+        b.setTemperatureValue(20.1);
+        b.setHumidityValue(58.1);
+        b.setLightValue(50);
+        b.setSoundRms(53);
+        b.setAirQualityValue(49);
+        b.updateStatistics(statistics);
+        String s = b.build().toJson();
 
-        assertEquals("{\"id\":\"id1\",\"temp\":20.1,\"humi\":58.1,\"light\":50,\"sound\":53,\"airq\":49,\"airqtext\":\"normal indoor air\",\"motion\":true}", s);
+        assertTrue(s.endsWith(",\"motion\":false,\"stats\":{"
+            + "\"1m\":{\"temp\":[20.1,20.1,20.1],\"humi\":[58.1,58.1,58.1],\"light\":[50,50,50],\"sound\":[53,53,53],\"airq\":[49,49,49]},"
+            + "\"1h\":{\"temp\":[20.1,20.1,20.1],\"humi\":[58.1,58.1,58.1],\"light\":[50,50,50],\"sound\":[53,53,53],\"airq\":[49,49,49]}}}"), s);
     }
 }
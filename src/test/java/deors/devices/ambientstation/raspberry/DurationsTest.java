@@ -0,0 +1,40 @@
+package deors.devices.ambientstation.raspberry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+public class DurationsTest {
+
+    @Test
+    public void testUnits() {
+
+        assertEquals(Duration.ofMillis(20), Durations.parse("20ms"));
+        assertEquals(Duration.ofMillis(500), Durations.parse("500"));
+        assertEquals(Duration.ofSeconds(2), Durations.parse(" 2s "));
+        assertEquals(Duration.ofMinutes(1), Durations.parse("1m"));
+        assertEquals(Duration.ofHours(24), Durations.parse("24h"));
+        assertEquals(Duration.ofSeconds(90), Durations.parse("PT1M30S"));
+        assertEquals(Duration.ofSeconds(5), Durations.parse("", Duration.ofSeconds(5)));
+    }
+
+    @Test
+    public void testFormat() {
+
+        assertEquals("1d", Durations.format(Duration.ofHours(24)));
+        assertEquals("90m", Durations.format(Duration.ofSeconds(5400)));
+        assertEquals("30s", Durations.format(Duration.ofSeconds(30)));
+        assertEquals("1500ms", Durations.format(Duration.ofMillis(1500)));
+        assertEquals("0ms", Durations.format(Duration.ZERO));
+    }
+
+    @Test
+    public void testInvalidUnit() {
+
+        assertThrows(IllegalArgumentException.class, () -> Durations.parse("5 parsecs"));
+        assertThrows(IllegalArgumentException.class, () -> Durations.parse("ms"));
+    }
+}
@@ -0,0 +1,72 @@
+package deors.devices.ambientstation.raspberry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class LcdRendererTest {
+
+    private final List<String> written = new ArrayList<>();
+
+    private boolean failing = false;
+
+    private final LcdRenderer renderer = new LcdRenderer(
+        text -> {
+            if (failing) {
+                throw new IOException("lcd failure");
+            }
+            written.add(text);
+        },
+        (r, g, b) -> {
+            if (failing) {
+                throw new IOException("lcd failure");
+            }
+            written.add(String.format("rgb %d %d %d", r, g, b));
+        });
+
+    @Test
+    public void testFrameFillsBothRows() {
+
+        assertEquals("temperature 21.5" + "20.1 21.0 22.4  ", LcdRenderer.frame("temperature 21.5", "20.1 21.0 22.4"));
+        assertEquals("air quality 120 " + "normal indoor ai", LcdRenderer.frame("air quality 120", "normal indoor air"));
+    }
+
+    @Test
+    public void testUnchangedTextAndColourAreNotWritten() throws IOException {
+
+        renderer.clear();
+        renderer.clear();
+        renderer.colour(10, 20, 30);
+        renderer.render("motion detected", "false");
+        renderer.render("motion detected", "false");
+        renderer.colour(10, 20, 30);
+        renderer.render("motion detected", "true");
+
+        assertEquals(List.of("rgb 0 0 0", "", "rgb 10 20 30",
+            LcdRenderer.frame("motion detected", "false"), LcdRenderer.frame("motion detected", "true")), written);
+        assertEquals(5, renderer.getWriteCount());
+        assertEquals(4, renderer.getSkippedCount());
+    }
+
+    @Test
+    public void testFailedWriteIsSentAgain() throws IOException {
+
+        renderer.render("light 300", "");
+        failing = true;
+        assertThrows(IOException.class, () -> renderer.render("light 310", ""));
+        assertThrows(IOException.class, () -> renderer.colour(1, 2, 3));
+        failing = false;
+
+        // what the lcd shows is unknown, even the same text is written
+        renderer.render("light 300", "");
+        renderer.colour(1, 2, 3);
+
+        assertEquals(List.of(LcdRenderer.frame("light 300", ""), LcdRenderer.frame("light 300", ""), "rgb 1 2 3"), written);
+        assertEquals(0, renderer.getSkippedCount());
+    }
+}
@@ -0,0 +1,18 @@
+package deors.devices.ambientstation.raspberry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class LcdTextTest {
+
+    @Test
+    public void testPadRight() {
+
+        assertEquals("T 21.5C H 48%   ", LcdText.padRight("T 21.5C H 48%", 16, ' '));
+        assertEquals("0123456789abcdef", LcdText.padRight("0123456789abcdefgh", 16, ' '));
+        assertEquals("................", LcdText.padRight(null, 16, '.'));
+        assertEquals("", LcdText.repeatCharacter('x', 0));
+        assertEquals("xxx", LcdText.repeatCharacter('x', 3));
+    }
+}
@@ -0,0 +1,164 @@
+package deors.devices.ambientstation.raspberry;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.ThreadMXBean;
+
+// samples live threads and allocated bytes of the jvm at a fixed interval
+// and listens to every garbage collection, for the soak harness
+//
+// allocation is taken from the per-thread counters of the live threads, so
+// what a thread allocates after its last sample and before it ends is missed
+class SoakMonitor implements NotificationListener {
+
+    private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+
+    // allocated bytes of each live thread at the previous sample
+    private final Map<Long, Long> allocatedByThread = new HashMap<>();
+
+    private long allocatedBytes = 0;
+
+    private long startNanos;
+
+    private int startThreads;
+    private int peakThreads;
+    private int lastThreads;
+
+    private long gcCount = 0;
+    private long gcPauseMillis = 0;
+    private long maxGcPauseMillis = 0;
+
+    // heap used after the latest collection
+    private long heapAfterGc = 0;
+
+    SoakMonitor() {
+        super();
+
+        threads.setThreadAllocatedMemoryEnabled(true);
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) collector;
+                emitter.addNotificationListener(this, null, null);
+                emitters.add(emitter);
+            }
+        }
+    }
+
+    // starts measuring from now, anything before is taken as warm up
+    synchronized void reset() {
+
+        sampleAllocation();
+        allocatedBytes = 0;
+        startNanos = System.nanoTime();
+        startThreads = threads.getThreadCount();
+        peakThreads = startThreads;
+        lastThreads = startThreads;
+        gcCount = 0;
+        gcPauseMillis = 0;
+        maxGcPauseMillis = 0;
+    }
+
+    synchronized void sample() {
+
+        sampleAllocation();
+        lastThreads = threads.getThreadCount();
+        peakThreads = Math.max(peakThreads, lastThreads);
+    }
+
+    private void sampleAllocation() {
+
+        long[] ids = threads.getAllThreadIds();
+        long[] allocated = threads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> previous = new HashMap<>(allocatedByThread);
+        allocatedByThread.clear();
+        for (int i = 0; i < ids.length; i++) {
+            if (allocated[i] < 0) {
+                continue;
+            }
+            allocatedBytes += allocated[i] - previous.getOrDefault(ids[i], 0L);
+            allocatedByThread.put(ids[i], allocated[i]);
+        }
+    }
+
+    @Override
+    public synchronized void handleNotification(Notification notification, Object handback) {
+
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        // concurrent cycles run alongside the application and are not pauses
+        if (info.getGcAction().contains("concurrent") || info.getGcName().contains("Concurrent")) {
+            return;
+        }
+        long pause = info.getGcInfo().getDuration();
+        gcCount++;
+        gcPauseMillis += pause;
+        maxGcPauseMillis = Math.max(maxGcPauseMillis, pause);
+        heapAfterGc = info.getGcInfo().getMemoryUsageAfterGc().values().stream()
+            .mapToLong(MemoryUsage::getUsed).sum();
+    }
+
+    void close() {
+
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException lnfe) {
+                // nothing to remove
+            }
+        }
+    }
+
+    synchronized double getElapsedSeconds() {
+        return (double) (System.nanoTime() - startNanos) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    synchronized int getStartThreads() {
+        return startThreads;
+    }
+
+    synchronized int getPeakThreads() {
+        return peakThreads;
+    }
+
+    synchronized int getLastThreads() {
+        return lastThreads;
+    }
+
+    synchronized double getAllocationRate() {
+        return allocatedBytes / 1048576.0 / getElapsedSeconds();
+    }
+
+    synchronized long getGcCount() {
+        return gcCount;
+    }
+
+    synchronized long getGcPauseMillis() {
+        return gcPauseMillis;
+    }
+
+    synchronized long getMaxGcPauseMillis() {
+        return maxGcPauseMillis;
+    }
+
+    synchronized long getHeapAfterGc() {
+        return heapAfterGc;
+    }
+}
@@ -0,0 +1,65 @@
+package deors.devices.ambientstation.raspberry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class SoundWindowTest {
+
+    @Test
+    public void testLevels() {
+
+        SoundWindow w = new SoundWindow(4);
+        w.add(3);
+        w.add(4);
+        w.add(3);
+        w.add(4);
+        SoundLevels l = w.reduce();
+
+        assertEquals(4, l.getSamples());
+        assertEquals(Math.sqrt(12.5), l.getRms(), 1e-9);
+        assertEquals(4, l.getPeak(), 1e-9);
+        assertEquals(10 * Math.log10(12.5), l.getLeq(), 1e-9);
+    }
+
+    @Test
+    public void testOldestSamplesAreEvicted() {
+
+        SoundWindow w = new SoundWindow(2);
+        w.add(100);
+        w.add(1);
+        w.add(1);
+        SoundLevels l = w.reduce();
+
+        assertEquals(2, l.getSamples());
+        assertEquals(1, l.getRms(), 1e-9);
+        assertEquals(1, l.getPeak(), 1e-9);
+        assertEquals(0, l.getLeq(), 1e-9);
+    }
+
+    @Test
+    public void testSamplesOlderThanTheWindowAreEvicted() {
+
+        // reads far slower than planned, the ring has room for all of them
+        SoundWindow w = new SoundWindow(100, Duration.ofSeconds(5));
+        w.add(0, 100);
+        w.add(TimeUnit.SECONDS.toNanos(3), 2);
+        w.add(TimeUnit.SECONDS.toNanos(6), 2);
+        SoundLevels l = w.reduce(TimeUnit.SECONDS.toNanos(6));
+
+        assertEquals(2, l.getSamples());
+        assertEquals(2, l.getPeak(), 1e-9);
+
+        assertEquals(1, w.reduce(TimeUnit.SECONDS.toNanos(9)).getSamples());
+        assertEquals(SoundLevels.SILENCE, w.reduce(TimeUnit.SECONDS.toNanos(12)));
+    }
+
+    @Test
+    public void testEmptyWindowIsSilence() {
+
+        assertEquals(SoundLevels.SILENCE, new SoundWindow(8).reduce());
+    }
+}
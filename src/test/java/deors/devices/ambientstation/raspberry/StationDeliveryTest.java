@@ -0,0 +1,102 @@
+package deors.devices.ambientstation.raspberry;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import deors.devices.ambientstation.raspberry.buffering.MappedOutbox;
+import deors.devices.ambientstation.raspberry.publishers.LoopbackPublisher;
+import deors.devices.ambientstation.raspberry.replay.RawReadings;
+import deors.devices.ambientstation.raspberry.replay.ReadingsReader;
+
+public class StationDeliveryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testOutboxKeepsSamplesUntilDelivered() throws Exception {
+
+        Logger stationLogger = Logger.getLogger("deors.devices.ambientstation.raspberry");
+        Level previousLevel = stationLogger.getLevel();
+        stationLogger.setLevel(Level.SEVERE);
+
+        Set<Long> delivered = new ConcurrentSkipListSet<>();
+        LoopbackPublisher.setListener((sampleTime, publishTime) -> delivered.add(sampleTime));
+
+        AmbientStationRunner runner = new AmbientStationRunner();
+        try {
+            runner.start(createStationProperties());
+            Thread.sleep(5000);
+        } finally {
+            runner.stop();
+            LoopbackPublisher.setListener((sampleTime, publishTime) -> { });
+            stationLogger.setLevel(previousLevel);
+        }
+
+        // every cycle taken is recorded, and each one was buffered
+        Set<Long> taken = new TreeSet<>();
+        try (ReadingsReader reader = new ReadingsReader(dir.resolve("readings.rec"))) {
+            RawReadings readings = new RawReadings();
+            while (reader.next(readings)) {
+                taken.add(readings.getTime());
+            }
+        }
+
+        Set<Long> pending = new TreeSet<>();
+        try (MappedOutbox outbox = new MappedOutbox(dir.resolve("outbox"), 65536, 4, false)) {
+            List<AmbientData> samples = new ArrayList<>();
+            outbox.peek(samples, Integer.MAX_VALUE);
+            for (AmbientData sample : samples) {
+                pending.add(sample.getSlotTime());
+            }
+        }
+
+        assertTrue(taken.size() > 10, "too few sampling cycles were taken: " + taken.size());
+        assertTrue(!delivered.isEmpty(), "no samples were delivered");
+        Set<Long> lost = new TreeSet<>(taken);
+        lost.removeAll(delivered);
+        lost.removeAll(pending);
+        assertTrue(lost.isEmpty(), String.format("%d of %d samples were lost: %s", lost.size(), taken.size(), lost));
+    }
+
+    private Properties createStationProperties() throws IOException {
+
+        Properties properties = new Properties();
+        try (InputStream in = getClass().getResourceAsStream("/application.properties")) {
+            properties.load(in);
+        }
+
+        // a durable outbox and a publisher losing a third of its deliveries
+        // after publish has returned, sampling faster than the real board could
+        properties.setProperty("grovepi.impl", "simulated");
+        properties.setProperty("grovepi.simulated.sleep", "false");
+        properties.setProperty("sample.interval", "100ms");
+        properties.setProperty("publisher.impl", LoopbackPublisher.class.getName());
+        properties.setProperty("publisher.format", "binary");
+        properties.setProperty("publisher.loopback.deferred", "true");
+        properties.setProperty("publisher.loopback.delivery.failure.rate", "0.3");
+        properties.setProperty("publisher.batch.size", "3");
+        properties.setProperty("publisher.batch.linger", "100ms");
+        properties.setProperty("outbox.dir", dir.resolve("outbox").toString());
+        properties.setProperty("outbox.segment.size", "65536");
+        properties.setProperty("outbox.segments", "4");
+        properties.setProperty("record.file", dir.resolve("readings.rec").toString());
+        properties.setProperty("http.port", "");
+        properties.setProperty("sse.port", "");
+        return properties;
+    }
+}
@@ -0,0 +1,165 @@
+package deors.devices.ambientstation.raspberry;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import deors.devices.ambientstation.raspberry.metrics.LatencyHistogram;
+import deors.devices.ambientstation.raspberry.publishers.LoopbackPublisher;
+
+// runs the whole station against the simulated board and a loopback
+// publisher, and fails when threads, allocation, gc pauses or the time
+// from sample to publish go over their budgets
+//
+// not part of the regular build, run it with mvn test -Psoak and
+//   soak.duration, soak.warmup      run length and warm up, 2m and 20s
+//   soak.budget.threads             live threads over those after warm up, 2
+//   soak.budget.allocation          mean allocation rate in MB/s, 2
+//   soak.budget.gc.pause            longest gc pause, 200ms
+//   soak.budget.latency             longest sample to publish time, 10s
+//   soak.publish.failure.rate       fraction of failed publishing, 0.01
+//   soak.log.level                  station log level, WARNING
+//   soak.station.<key>              overrides station property <key>
+public class StationSoak {
+
+    private static final long[] LATENCY_BOUNDS_NANOS = {
+        TimeUnit.MILLISECONDS.toNanos(10),
+        TimeUnit.MILLISECONDS.toNanos(50),
+        TimeUnit.MILLISECONDS.toNanos(100),
+        TimeUnit.MILLISECONDS.toNanos(500),
+        TimeUnit.SECONDS.toNanos(1),
+        TimeUnit.SECONDS.toNanos(2),
+        TimeUnit.SECONDS.toNanos(5),
+        TimeUnit.SECONDS.toNanos(10),
+        TimeUnit.SECONDS.toNanos(30)
+    };
+
+    private static Logger logger = Logger.getLogger(StationSoak.class.getName());
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testStationStaysWithinBudgets() throws Exception {
+
+        Duration duration = getDuration("soak.duration", Duration.ofMinutes(2));
+        Duration warmup = getDuration("soak.warmup", Duration.ofSeconds(20));
+        int threadsBudget = Integer.getInteger("soak.budget.threads", 2);
+        double allocationBudget = Double.parseDouble(System.getProperty("soak.budget.allocation", "2"));
+        Duration gcPauseBudget = getDuration("soak.budget.gc.pause", Duration.ofMillis(200));
+        Duration latencyBudget = getDuration("soak.budget.latency", Duration.ofSeconds(10));
+
+        // the station logs every sample, which would flood the output
+        Logger stationLogger = Logger.getLogger("deors.devices.ambientstation.raspberry");
+        Level previousLevel = stationLogger.getLevel();
+        stationLogger.setLevel(Level.parse(System.getProperty("soak.log.level", "WARNING")));
+        logger.setLevel(Level.INFO);
+
+        SoakMonitor monitor = new SoakMonitor();
+        AmbientStationRunner runner = new AmbientStationRunner();
+        List<String> report = new ArrayList<>();
+        try {
+            runner.start(createStationProperties());
+
+            logger.info(String.format("soak run of %s after %s of warm up", Durations.format(duration), Durations.format(warmup)));
+            Thread.sleep(warmup.toMillis());
+            monitor.reset();
+            LatencyHistogram latency = new LatencyHistogram(LATENCY_BOUNDS_NANOS);
+            LoopbackPublisher.setListener((sampleTime, publishTime) ->
+                latency.record(TimeUnit.MILLISECONDS.toNanos(publishTime - sampleTime)));
+
+            long end = System.nanoTime() + duration.toNanos();
+            long nextReport = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+            while (System.nanoTime() - end < 0) {
+                Thread.sleep(1000);
+                monitor.sample();
+                if (System.nanoTime() - nextReport >= 0) {
+                    logger.info(String.format("soak progress - threads=%d allocation=%.1f MB/s gc=%d max pause=%d ms published=%d",
+                        monitor.getLastThreads(), monitor.getAllocationRate(), monitor.getGcCount(),
+                        monitor.getMaxGcPauseMillis(), latency.getCount()));
+                    nextReport += TimeUnit.MINUTES.toNanos(1);
+                }
+            }
+
+            logger.info(String.format("soak results - threads start=%d peak=%d end=%d, allocation %.1f MB/s, "
+                + "gc count=%d total=%d ms max pause=%d ms, heap after gc %d KB, published %d samples after warm up, "
+                + "%d publisher connections and %d failures, latency %s",
+                monitor.getStartThreads(), monitor.getPeakThreads(), monitor.getLastThreads(), monitor.getAllocationRate(),
+                monitor.getGcCount(), monitor.getGcPauseMillis(), monitor.getMaxGcPauseMillis(), monitor.getHeapAfterGc() / 1024,
+                latency.getCount(),
+                LoopbackPublisher.getConnectionCount(), LoopbackPublisher.getFailureCount(), latency));
+
+            if (monitor.getPeakThreads() - monitor.getStartThreads() > threadsBudget) {
+                report.add(String.format("live threads grew from %d to %d, over the budget of %d",
+                    monitor.getStartThreads(), monitor.getPeakThreads(), threadsBudget));
+            }
+            if (monitor.getAllocationRate() > allocationBudget) {
+                report.add(String.format("allocation rate was %.1f MB/s, over the budget of %.1f MB/s",
+                    monitor.getAllocationRate(), allocationBudget));
+            }
+            if (monitor.getMaxGcPauseMillis() > gcPauseBudget.toMillis()) {
+                report.add(String.format("longest gc pause was %d ms, over the budget of %d ms",
+                    monitor.getMaxGcPauseMillis(), gcPauseBudget.toMillis()));
+            }
+            if (latency.getMaxNanos() > latencyBudget.toNanos()) {
+                report.add(String.format("longest time from sample to publish was %d ms, over the budget of %d ms",
+                    TimeUnit.NANOSECONDS.toMillis(latency.getMaxNanos()), latencyBudget.toMillis()));
+            }
+            if (latency.getCount() == 0) {
+                report.add("no samples were published after warm up");
+            }
+        } finally {
+            runner.stop();
+            monitor.close();
+            LoopbackPublisher.setListener((sampleTime, publishTime) -> { });
+            stationLogger.setLevel(previousLevel);
+        }
+
+        assertTrue(report.isEmpty(), String.join("; ", report));
+    }
+
+    private Properties createStationProperties() throws IOException {
+
+        Properties properties = new Properties();
+        try (InputStream in = getClass().getResourceAsStream("/application.properties")) {
+            properties.load(in);
+        }
+
+        // stand-in devices and a loopback publisher, every optional part
+        // enabled on local files and ephemeral ports
+        properties.setProperty("grovepi.impl", "simulated");
+        properties.setProperty("publisher.impl", LoopbackPublisher.class.getName());
+        properties.setProperty("publisher.format", "binary");
+        properties.setProperty("publisher.loopback.failure.rate", System.getProperty("soak.publish.failure.rate", "0.01"));
+        properties.setProperty("publisher.connect.backoff.initial", "100ms");
+        properties.setProperty("publisher.connect.backoff.max", "1s");
+        properties.setProperty("outbox.dir", dir.resolve("outbox").toString());
+        properties.setProperty("history.dir", dir.resolve("history").toString());
+        properties.setProperty("record.file", dir.resolve("readings.rec").toString());
+        properties.setProperty("http.port", "0");
+        properties.setProperty("sse.port", "0");
+
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("soak.station.")) {
+                properties.setProperty(key.substring("soak.station.".length()), System.getProperty(key));
+            }
+        }
+        return properties;
+    }
+
+    private static Duration getDuration(String key, Duration defValue) {
+        return Durations.parse(System.getProperty(key), defValue);
+    }
+}
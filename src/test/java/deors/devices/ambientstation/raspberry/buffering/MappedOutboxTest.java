@@ -0,0 +1,248 @@
+package deors.devices.ambientstation.raspberry.buffering;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+
+public class MappedOutboxTest {
+
+    private static final int SEGMENT_SIZE = MappedOutbox.MIN_SEGMENT_SIZE;
+
+    // records of this sample take 42 bytes, so 14 fit in the smallest segment
+    private static final int RECORD_SIZE = 42;
+    private static AmbientData sample(long time) {
+
+        AmbientData.Builder b = new AmbientData.Builder("station1");
+        b.setSlotTime(time);
+        b.setTemperatureValue(21.5);
+        return b.build();
+    }
+
+    private static long segmentFiles(Path dir) throws IOException {
+
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("segment-")).count();
+        }
+    }
+
+    @Test
+    public void testSegmentRolloverAndDeletionOfDeliveredSegments(@TempDir Path dir) throws IOException {
+
+        try (MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, 10, false)) {
+            for (int i = 0; i < 30; i++) {
+                outbox.append(sample(i));
+            }
+            assertEquals(30, outbox.size());
+            assertEquals(3, segmentFiles(dir));
+
+            List<AmbientData> batch = new ArrayList<>();
+            assertEquals(20, outbox.peek(batch, 20));
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i, batch.get(i).getSlotTime());
+            }
+
+            // peeking removes nothing, committing the first 20 frees the first segment
+            assertEquals(30, outbox.size());
+            outbox.commit(20);
+            assertEquals(10, outbox.size());
+            assertEquals(2, segmentFiles(dir));
+
+            batch.clear();
+            outbox.peek(batch, 100);
+            assertEquals(10, batch.size());
+            assertEquals(20, batch.get(0).getSlotTime());
+            assertEquals(29, batch.get(9).getSlotTime());
+        }
+    }
+
+    @Test
+    public void testReadPositionSurvivesRestart(@TempDir Path dir) throws IOException {
+
+        try (MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, 10, false)) {
+            for (int i = 0; i < 15; i++) {
+                outbox.append(sample(i));
+            }
+            outbox.peek(new ArrayList<>(), 5);
+            outbox.commit(5);
+        }
+
+        try (MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, 10, false)) {
+            assertEquals(10, outbox.size());
+            outbox.append(sample(15));
+
+            List<AmbientData> batch = new ArrayList<>();
+            outbox.peek(batch, 100);
+            assertEquals(11, batch.size());
+            assertEquals(5, batch.get(0).getSlotTime());
+            assertEquals(15, batch.get(10).getSlotTime());
+        }
+    }
+
+    @Test
+    public void testTornCheckpointFallsBackToThePreviousOne(@TempDir Path dir) throws IOException {
+
+        try (MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, 10, false)) {
+            for (int i = 0; i < 15; i++) {
+                outbox.append(sample(i));
+            }
+            outbox.peek(new ArrayList<>(), 5);
+            outbox.commit(5);
+            outbox.peek(new ArrayList<>(), 3);
+            outbox.commit(3);
+        }
+
+        // the second checkpoint, in the first slot, was torn
+        try (FileChannel channel = FileChannel.open(dir.resolve("checkpoint"), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0x55 }), 12);
+        }
+
+        try (MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, 10, false)) {
+            assertEquals(10, outbox.size());
+
+            List<AmbientData> batch = new ArrayList<>();
+            outbox.peek(batch, 100);
+            assertEquals(5, batch.get(0).getSlotTime());
+        }
+    }
+
+    @Test
+    public void testDiskUseIsBounded(@TempDir Path dir) throws IOException {
+
+        try (MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, 3, false)) {
+            for (int i = 0; i < 60; i++) {
+                outbox.append(sample(i));
+            }
+            assertEquals(3, segmentFiles(dir));
+            assertTrue(outbox.getDroppedCount() > 0);
+            assertEquals(60, outbox.size() + outbox.getDroppedCount());
+
+            List<AmbientData> batch = new ArrayList<>();
+            outbox.peek(batch, 100);
+            assertEquals(outbox.getDroppedCount(), batch.get(0).getSlotTime());
+            assertEquals(59, batch.get(batch.size() - 1).getSlotTime());
+        }
+    }
+
+    @Test
+    public void testCommitAfterARollSkipsOnlyThePeekedSamples(@TempDir Path dir) throws IOException {
+
+        try (MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, 3, false)) {
+            for (int i = 0; i < 20; i++) {
+                outbox.append(sample(i));
+            }
+            List<AmbientData> batch = new ArrayList<>();
+            assertEquals(20, outbox.peek(batch, 20));
+
+            // while the batch is published the outbox fills up and drops the first segment
+            for (int i = 20; i < 50; i++) {
+                outbox.append(sample(i));
+            }
+            assertEquals(14, outbox.getDroppedCount());
+            assertEquals(36, outbox.size());
+
+            // only the six peeked samples still in the outbox are committed
+            outbox.commit(20);
+            assertEquals(30, outbox.size());
+
+            batch.clear();
+            outbox.peek(batch, 100);
+            assertEquals(30, batch.size());
+            assertEquals(20, batch.get(0).getSlotTime());
+            assertEquals(49, batch.get(29).getSlotTime());
+        }
+    }
+
+    @Test
+    public void testCommitRemovesOnlyPeekedSamples(@TempDir Path dir) throws IOException {
+
+        try (MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, 10, false)) {
+            for (int i = 0; i < 5; i++) {
+                outbox.append(sample(i));
+            }
+            outbox.peek(new ArrayList<>(), 3);
+            outbox.append(sample(5));
+            outbox.commit(5);
+            assertEquals(3, outbox.size());
+
+            List<AmbientData> batch = new ArrayList<>();
+            outbox.peek(batch, 100);
+            assertEquals(3, batch.get(0).getSlotTime());
+        }
+    }
+
+    @Test
+    public void testRecordsAfterATornOneAreNotRevived(@TempDir Path dir) throws IOException {
+
+        try (MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, 10, false)) {
+            for (int i = 0; i < 5; i++) {
+                outbox.append(sample(i));
+            }
+        }
+
+        // the third record was torn before its length was written
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.filter(p -> p.getFileName().toString().startsWith("segment-")).findFirst().get();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4), 2 * RECORD_SIZE);
+        }
+
+        // a record of the same size written over it leaves the older ones in line
+        try (MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, 10, false)) {
+            assertEquals(2, outbox.size());
+            outbox.append(sample(100));
+        }
+
+        try (MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, 10, false)) {
+            assertEquals(3, outbox.size());
+
+            List<AmbientData> batch = new ArrayList<>();
+            outbox.peek(batch, 100);
+            assertEquals(100, batch.get(2).getSlotTime());
+        }
+    }
+
+    @Test
+    public void testCorruptRecordEndsAnOlderSegment(@TempDir Path dir) throws IOException {
+
+        try (MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, 10, false)) {
+            for (int i = 0; i < 20; i++) {
+                outbox.append(sample(i));
+            }
+        }
+
+        // damages the payload of the fourth record of the first segment
+        Path first;
+        try (Stream<Path> files = Files.list(dir)) {
+            first = files.filter(p -> p.getFileName().toString().startsWith("segment-")).sorted().findFirst().get();
+        }
+        try (FileChannel channel = FileChannel.open(first, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0x55 }), 3 * RECORD_SIZE + RECORD_SIZE - 1);
+        }
+
+        try (MappedOutbox outbox = new MappedOutbox(dir, SEGMENT_SIZE, 10, false)) {
+            assertEquals(9, outbox.size());
+
+            List<AmbientData> batch = new ArrayList<>();
+            outbox.peek(batch, 100);
+            assertEquals(9, batch.size());
+            assertEquals(2, batch.get(2).getSlotTime());
+            assertEquals(14, batch.get(3).getSlotTime());
+        }
+    }
+}
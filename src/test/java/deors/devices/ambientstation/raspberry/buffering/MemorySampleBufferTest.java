@@ -0,0 +1,60 @@
+package deors.devices.ambientstation.raspberry.buffering;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+
+public class MemorySampleBufferTest {
+
+    private static AmbientData sample(long sequence) {
+
+        AmbientData.Builder b = new AmbientData.Builder("id1");
+        b.setSequence(sequence);
+        return b.build();
+    }
+
+    @Test
+    public void testPeekDoesNotRemoveUntilCommitted() {
+
+        MemorySampleBuffer buffer = new MemorySampleBuffer(10);
+        for (int i = 0; i < 5; i++) {
+            buffer.append(sample(i));
+        }
+
+        List<AmbientData> batch = new ArrayList<>();
+        assertEquals(3, buffer.peek(batch, 3));
+        assertEquals(0, batch.get(0).getSequence());
+        assertEquals(5, buffer.size());
+
+        buffer.commit(3);
+        batch.clear();
+        assertEquals(2, buffer.peek(batch, 3));
+        assertEquals(3, batch.get(0).getSequence());
+    }
+
+    @Test
+    public void testOldestAreDroppedWhenFull() {
+
+        MemorySampleBuffer buffer = new MemorySampleBuffer(3);
+        List<AmbientData> batch = new ArrayList<>();
+        buffer.append(sample(0));
+        buffer.append(sample(1));
+        buffer.append(sample(2));
+        buffer.peek(batch, 2);
+
+        // samples 0 and 1 are dropped while their batch is being published
+        buffer.append(sample(3));
+        buffer.append(sample(4));
+        buffer.commit(2);
+
+        batch.clear();
+        assertEquals(3, buffer.peek(batch, 10));
+        assertEquals(2, batch.get(0).getSequence());
+        assertEquals(2, buffer.getDroppedCount());
+    }
+}
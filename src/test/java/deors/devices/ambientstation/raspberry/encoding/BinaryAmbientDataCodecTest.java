@@ -0,0 +1,135 @@
+package deors.devices.ambientstation.raspberry.encoding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.statistics.Channel;
+import deors.devices.ambientstation.raspberry.statistics.RollingStatistics;
+import deors.devices.ambientstation.raspberry.statistics.WindowStats;
+
+public class BinaryAmbientDataCodecTest {
+
+    private static AmbientData sample() {
+
+        AmbientData.Builder b = new AmbientData.Builder("id1");
+        b.setTemperatureValue(-3.2);
+        b.setHumidityValue(58.1);
+        b.setLightValue(50);
+        b.setSoundRms(53);
+        b.setSoundPeak(112);
+        b.setSoundLeq(34.49);
+        b.setAirQualityValue(749);
+        b.setMotionDetected(true);
+        b.setSlotTime(1600000000500L);
+        return b.build();
+    }
+
+    @Test
+    public void testRoundTripKeepsPublishedPrecision() throws IOException {
+
+        AmbientData d = sample();
+        ByteBuffer encoded = new BinaryAmbientDataEncoder().encode(d);
+        AmbientData decoded = new BinaryAmbientDataDecoder().decode(encoded);
+
+        assertEquals(d.toJson(), decoded.toJson());
+        assertEquals(0, encoded.remaining());
+    }
+
+    @Test
+    public void testStatisticsRoundTrip() throws IOException {
+
+        RollingStatistics statistics = new RollingStatistics(List.of(Duration.ofMinutes(1), Duration.ofDays(1)), 60);
+        AmbientData.Builder b = new AmbientData.Builder("id1");
+        b.setSlotTime(1600000000500L);
+        b.setTemperatureValue(-3.2);
+        b.setHumidityValue(58.1);
+        b.setLightValue(50);
+        b.setSoundRms(53);
+        b.setAirQualityValue(749);
+        b.updateStatistics(statistics);
+        b.setSlotTime(1600000001000L);
+        b.setTemperatureValue(-2.6);
+        b.updateStatistics(statistics);
+        AmbientData d = b.build();
+
+        AmbientData decoded = new BinaryAmbientDataDecoder().decode(new BinaryAmbientDataEncoder().encode(d));
+
+        assertEquals(d.toJson(), decoded.toJson());
+        assertEquals(Duration.ofDays(1), decoded.getStatistics().getWindow(1));
+        assertEquals(-3.2, decoded.getStatistics().getMin(1, Channel.TEMPERATURE));
+
+        // windows without samples survive the round trip
+        double[] nothing = new double[15];
+        Arrays.fill(nothing, Double.NaN);
+        b.setStatistics(WindowStats.of(new Duration[] { Duration.ofMinutes(1) }, nothing));
+        decoded = new BinaryAmbientDataDecoder().decode(new BinaryAmbientDataEncoder().encode(b.build()));
+        assertTrue(Double.isNaN(decoded.getStatistics().getMean(0, Channel.TEMPERATURE)));
+        assertTrue(Double.isNaN(decoded.getStatistics().getMax(0, Channel.AIR_QUALITY)));
+    }
+
+    @Test
+    public void testDecodesVersionOne() throws IOException {
+
+        AmbientData d = sample();
+        ByteBuffer encoded = new BinaryAmbientDataEncoder().encode(d);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        bytes[0] = 1;
+
+        assertEquals(d.toJson(), new BinaryAmbientDataDecoder().decode(ByteBuffer.wrap(bytes)).toJson());
+    }
+
+    @Test
+    public void testSmallerThanJson() {
+
+        AmbientData d = sample();
+        int binary = new BinaryAmbientDataEncoder().encode(d).remaining();
+        int json = new JsonAmbientDataEncoder().encode(d).remaining();
+
+        assertTrue(binary * 4 < json, binary + " vs " + json);
+    }
+
+    @Test
+    public void testUnknownVersionAndTruncatedPayloads() {
+
+        ByteBuffer encoded = new BinaryAmbientDataEncoder().encode(sample());
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+
+        byte[] future = bytes.clone();
+        future[0] = 99;
+        assertThrows(IOException.class, () -> new BinaryAmbientDataDecoder().decode(ByteBuffer.wrap(future)));
+        assertThrows(IOException.class, () -> new BinaryAmbientDataDecoder().decode(ByteBuffer.wrap(bytes, 0, bytes.length - 1)));
+    }
+
+    @Test
+    public void testFormatSelection() {
+
+        assertEquals(PayloadFormat.JSON, PayloadFormat.fromProperty(null));
+        assertEquals(PayloadFormat.BINARY, PayloadFormat.fromProperty(" binary "));
+    }
+
+    @Test
+    public void testBatchRoundTrip() throws IOException {
+
+        AmbientData d = sample();
+        List<AmbientData> decoded = new BinaryAmbientDataDecoder().decodeBatch(
+            new BinaryAmbientDataEncoder().encodeBatch(List.of(d, d, d)));
+
+        assertEquals(3, decoded.size());
+        assertEquals(d.toJson(), decoded.get(2).toJson());
+
+        // single messages decode as batches of one
+        assertEquals(1, new BinaryAmbientDataDecoder().decodeBatch(new BinaryAmbientDataEncoder().encode(d)).size());
+    }
+}
@@ -0,0 +1,119 @@
+package deors.devices.ambientstation.raspberry.encoding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.statistics.RollingStatistics;
+
+public class JsonAmbientDataEncoderTest {
+
+    private static String decode(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    private static AmbientData sample(String id, double temp, double humi, double light, double sound,
+            double leq, double airq, boolean motion, long time) {
+
+        AmbientData.Builder b = new AmbientData.Builder(id);
+        b.setTemperatureValue(temp);
+        b.setHumidityValue(humi);
+        b.setLightValue(light);
+        b.setSoundRms(sound);
+        b.setSoundPeak(sound * 2);
+        b.setSoundLeq(leq);
+        b.setAirQualityValue(airq);
+        b.setMotionDetected(motion);
+        b.setSlotTime(time);
+        return b.build();
+    }
+
+    @Test
+    public void testSameOutputAsToJson() {
+
+        JsonAmbientDataEncoder encoder = new JsonAmbientDataEncoder();
+        AmbientData d = sample("id1", 20.1, 58.1, 50, 53, 34.49, 49, true, 1600000000500L);
+
+        assertEquals(d.toJson(), decode(encoder.encode(d)));
+    }
+
+    @Test
+    public void testRoundingEdgeCases() {
+
+        JsonAmbientDataEncoder encoder = new JsonAmbientDataEncoder();
+        double[] values = { 0, -0.0, 0.05, 0.15, 0.25, 0.5, 1.5, 2.5, -0.04, -0.05, -2.5, 9.95, 99.95,
+            0.45, 1.05, 20.149999618530273, 1023, 999.96, 1e14, 1e16, Double.NaN, Double.POSITIVE_INFINITY };
+
+        for (double v : values) {
+            AmbientData d = sample("edge", v, v, v, v, v, v, false, 0);
+            assertEquals(d.toJson(), decode(encoder.encode(d)), "value " + v);
+        }
+    }
+
+    @Test
+    public void testRandomValues() {
+
+        JsonAmbientDataEncoder encoder = new JsonAmbientDataEncoder();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20000; i++) {
+            AmbientData d = sample("station-" + (i % 3),
+                (float) (random.nextDouble() * 80 - 20),
+                Math.round(random.nextDouble() * 10000) / 100.0,
+                random.nextInt(1024),
+                random.nextDouble() * 1024,
+                random.nextDouble() * 60,
+                random.nextInt(1024) + random.nextInt(20) / 10.0,
+                random.nextBoolean(),
+                random.nextLong() >>> 1);
+            assertEquals(d.toJson(), decode(encoder.encode(d)));
+        }
+    }
+
+    @Test
+    public void testBatchIsJsonArray() {
+
+        JsonAmbientDataEncoder encoder = new JsonAmbientDataEncoder();
+        AmbientData a = sample("id1", 20.1, 58.1, 50, 53, 34.49, 49, true, 1000);
+        AmbientData b = sample("id1", 20.2, 58.0, 51, 52, 34.4, 48, false, 1500);
+
+        assertEquals("[" + a.toJson() + "," + b.toJson() + "]", decode(encoder.encodeBatch(List.of(a, b))));
+    }
+
+    @Test
+    public void testStatistics() {
+
+        JsonAmbientDataEncoder encoder = new JsonAmbientDataEncoder();
+        RollingStatistics statistics = new RollingStatistics(List.of(Duration.ofMinutes(1), Duration.ofHours(24)), 120);
+        Random random = new Random(42);
+
+        AmbientData.Builder b = new AmbientData.Builder("id1");
+        for (int i = 0; i < 1000; i++) {
+            b.setSlotTime(1600000000000L + i * 500L);
+            b.setTemperatureValue(random.nextDouble() * 40);
+            b.setHumidityValue(random.nextDouble() * 100);
+            b.setLightValue(random.nextInt(1024));
+            b.setSoundRms(random.nextDouble() * 1024);
+            b.setAirQualityValue(random.nextInt(1024));
+            b.updateStatistics(statistics);
+            AmbientData d = b.build();
+            assertEquals(d.toJson(), decode(encoder.encode(d)));
+        }
+
+        // channels without samples are null
+        statistics.clear();
+        b.setTemperatureValue(Double.NaN);
+        b.updateStatistics(statistics);
+        AmbientData d = b.build();
+        assertTrue(d.toJson().contains("\"temp\":[null,null,null]"), d.toJson());
+        assertEquals(d.toJson(), decode(encoder.encode(d)));
+    }
+}
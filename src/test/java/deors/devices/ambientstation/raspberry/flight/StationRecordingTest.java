@@ -0,0 +1,125 @@
+package deors.devices.ambientstation.raspberry.flight;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class StationRecordingTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testErrorsOverThresholdDumpTheRecording() throws IOException, ParseException {
+
+        try (StationRecording recording = new StationRecording(dir, "default", Duration.ofMinutes(5), 1048576,
+                Duration.ZERO, 3, Duration.ofMinutes(1), Duration.ofMinutes(10), Runnable::run)) {
+            recording.start();
+
+            SamplingCycleEvent cycle = new SamplingCycleEvent();
+            cycle.begin();
+            DeviceReadEvent read = new DeviceReadEvent();
+            read.begin();
+            read.finish("light", 1, true);
+            read = new DeviceReadEvent();
+            read.begin();
+            read.finish("airQuality", 0, false);
+            LcdWriteEvent write = new LcdWriteEvent();
+            write.begin();
+            write.finish("text", "T: 21.5", true);
+            PublishEvent publish = new PublishEvent();
+            publish.begin();
+            publish.finish(2, 120, 1, true);
+            cycle.finish(7, 3500, 2_000_000, true, 2);
+
+            recording.error();
+            recording.error();
+            assertEquals(0, recording.getDumpCount());
+            recording.error();
+            assertEquals(1, recording.getDumpCount());
+
+            // further errors within the dump interval do not dump again
+            recording.error();
+            recording.error();
+            recording.error();
+            assertEquals(6, recording.getErrorCount());
+            assertEquals(1, recording.getDumpCount());
+        }
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.collect(Collectors.toList());
+        }
+        assertEquals(1, files.size());
+        assertTrue(files.get(0).getFileName().toString().endsWith("-errors.jfr"));
+
+        List<RecordedEvent> events = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(files.get(0))) {
+            if (event.getEventType().getName().startsWith("deors.ambientstation.")) {
+                events.add(event);
+            }
+        }
+
+        assertEquals(5, events.size());
+        RecordedEvent failedRead = find(events, "deors.ambientstation.DeviceRead", "airQuality");
+        assertEquals(0, failedRead.getInt("port"));
+        assertEquals(false, failedRead.getBoolean("success"));
+        RecordedEvent cycle = find(events, "deors.ambientstation.SamplingCycle", null);
+        assertEquals(7, cycle.getLong("slot"));
+        assertEquals(2, cycle.getInt("bufferSize"));
+        RecordedEvent publish = find(events, "deors.ambientstation.Publish", null);
+        assertEquals(120, publish.getInt("payloadSize"));
+    }
+
+    @Test
+    public void testErrorsSpreadOverTheWindowDoNotDump() throws IOException, ParseException {
+
+        try (StationRecording recording = new StationRecording(dir, "default", Duration.ofMinutes(5), 1048576,
+                Duration.ZERO, 2, Duration.ofMillis(1), Duration.ofMinutes(10), Runnable::run)) {
+            recording.start();
+
+            for (int i = 0; i < 3; i++) {
+                recording.error();
+                sleep(20);
+            }
+
+            assertEquals(3, recording.getErrorCount());
+            assertEquals(0, recording.getDumpCount());
+        }
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String type, String device) {
+
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(type)
+                    && (device == null || device.equals(event.getString("device")))) {
+                return event;
+            }
+        }
+        throw new AssertionError(String.format("no %s event was recorded", type));
+    }
+
+    private static void sleep(long millis) {
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package deors.devices.ambientstation.raspberry.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.statistics.Channel;
+
+public class StationHistoryTest {
+
+    @TempDir
+    Path directory;
+
+    private static AmbientData sample(long time, double temperature) {
+
+        AmbientData.Builder b = new AmbientData.Builder("station1");
+        b.setSlotTime(time);
+        b.setTemperatureValue(temperature);
+        b.setHumidityValue(50);
+        return b.build();
+    }
+
+    @Test
+    public void testSamplesGoingBackInTimeAreLeftOut() throws IOException {
+
+        try (StationHistory history = new StationHistory(directory, 256, 256 * 100, null, false)) {
+            assertTrue(history.record(sample(10_000, 21)));
+            assertTrue(history.record(sample(20_000, 22)));
+
+            // the clock was set back
+            assertFalse(history.record(sample(15_000, 23)));
+            assertFalse(history.record(sample(16_000, 24)));
+
+            // and caught up again
+            assertTrue(history.record(sample(20_000, 25)));
+            assertTrue(history.record(sample(30_000, 26)));
+
+            List<Double> temperatures = new ArrayList<>();
+            history.query(Channel.TEMPERATURE, 0, Long.MAX_VALUE, (time, value) -> temperatures.add(value));
+            assertEquals(List.of(21.0, 22.0, 25.0, 26.0), temperatures);
+
+            List<Long> times = new ArrayList<>();
+            history.query(Channel.HUMIDITY, 0, Long.MAX_VALUE, (time, value) -> times.add(time));
+            assertEquals(List.of(10_000L, 20_000L, 20_000L, 30_000L), times);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package deors.devices.ambientstation.raspberry.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TimeSeriesStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private static List<double[]> all(TimeSeriesStore store, long from, long to) throws IOException {
+
+        List<double[]> points = new ArrayList<>();
+        store.query(from, to, (time, value) -> points.add(new double[] { time, value }));
+        return points;
+    }
+
+    @Test
+    public void testRoundTripOfIrregularPoints() throws IOException {
+
+        Random random = new Random(3);
+        List<long[]> times = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+
+        try (TimeSeriesStore store = new TimeSeriesStore(directory.resolve("temp.tsdb"), 512, 1000, null, false)) {
+            long time = 1_600_000_000_000L;
+            double value = 20;
+            for (int i = 0; i < 20000; i++) {
+                // steady period, jitter, repeated times and gaps of days now and then
+                int kind = random.nextInt(100);
+                time += kind == 0 ? 3L * 24 * 3600 * 1000 : kind < 5 ? random.nextInt(5000) : kind < 7 ? 0 : 500;
+                double next = kind < 3 ? Double.NaN : kind < 6 ? -value * 1e6 : Math.round((value + random.nextGaussian()) * 10) / 10.0;
+                if (kind >= 6) {
+                    value = next;
+                }
+                store.append(time, next);
+                times.add(new long[] { time });
+                values.add(next);
+            }
+
+            List<double[]> points = all(store, Long.MIN_VALUE, Long.MAX_VALUE);
+            assertEquals(values.size(), points.size());
+            for (int i = 0; i < points.size(); i++) {
+                assertEquals(times.get(i)[0], (long) points.get(i)[0], "point " + i);
+                assertEquals(values.get(i), points.get(i)[1], "point " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testSteadyReadingsCompressWell() throws IOException {
+
+        try (TimeSeriesStore store = new TimeSeriesStore(directory.resolve("humi.tsdb"), 4096, 1000, null, false)) {
+            // one day at 500 ms of a reading that changes every minute or so
+            long time = 0;
+            double value = 55.0;
+            Random random = new Random(5);
+            for (int i = 0; i < 172800; i++) {
+                if (random.nextInt(120) == 0) {
+                    value = Math.round((value + (random.nextBoolean() ? 0.1 : -0.1)) * 10) / 10.0;
+                }
+                store.append(time, value);
+                time += 500;
+            }
+            store.flush();
+
+            // about three bytes per minute instead of 16 bytes per point
+            assertTrue(store.getFileSize() < 64 * 1024, "file size " + store.getFileSize());
+            assertEquals(172800, all(store, 0, Long.MAX_VALUE).size());
+        }
+    }
+
+    @Test
+    public void testQueriesOnlyDecodeOverlappingBlocks() throws IOException {
+
+        try (TimeSeriesStore store = new TimeSeriesStore(directory.resolve("light.tsdb"), 256, 1000, null, false)) {
+            for (int i = 0; i < 20000; i++) {
+                store.append(i * 500L, i % 97);
+            }
+            int blocks = store.getBlockCount();
+            assertTrue(blocks > 100, "blocks " + blocks);
+
+            // one minute in the middle lives in a few of them
+            List<double[]> points = all(store, 5_000_000, 5_059_999);
+            assertEquals(120, points.size());
+            assertEquals(5_000_000, (long) points.get(0)[0]);
+            assertEquals(10000 % 97, points.get(0)[1]);
+            assertTrue(store.getDecodedBlocks() <= 3, "decoded " + store.getDecodedBlocks());
+        }
+    }
+
+    @Test
+    public void testRetentionByBytes() throws IOException {
+
+        Path path = directory.resolve("sound.tsdb");
+        try (TimeSeriesStore store = new TimeSeriesStore(path, 256, 4, null, false)) {
+            for (int i = 0; i < 50000; i++) {
+                store.append(i * 500L, i % 1000);
+            }
+            store.flush();
+
+            assertEquals(4 * 256, Files.size(path));
+            List<double[]> points = all(store, 0, Long.MAX_VALUE);
+            // the newest points survive, the oldest are overwritten
+            assertEquals(49999 * 500L, (long) points.get(points.size() - 1)[0]);
+            assertTrue(points.get(0)[0] > 0);
+        }
+    }
+
+    @Test
+    public void testRetentionByAge() throws IOException {
+
+        Path path = directory.resolve("airq.tsdb");
+        try (TimeSeriesStore store = new TimeSeriesStore(path, 256, 1000, Duration.ofMinutes(10), false)) {
+            for (int i = 0; i < 20000; i++) {
+                store.append(i * 500L, i % 1000);
+            }
+            store.flush();
+
+            List<double[]> points = all(store, 0, Long.MAX_VALUE);
+            assertEquals(19999 * 500L - 600_000, (long) points.get(0)[0]);
+            assertEquals(1201, points.size());
+
+            // expired slots are reused, so the file stops growing
+            assertTrue(store.getBlockCount() < 30, "blocks " + store.getBlockCount());
+            assertTrue(Files.size(path) < 30 * 256, "file size " + Files.size(path));
+        }
+    }
+
+    @Test
+    public void testReopenKeepsFlushedPoints() throws IOException {
+
+        Path path = directory.resolve("temp.tsdb");
+        try (TimeSeriesStore store = new TimeSeriesStore(path, 256, 100, null, false)) {
+            for (int i = 0; i < 1000; i++) {
+                store.append(i * 500L, i / 10.0);
+            }
+        }
+
+        try (TimeSeriesStore store = new TimeSeriesStore(path, 256, 100, null, false)) {
+            assertEquals(1000, all(store, 0, Long.MAX_VALUE).size());
+
+            // new points go to a new block after the recovered ones
+            store.append(1000 * 500L, 7);
+            List<double[]> points = all(store, 0, Long.MAX_VALUE);
+            assertEquals(1001, points.size());
+            assertEquals(7, points.get(1000)[1]);
+            assertEquals(99.9, points.get(999)[1]);
+
+            assertThrows(IllegalArgumentException.class, () -> store.append(0, 1));
+        }
+    }
+}
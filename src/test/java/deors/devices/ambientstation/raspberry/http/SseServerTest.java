@@ -0,0 +1,158 @@
+package deors.devices.ambientstation.raspberry.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+
+public class SseServerTest {
+
+    private SseServer server;
+
+    @AfterEach
+    public void stop() throws IOException {
+        server.close();
+    }
+
+    private void start(SlowClientPolicy policy) throws IOException {
+
+        server = new SseServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4, 8, policy);
+        server.start();
+    }
+
+    private Socket connect(String path) throws IOException {
+
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(4096);
+        socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        socket.setSoTimeout(5000);
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n\r\n")
+            .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return socket;
+    }
+
+    private void awaitClients(int count) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getClientCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, server.getClientCount());
+    }
+
+    private static AmbientData sample(long sequence) {
+
+        AmbientData.Builder b = new AmbientData.Builder("id1");
+        b.setSequence(sequence);
+        b.setSlotTime(1600000000000L + sequence * 500);
+        b.setTemperatureValue(20.1);
+        return b.build();
+    }
+
+    private static String readFrame(BufferedReader reader) throws IOException {
+
+        String line = reader.readLine();
+        assertEquals("", reader.readLine());
+        return line;
+    }
+
+    @Test
+    public void testEverySampleReachesEveryClient() throws IOException, InterruptedException {
+
+        start(SlowClientPolicy.SKIP);
+
+        try (Socket first = connect("/stream"); Socket second = connect("/stream?station=1")) {
+            awaitClients(2);
+
+            for (int i = 0; i < 3; i++) {
+                server.publish(sample(i));
+            }
+
+            for (Socket socket : new Socket[] { first, second }) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                assertEquals("HTTP/1.1 200 OK", reader.readLine());
+                while (!reader.readLine().isEmpty()) {
+                    // headers
+                }
+                for (int i = 0; i < 3; i++) {
+                    assertEquals("data: " + sample(i).toJson(), readFrame(reader));
+                }
+            }
+        }
+
+        awaitClients(0);
+    }
+
+    @Test
+    public void testUnknownPathsAreRejected() throws IOException {
+
+        start(SlowClientPolicy.SKIP);
+
+        try (Socket socket = connect("/current")) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            assertEquals("HTTP/1.1 404 Not Found", reader.readLine());
+        }
+    }
+
+    @Test
+    public void testSlowClientIsDisconnected() throws IOException, InterruptedException {
+
+        start(SlowClientPolicy.DISCONNECT);
+
+        // the slow client never reads, it is only closed at the end
+        Socket slow = connect("/stream");
+        try (slow) {
+            awaitClients(1);
+
+            // publishing must go on regardless
+            long deadline = System.currentTimeMillis() + 10000;
+            long sequence = 0;
+            while (server.getDisconnectedCount() == 0 && System.currentTimeMillis() < deadline) {
+                server.publish(sample(sequence++));
+                if (sequence % 100 == 0) {
+                    Thread.sleep(1);
+                }
+            }
+
+            assertEquals(1, server.getDisconnectedCount());
+            awaitClients(0);
+        }
+    }
+
+    @Test
+    public void testSlowClientSkipsFrames() throws IOException, InterruptedException {
+
+        start(SlowClientPolicy.SKIP);
+
+        Socket slow = connect("/stream");
+        try (slow) {
+            awaitClients(1);
+
+            long deadline = System.currentTimeMillis() + 10000;
+            long sequence = 0;
+            while (server.getSkippedCount() == 0 && System.currentTimeMillis() < deadline) {
+                server.publish(sample(sequence++));
+                if (sequence % 100 == 0) {
+                    Thread.sleep(1);
+                }
+            }
+
+            assertTrue(server.getSkippedCount() > 0);
+            assertEquals(1, server.getClientCount());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package deors.devices.ambientstation.raspberry.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.metrics.MetricsRegistry;
+import deors.devices.ambientstation.raspberry.metrics.OperationMetrics;
+import deors.devices.ambientstation.raspberry.publishers.ConnectionState;
+import deors.devices.ambientstation.raspberry.statistics.RollingStatistics;
+
+public class StationHttpServerTest {
+
+    private StationHttpServer server;
+
+    private final OperationMetrics lightReads = new OperationMetrics();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    public void start() throws IOException {
+
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.operation("read_light", lightReads);
+        server = new StationHttpServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2, Duration.ofSeconds(10),
+            metrics);
+        server.start();
+    }
+
+    @AfterEach
+    public void stop() {
+        server.close();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(uri(path)).GET().build());
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getPort() + path);
+    }
+
+    private static AmbientData sample(long slotTime) {
+
+        AmbientData.Builder b = new AmbientData.Builder("id1");
+        b.setSlotTime(slotTime);
+        b.setTemperatureValue(20.1);
+        b.setHumidityValue(58.1);
+        b.setLightValue(50);
+        b.setSoundRms(53);
+        b.setAirQualityValue(49);
+        b.updateStatistics(new RollingStatistics(List.of(Duration.ofMinutes(1)), 60));
+        return b.build();
+    }
+
+    @Test
+    public void testServesTheLatestCycle() throws IOException, InterruptedException {
+
+        assertEquals(503, get("/current").statusCode());
+        assertEquals(503, get("/health").statusCode());
+
+        AmbientData data = sample(System.currentTimeMillis());
+        server.update(data, ConnectionState.CONNECTED, 3);
+
+        HttpResponse<String> current = get("/current");
+        assertEquals(200, current.statusCode());
+        assertEquals(data.toJson(), current.body());
+        assertEquals("application/json", current.headers().firstValue("Content-Type").orElse(null));
+
+        HttpResponse<String> ranges = get("/ranges");
+        assertEquals(200, ranges.statusCode());
+        assertEquals("{\"id\":\"id1\",\"time\":" + data.getSlotTime() + ",\"stats\":{\"1m\":{\"temp\":[20.1,20.1,20.1],"
+            + "\"humi\":[58.1,58.1,58.1],\"light\":[50,50,50],\"sound\":[53,53,53],\"airq\":[49,49,49]}}}", ranges.body());
+
+        HttpResponse<String> health = get("/health");
+        assertEquals(200, health.statusCode());
+        assertTrue(health.body().contains("\"status\":\"up\""), health.body());
+        assertTrue(health.body().contains("\"publisher\":\"connected\",\"buffered\":3"), health.body());
+    }
+
+    @Test
+    public void testHealthReportsAStalledCycle() throws IOException, InterruptedException {
+
+        server.update(sample(System.currentTimeMillis() - 60000), ConnectionState.BACKING_OFF, 0);
+
+        HttpResponse<String> health = get("/health");
+        assertEquals(503, health.statusCode());
+        assertTrue(health.body().contains("\"status\":\"stale\""), health.body());
+
+        // the latest sample is still served
+        assertEquals(200, get("/current").statusCode());
+    }
+
+    @Test
+    public void testOnlyReadsOfKnownPaths() throws IOException, InterruptedException {
+
+        server.update(sample(System.currentTimeMillis()), ConnectionState.CONNECTED, 0);
+
+        assertEquals(404, get("/current/x").statusCode());
+        assertEquals(404, get("/").statusCode());
+        assertEquals(405, send(HttpRequest.newBuilder(uri("/current"))
+            .POST(HttpRequest.BodyPublishers.ofString("{}")).build()).statusCode());
+        assertEquals(200, send(HttpRequest.newBuilder(uri("/health"))
+            .method("HEAD", HttpRequest.BodyPublishers.noBody()).build()).statusCode());
+        assertTrue(server.getRequestCount() >= 3);
+    }
+
+    @Test
+    public void testServesMetricsAsTheyAreScraped() throws IOException, InterruptedException {
+
+        // metrics do not wait for the first cycle
+        lightReads.success(System.nanoTime());
+        HttpResponse<String> metrics = get("/metrics");
+        assertEquals(200, metrics.statusCode());
+        assertEquals(MetricsRegistry.CONTENT_TYPE, metrics.headers().firstValue("Content-Type").orElse(null));
+        assertTrue(metrics.body().contains("ambientstation_operation_duration_seconds_count{operation=\"read_light\"} 1\n"),
+            metrics.body());
+
+        lightReads.failure(System.nanoTime());
+        assertTrue(get("/metrics").body().contains("ambientstation_operation_failures_total{operation=\"read_light\"} 1\n"));
+    }
+}
@@ -0,0 +1,117 @@
+package deors.devices.ambientstation.raspberry.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.jupiter.api.Test;
+
+public class AsyncHandlerTest {
+
+    // keeps what is written, and can hold the writer until released
+    private static class CapturingHandler extends Handler {
+
+        private final List<LogRecord> records = new ArrayList<>();
+
+        private final CountDownLatch release;
+
+        private boolean closed = false;
+
+        CapturingHandler(CountDownLatch release) {
+            super();
+            this.release = release;
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                records.add(record);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+        }
+
+        synchronized List<String> getMessages() {
+            List<String> messages = new ArrayList<>();
+            for (LogRecord record : records) {
+                messages.add(record.getMessage());
+            }
+            return messages;
+        }
+    }
+
+    @Test
+    public void testRecordsAreWrittenInOrder() {
+
+        CapturingHandler target = new CapturingHandler(new CountDownLatch(0));
+        AsyncHandler handler = new AsyncHandler(target, 100);
+        for (int i = 0; i < 50; i++) {
+            handler.publish(new LogRecord(Level.INFO, "record " + i));
+        }
+        handler.close();
+
+        List<String> messages = target.getMessages();
+        assertEquals(50, messages.size());
+        assertEquals("record 0", messages.get(0));
+        assertEquals("record 49", messages.get(49));
+        assertEquals(0, handler.getDroppedCount());
+        assertTrue(target.closed);
+    }
+
+    @Test
+    public void testFullQueueDropsAndReportsRecords() {
+
+        CountDownLatch release = new CountDownLatch(1);
+        CapturingHandler target = new CapturingHandler(release);
+        AsyncHandler handler = new AsyncHandler(target, 10);
+        // the worker holds one record, the queue ten more
+        for (int i = 0; i < 100; i++) {
+            handler.publish(new LogRecord(Level.INFO, "record " + i));
+        }
+        assertTrue(handler.getDroppedCount() >= 89);
+        release.countDown();
+        handler.close();
+
+        List<String> messages = target.getMessages();
+        long dropped = handler.getDroppedCount();
+        assertEquals(100 - dropped + 1, messages.size());
+        assertEquals("record 0", messages.get(0));
+        assertEquals(String.format("%d log records were dropped, the log queue was full", dropped),
+            messages.get(messages.size() - 1));
+    }
+
+    @Test
+    public void testRecordsBelowTheLevelAreIgnored() {
+
+        CapturingHandler target = new CapturingHandler(new CountDownLatch(0));
+        AsyncHandler handler = new AsyncHandler(target, 10);
+        handler.setLevel(Level.INFO);
+        handler.publish(new LogRecord(Level.FINE, "fine"));
+        handler.publish(new LogRecord(Level.WARNING, "warning"));
+        handler.close();
+
+        // written at once after close
+        handler.publish(new LogRecord(Level.INFO, "late"));
+
+        assertEquals(List.of("warning", "late"), target.getMessages());
+    }
+}
@@ -0,0 +1,66 @@
+package deors.devices.ambientstation.raspberry.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void testPrometheusTextFormat() {
+
+        MetricsRegistry registry = new MetricsRegistry();
+
+        OperationMetrics reads = new OperationMetrics(new long[] {
+            TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(10) });
+        reads.getLatency().record(TimeUnit.MICROSECONDS.toNanos(500));
+        reads.getLatency().record(TimeUnit.MILLISECONDS.toNanos(5));
+        reads.getLatency().record(TimeUnit.MILLISECONDS.toNanos(20));
+        registry.operation("read_light", reads);
+
+        AtomicLong buffered = new AtomicLong(7);
+        registry.gauge("buffered_samples", "Samples waiting to be published.", null, buffered::get);
+        registry.counter("dropped_samples", "Samples dropped.", MetricsRegistry.label("buffer", "say \"hi\""), () -> 2);
+
+        assertEquals(""
+            + "# HELP ambientstation_operation_duration_seconds Duration of device, publishing and connection operations.\n"
+            + "# TYPE ambientstation_operation_duration_seconds histogram\n"
+            + "ambientstation_operation_duration_seconds_bucket{operation=\"read_light\",le=\"0.001\"} 1\n"
+            + "ambientstation_operation_duration_seconds_bucket{operation=\"read_light\",le=\"0.01\"} 2\n"
+            + "ambientstation_operation_duration_seconds_bucket{operation=\"read_light\",le=\"+Inf\"} 3\n"
+            + "ambientstation_operation_duration_seconds_sum{operation=\"read_light\"} 0.0255\n"
+            + "ambientstation_operation_duration_seconds_count{operation=\"read_light\"} 3\n"
+            + "# HELP ambientstation_operation_failures_total Operations that failed.\n"
+            + "# TYPE ambientstation_operation_failures_total counter\n"
+            + "ambientstation_operation_failures_total{operation=\"read_light\"} 0\n"
+            + "# HELP ambientstation_buffered_samples Samples waiting to be published.\n"
+            + "# TYPE ambientstation_buffered_samples gauge\n"
+            + "ambientstation_buffered_samples 7\n"
+            + "# HELP ambientstation_dropped_samples_total Samples dropped.\n"
+            + "# TYPE ambientstation_dropped_samples_total counter\n"
+            + "ambientstation_dropped_samples_total{buffer=\"say \\\"hi\\\"\"} 2\n",
+            registry.toPrometheus());
+
+        // values are read when scraped
+        buffered.set(3);
+        reads.failure(System.nanoTime());
+        String text = registry.toPrometheus();
+        assertTrue(text.contains("ambientstation_buffered_samples 3\n"));
+        assertTrue(text.contains("ambientstation_operation_failures_total{operation=\"read_light\"} 1\n"));
+    }
+
+    @Test
+    public void testOneTypePerName() {
+
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("samples", "Samples.", null, () -> 1);
+        registry.counter("samples", "Samples.", MetricsRegistry.label("channel", "sound"), () -> 1);
+        assertThrows(IllegalArgumentException.class,
+            () -> registry.gauge("samples_total", "Samples.", null, () -> 1));
+    }
+}
@@ -0,0 +1,158 @@
+package deors.devices.ambientstation.raspberry.publishers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import deors.devices.ambientstation.raspberry.scheduling.Backoff;
+import deors.devices.ambientstation.raspberry.scheduling.StationScheduler;
+
+public class ConnectionManagerTest {
+
+    @Test
+    public void testReconnectsInTheBackgroundAfterFailures() throws Exception {
+
+        StationScheduler scheduler = new StationScheduler(1);
+        AtomicInteger created = new AtomicInteger();
+
+        // the first three connection attempts fail
+        ConnectionManager manager = new ConnectionManager(scheduler,
+            () -> new TestPublisher(created.incrementAndGet() > 3),
+            new Properties(), new Backoff(Duration.ofMillis(50), Duration.ofMillis(200), 0), 2);
+        manager.start();
+
+        waitFor(manager, ConnectionState.CONNECTED);
+        assertEquals(4, created.get());
+        assertEquals(0, manager.getConsecutiveFailures());
+        Publisher publisher = manager.getPublisher();
+        assertNotNull(publisher);
+
+        // a failed publication closes the publisher in the background and connects a new one
+        manager.publishFailed(publisher, new IOException("broken pipe"));
+        assertNull(manager.getPublisher());
+        waitFor(manager, ConnectionState.CONNECTED);
+        assertEquals(true, ((TestPublisher) publisher).closed);
+        assertEquals(5, created.get());
+
+        // failures reported twice for the same publisher are handled once
+        Publisher current = manager.getPublisher();
+        manager.publishFailed(publisher, new IOException("late report"));
+        assertSame(current, manager.getPublisher());
+
+        manager.close();
+        assertEquals(ConnectionState.DISCONNECTED, manager.getState());
+        scheduler.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testReportsFailedAfterTooManyFailures() throws Exception {
+
+        StationScheduler scheduler = new StationScheduler(1);
+        ConnectionManager manager = new ConnectionManager(scheduler,
+            () -> new TestPublisher(false),
+            new Properties(), new Backoff(Duration.ofMillis(5), Duration.ofMillis(5), 0), 3);
+        manager.start();
+
+        waitFor(manager, ConnectionState.FAILED);
+        assertNull(manager.getPublisher());
+
+        manager.close();
+        scheduler.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testPublisherThatCannotBeCreatedIsNotRetried() throws Exception {
+
+        StationScheduler scheduler = new StationScheduler(1);
+        AtomicInteger created = new AtomicInteger();
+        ConnectionManager manager = new ConnectionManager(scheduler,
+            () -> {
+                created.incrementAndGet();
+                return null;
+            },
+            new Properties(), new Backoff(Duration.ofMillis(5), Duration.ofMillis(5), 0), 3);
+        manager.start();
+
+        waitFor(manager, ConnectionState.FAILED);
+        Thread.sleep(50);
+        assertEquals(1, created.get());
+
+        manager.close();
+        scheduler.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    private static void waitFor(ConnectionManager manager, ConnectionState state) throws InterruptedException {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (manager.getState() != state && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(state, manager.getState());
+    }
+
+    @Test
+    public void testReportsReconnectingWhileTheClientIsDisconnected() throws Exception {
+
+        StationScheduler scheduler = new StationScheduler(1);
+        TestPublisher publisher = new TestPublisher(true);
+        ConnectionManager manager = new ConnectionManager(scheduler, () -> publisher,
+            new Properties(), new Backoff(Duration.ofMillis(50), Duration.ofMillis(200), 0), 2);
+        manager.start();
+        waitFor(manager, ConnectionState.CONNECTED);
+
+        // the client lost the connection and restores it by itself
+        publisher.connected = false;
+        assertEquals(ConnectionState.RECONNECTING, manager.getState());
+        assertNull(manager.getPublisher());
+
+        publisher.connected = true;
+        assertEquals(ConnectionState.CONNECTED, manager.getState());
+        assertSame(publisher, manager.getPublisher());
+
+        manager.close();
+        scheduler.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    private static class TestPublisher implements Publisher {
+
+        private final boolean reachable;
+
+        private volatile boolean closed = false;
+
+        private volatile boolean connected = true;
+
+        private TestPublisher(boolean reachable) {
+            this.reachable = reachable;
+        }
+
+        @Override
+        public void connect(Properties properties) throws IOException {
+            if (!reachable) {
+                throw new IOException("connection refused");
+            }
+        }
+
+        @Override
+        public void publish(String message) {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package deors.devices.ambientstation.raspberry.publishers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.buffering.MemorySampleBuffer;
+import deors.devices.ambientstation.raspberry.buffering.SampleBuffer;
+import deors.devices.ambientstation.raspberry.encoding.PayloadFormat;
+import deors.devices.ambientstation.raspberry.metrics.OperationMetrics;
+import deors.devices.ambientstation.raspberry.scheduling.Backoff;
+import deors.devices.ambientstation.raspberry.scheduling.StationScheduler;
+
+public class DeliveryPipelineTest {
+
+    private final StationScheduler scheduler = new StationScheduler(1);
+
+    private final RecordingPublisher publisher = new RecordingPublisher();
+
+    private final ConnectionManager connectionManager = new ConnectionManager(scheduler, () -> publisher,
+        new Properties(), new Backoff(Duration.ofMillis(10), Duration.ofMillis(10), 0), 10);
+
+    private final AtomicInteger delivered = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private final DeliveryPipeline.Listener listener = new DeliveryPipeline.Listener() {
+        @Override
+        public void delivered(int samples) {
+            delivered.addAndGet(samples);
+        }
+
+        @Override
+        public void failed() {
+            failed.incrementAndGet();
+        }
+    };
+
+    @BeforeEach
+    public void connect() throws InterruptedException {
+
+        connectionManager.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (connectionManager.getPublisher() == null && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @AfterEach
+    public void close() throws IOException {
+
+        connectionManager.close();
+        scheduler.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    private static AmbientData sample(long time) {
+
+        AmbientData.Builder b = new AmbientData.Builder("station1");
+        b.setSlotTime(time);
+        b.setTemperatureValue(21.5);
+        return b.build();
+    }
+
+    private DeliveryPipeline pipeline(SampleBuffer buffer, int batchSize) {
+        return pipeline(buffer, batchSize, Duration.ofMinutes(1));
+    }
+
+    private DeliveryPipeline pipeline(SampleBuffer buffer, int batchSize, Duration deliveryTimeout) {
+
+        return new DeliveryPipeline(buffer, connectionManager, PayloadFormat.JSON.newEncoder(), batchSize,
+            Duration.ofMinutes(1), deliveryTimeout, 1, new OperationMetrics(), listener);
+    }
+
+    private static SampleBuffer durableBuffer() {
+
+        return new MemorySampleBuffer(100) {
+            @Override
+            public boolean isDurable() {
+                return true;
+            }
+        };
+    }
+
+    @Test
+    public void testFullBatchesArePublishedAndPartialOnesWait() throws IOException {
+
+        SampleBuffer buffer = new MemorySampleBuffer(100);
+        DeliveryPipeline pipeline = pipeline(buffer, 3);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 7; i++) {
+            buffer.append(sample(now + i));
+        }
+
+        pipeline.publish();
+
+        assertEquals(2, publisher.messages.size());
+        assertTrue(publisher.messages.get(0).startsWith("["));
+        assertEquals(1, buffer.size());
+        assertEquals(6, delivered.get());
+    }
+
+    @Test
+    public void testLingeringSampleIsPublishedAlone() throws IOException {
+
+        SampleBuffer buffer = new MemorySampleBuffer(100);
+        DeliveryPipeline pipeline = pipeline(buffer, 3);
+        buffer.append(sample(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(2)));
+
+        pipeline.publish();
+
+        assertEquals(1, publisher.messages.size());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testDurableBufferCommitsOnlyDeliveredBatches() throws IOException {
+
+        SampleBuffer buffer = durableBuffer();
+        DeliveryPipeline pipeline = pipeline(buffer, 1);
+        buffer.append(sample(1));
+        buffer.append(sample(2));
+
+        // the first message is on its way, nothing else is published meanwhile
+        publisher.delivery = Publisher.Delivery.PENDING;
+        pipeline.publish();
+        assertEquals(1, publisher.messages.size());
+        assertEquals(2, buffer.size());
+
+        // lost, so it is published again, and lost again
+        publisher.delivery = Publisher.Delivery.FAILED;
+        pipeline.publish();
+        assertEquals(2, publisher.messages.size());
+        assertEquals(2, buffer.size());
+
+        publisher.delivery = Publisher.Delivery.DELIVERED;
+        pipeline.publish();
+        assertEquals(0, buffer.size());
+        assertEquals(4, publisher.messages.size());
+        assertEquals(publisher.messages.get(0), publisher.messages.get(2));
+        assertEquals(2, delivered.get());
+    }
+
+    @Test
+    public void testUnconfirmedDeliveryReplacesThePublisher() throws IOException {
+
+        SampleBuffer buffer = durableBuffer();
+        DeliveryPipeline pipeline = pipeline(buffer, 1, Duration.ZERO);
+        buffer.append(sample(1));
+
+        publisher.delivery = Publisher.Delivery.PENDING;
+        pipeline.publish();
+        pipeline.publish();
+
+        assertEquals(true, publisher.closed);
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    public void testPublisherRetryingByItselfIsWaitedFor() throws IOException {
+
+        SampleBuffer buffer = durableBuffer();
+        DeliveryPipeline pipeline = pipeline(buffer, 1, Duration.ZERO);
+        buffer.append(sample(1));
+
+        publisher.delivery = Publisher.Delivery.PENDING;
+        publisher.retries = true;
+        pipeline.publish();
+        pipeline.publish();
+
+        // neither replaced nor published twice
+        assertEquals(false, publisher.closed);
+        assertEquals(1, publisher.messages.size());
+
+        publisher.delivery = Publisher.Delivery.DELIVERED;
+        pipeline.publish();
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testTextPublishersGetTextMessages() throws IOException {
+
+        SampleBuffer buffer = new MemorySampleBuffer(100);
+        DeliveryPipeline pipeline = pipeline(buffer, 1);
+        buffer.append(sample(1));
+
+        publisher.bytes = false;
+        pipeline.publish();
+
+        assertEquals(1, publisher.messages.size());
+        assertTrue(publisher.messages.get(0).startsWith("{"));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testPublishersDoNotPublishBytesUnlessTheySaySo() {
+
+        Publisher textOnly = new Publisher() {
+            @Override
+            public void connect(Properties properties) {
+            }
+
+            @Override
+            public void publish(String message) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertEquals(false, textOnly.publishesBytes());
+        assertThrows(UnsupportedOperationException.class, () -> textOnly.publish(ByteBuffer.allocate(1)));
+    }
+
+    @Test
+    public void testFailedPublishKeepsTheSamples() throws IOException {
+
+        SampleBuffer buffer = new MemorySampleBuffer(100);
+        DeliveryPipeline pipeline = pipeline(buffer, 1);
+        buffer.append(sample(1));
+
+        publisher.failing = true;
+        pipeline.publish();
+
+        assertEquals(1, buffer.size());
+        assertEquals(1, failed.get());
+        assertEquals(0, delivered.get());
+    }
+
+    // keeps every message as text, reporting the delivery it is told to
+    private static class RecordingPublisher implements Publisher {
+
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+
+        private volatile Delivery delivery = Delivery.DELIVERED;
+
+        private volatile boolean failing = false;
+
+        private volatile boolean retries = false;
+
+        private volatile boolean closed = false;
+
+        private volatile boolean bytes = true;
+
+        @Override
+        public void connect(Properties properties) {
+        }
+
+        @Override
+        public void publish(String message) throws IOException {
+            publish(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public boolean publishesBytes() {
+            return bytes;
+        }
+
+    @Override
+        public void publish(ByteBuffer message) throws IOException {
+
+            if (failing) {
+                throw new IOException("broken pipe");
+            }
+            messages.add(StandardCharsets.UTF_8.decode(message).toString());
+        }
+
+        @Override
+        public Delivery checkDelivery() {
+            return delivery;
+        }
+
+        @Override
+        public boolean retriesDelivery() {
+            return retries;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package deors.devices.ambientstation.raspberry.publishers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FanOutPublisherTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testEverySinkReceivesEveryMessage() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty("publisher.fanout.sinks", "local, backup");
+        properties.setProperty("publisher.fanout.local.impl", FilePublisher.class.getName());
+        properties.setProperty("publisher.file.path", directory.resolve("local.log").toString());
+        properties.setProperty("publisher.fanout.backup.impl", FilePublisher.class.getName());
+        properties.setProperty("publisher.fanout.backup.publisher.file.path", directory.resolve("backup.log").toString());
+        properties.setProperty("publisher.fanout.backup.overflow", "drop-newest");
+
+        FanOutPublisher publisher = new FanOutPublisher();
+        publisher.connect(properties);
+
+        assertEquals(2, publisher.getSinks().size());
+        assertEquals(OverflowPolicy.DROP_NEWEST, OverflowPolicy.fromProperty("drop-newest"));
+
+        // the caller may reuse its buffer right away
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        for (int i = 0; i < 5; i++) {
+            buffer.clear();
+            buffer.put(("message " + i).getBytes(StandardCharsets.UTF_8)).flip();
+            publisher.publish(buffer);
+        }
+
+        for (PublisherSink sink : publisher.getSinks()) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sink.getPublishedCount() < 5 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(5, sink.getPublishedCount());
+        }
+        assertEquals(Publisher.Delivery.DELIVERED, publisher.checkDelivery());
+        publisher.close();
+
+        List<String> expected = List.of("message 0", "message 1", "message 2", "message 3", "message 4");
+        assertEquals(expected, Files.readAllLines(directory.resolve("local.log")));
+        assertEquals(expected, Files.readAllLines(directory.resolve("backup.log")));
+    }
+
+    @Test
+    public void testOnlyDurableSinksAreWaitedFor() throws Exception {
+
+        // the broken sink never connects, it has no file to write to
+        Properties properties = new Properties();
+        properties.setProperty("publisher.fanout.sinks", "local, broken");
+        properties.setProperty("publisher.fanout.local.impl", FilePublisher.class.getName());
+        properties.setProperty("publisher.fanout.local.publisher.file.path", directory.resolve("local.log").toString());
+        properties.setProperty("publisher.fanout.broken.impl", FilePublisher.class.getName());
+        properties.setProperty("publisher.fanout.broken.publisher.file.path", "");
+        properties.setProperty("publisher.fanout.broken.publisher.connect.backoff.initial", "10ms");
+
+        FanOutPublisher publisher = new FanOutPublisher();
+        publisher.connect(properties);
+        publisher.publish("message 0");
+        assertEquals(Publisher.Delivery.DELIVERED, publisher.checkDelivery());
+        awaitPublished(publisher.getSinks().get(0), 1);
+        publisher.close();
+
+        properties.setProperty("publisher.fanout.broken.durable", "true");
+        publisher = new FanOutPublisher();
+        publisher.connect(properties);
+        publisher.publish("message 1");
+
+        // the healthy sink delivers regardless, the durable one holds the delivery back
+        awaitPublished(publisher.getSinks().get(0), 1);
+        assertEquals(Publisher.Delivery.PENDING, publisher.checkDelivery());
+        assertTrue(publisher.retriesDelivery());
+        publisher.close();
+
+        assertEquals(List.of("message 0", "message 1"), Files.readAllLines(directory.resolve("local.log")));
+    }
+
+    private static void awaitPublished(PublisherSink sink, long count) throws InterruptedException {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sink.getPublishedCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, sink.getPublishedCount());
+    }
+
+    @Test
+    public void testSinksMustBeConfigured() {
+
+        Properties properties = new Properties();
+        assertThrows(IOException.class, () -> new FanOutPublisher().connect(properties));
+
+        properties.setProperty("publisher.fanout.sinks", "nowhere");
+        IOException ioe = assertThrows(IOException.class, () -> new FanOutPublisher().connect(properties));
+        assertTrue(ioe.getMessage().contains("nowhere"));
+    }
+}
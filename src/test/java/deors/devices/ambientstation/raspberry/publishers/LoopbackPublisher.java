@@ -0,0 +1,160 @@
+package deors.devices.ambientstation.raspberry.publishers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+import deors.devices.ambientstation.raspberry.encoding.BinaryAmbientDataDecoder;
+
+// publishes to a listener in the same jvm, decoding every binary message
+// so the time each sample took to be published can be measured
+//
+// publisher.loopback.failure.rate makes that fraction of the messages fail,
+// so the station goes through its reconnection path
+//
+// publisher.loopback.deferred delivers messages after publish returns, as
+// the asynchronous publishers do: a message is pending on the first delivery
+// check, and then delivered to the listener or, for the fraction set by
+// publisher.loopback.delivery.failure.rate, lost
+public class LoopbackPublisher implements Publisher {
+
+    @FunctionalInterface
+    public interface Listener {
+
+        // one call per published sample, times in ms since the epoch
+        void published(long sampleTime, long publishTime);
+    }
+
+    private static volatile Listener listener = (sampleTime, publishTime) -> { };
+
+    private static final AtomicLong connections = new AtomicLong();
+    private static final AtomicLong failures = new AtomicLong();
+
+    private final BinaryAmbientDataDecoder decoder = new BinaryAmbientDataDecoder();
+
+    private final Random random = new Random();
+
+    private double failureRate;
+
+    private boolean deferred;
+
+    private double deliveryFailureRate;
+
+    // samples published and not yet delivered, and whether they were checked once
+    private final List<AmbientData> inFlight = new ArrayList<>();
+    private boolean checked;
+
+    private boolean connected = false;
+
+    public static void setListener(Listener newListener) {
+        listener = newListener;
+    }
+
+    public static long getConnectionCount() {
+        return connections.get();
+    }
+
+    public static long getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public void connect(Properties properties) throws IOException {
+
+        if (!"binary".equalsIgnoreCase(properties.getProperty("publisher.format", "json").trim())) {
+            throw new IOException("the loopback publisher takes binary messages only");
+        }
+        failureRate = Double.parseDouble(properties.getProperty("publisher.loopback.failure.rate", "0").trim());
+        deferred = Boolean.parseBoolean(properties.getProperty("publisher.loopback.deferred", "false").trim());
+        deliveryFailureRate = Double.parseDouble(properties.getProperty("publisher.loopback.delivery.failure.rate", "0").trim());
+        connected = true;
+        connections.incrementAndGet();
+    }
+
+    @Override
+    public void publish(String message) throws IOException {
+        throw new IOException("the loopback publisher takes binary messages only");
+    }
+
+    @Override
+    public boolean publishesBytes() {
+        return true;
+    }
+
+    @Override
+    public void publish(ByteBuffer message) throws IOException {
+
+        if (!connected) {
+            throw new IOException("the loopback publisher is not connected");
+        }
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            failures.incrementAndGet();
+            connected = false;
+            throw new IOException("loopback publishing failed as configured");
+        }
+
+        List<AmbientData> samples = decoder.decodeBatch(message);
+        if (deferred) {
+            synchronized (inFlight) {
+                // earlier messages are settled by now, checked or not
+                if (!inFlight.isEmpty()) {
+                    settle();
+                }
+                inFlight.addAll(samples);
+                checked = false;
+            }
+        } else {
+            deliver(samples);
+        }
+    }
+
+    private static void deliver(List<AmbientData> samples) {
+
+        long publishTime = System.currentTimeMillis();
+        Listener current = listener;
+        for (AmbientData sample : samples) {
+            current.published(sample.getSlotTime(), publishTime);
+        }
+    }
+
+    @Override
+    public Delivery checkDelivery() {
+
+        synchronized (inFlight) {
+            if (inFlight.isEmpty()) {
+                return Delivery.DELIVERED;
+            }
+            if (!checked) {
+                checked = true;
+                return Delivery.PENDING;
+            }
+            return settle() ? Delivery.DELIVERED : Delivery.FAILED;
+        }
+    }
+
+    // delivers or loses the messages in flight, returns whether delivered
+    private boolean settle() {
+
+        boolean lost = deliveryFailureRate > 0 && random.nextDouble() < deliveryFailureRate;
+        if (!lost) {
+            deliver(inFlight);
+        }
+        inFlight.clear();
+        return !lost;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public void close() {
+        connected = false;
+    }
+}
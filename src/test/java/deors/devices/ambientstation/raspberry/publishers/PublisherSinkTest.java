@@ -0,0 +1,300 @@
+package deors.devices.ambientstation.raspberry.publishers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import deors.devices.ambientstation.raspberry.scheduling.Backoff;
+
+public class PublisherSinkTest {
+
+    @Test
+    public void testSlowSinkDoesNotHoldBackTheOthers() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        GatedPublisher slow = new GatedPublisher(release);
+        GatedPublisher fast = new GatedPublisher(new CountDownLatch(0));
+
+        PublisherSink slowSink = sink("slow", slow, 2, OverflowPolicy.DROP_OLDEST);
+        PublisherSink fastSink = sink("fast", fast, 2, OverflowPolicy.DROP_OLDEST);
+
+        for (int i = 0; i < 10; i++) {
+            byte[] message = { (byte) i };
+            slowSink.offer(message);
+            fastSink.offer(message);
+            if (i == 0) {
+                waitFor(() -> slowSink.getQueueDepth() == 0);
+            }
+            waitFor(() -> fastSink.getPublishedCount() == fast.received.size() && fastSink.getQueueDepth() == 0);
+        }
+
+        waitFor(() -> fast.received.size() == 10);
+        assertEquals(0, fastSink.getDroppedCount());
+
+        // the slow sink holds one message in hand and two queued, the rest were dropped oldest first
+        assertEquals(2, slowSink.getQueueDepth());
+        assertEquals(7, slowSink.getDroppedCount());
+
+        release.countDown();
+        waitFor(() -> slow.received.size() == 3);
+        assertEquals(List.of(0, 8, 9), slow.received);
+
+        slowSink.close();
+        fastSink.close();
+    }
+
+    @Test
+    public void testDropNewestKeepsQueuedMessages() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        GatedPublisher slow = new GatedPublisher(release);
+        PublisherSink sink = sink("slow", slow, 2, OverflowPolicy.DROP_NEWEST);
+
+        sink.offer(new byte[] { 0 });
+        waitFor(() -> sink.getQueueDepth() == 0);
+        for (int i = 1; i < 10; i++) {
+            sink.offer(new byte[] { (byte) i });
+        }
+        assertEquals(7, sink.getDroppedCount());
+
+        release.countDown();
+        waitFor(() -> slow.received.size() == 3);
+        assertEquals(List.of(0, 1, 2), slow.received);
+
+        sink.close();
+    }
+
+    @Test
+    public void testBlockWaitsForRoom() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        GatedPublisher slow = new GatedPublisher(release);
+        PublisherSink sink = sink("slow", slow, 1, OverflowPolicy.BLOCK);
+
+        sink.offer(new byte[] { 0 });
+        waitFor(() -> sink.getQueueDepth() == 0);
+        sink.offer(new byte[] { 1 });
+
+        CountDownLatch offered = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                sink.offer(new byte[] { 2 });
+                offered.countDown();
+            } catch (IOException ioe) {
+                // not expected
+            }
+        });
+        producer.start();
+
+        assertFalse(offered.await(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(offered.await(5, TimeUnit.SECONDS));
+        waitFor(() -> slow.received.size() == 3);
+        assertEquals(0, sink.getDroppedCount());
+
+        sink.close();
+    }
+
+    @Test
+    public void testRetriesTheMessageAfterAFailure() throws Exception {
+
+        GatedPublisher flaky = new GatedPublisher(new CountDownLatch(0));
+        flaky.failures = 2;
+        PublisherSink sink = sink("flaky", flaky, 10, OverflowPolicy.DROP_OLDEST);
+
+        sink.offer(new byte[] { 0 });
+        sink.offer(new byte[] { 1 });
+        waitFor(() -> flaky.received.size() == 2);
+
+        assertEquals(List.of(0, 1), flaky.received);
+        assertEquals(2, sink.getFailureCount());
+        assertEquals(ConnectionState.CONNECTED, sink.getState());
+
+        sink.close();
+    }
+
+    @Test
+    public void testDeliveryIsPendingUntilPublished() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        GatedPublisher slow = new GatedPublisher(release);
+        PublisherSink sink = sink("slow", slow, 2, OverflowPolicy.DROP_OLDEST);
+
+        assertEquals(Publisher.Delivery.DELIVERED, sink.checkDelivery());
+        sink.offer(new byte[] { 0 });
+        waitFor(() -> sink.getQueueDepth() == 0);
+        assertEquals(Publisher.Delivery.PENDING, sink.checkDelivery());
+
+        release.countDown();
+        waitFor(() -> sink.checkDelivery() == Publisher.Delivery.DELIVERED);
+        assertEquals(List.of(0), slow.received);
+
+        sink.close();
+    }
+
+    @Test
+    public void testMessagesArePublishedWithoutWaitingForDelivery() throws Exception {
+
+        DeferredPublisher deferred = new DeferredPublisher();
+        PublisherSink sink = sink("deferred", deferred, 10, OverflowPolicy.DROP_OLDEST);
+
+        for (int i = 0; i < 5; i++) {
+            sink.offer(new byte[] { (byte) i });
+        }
+
+        // all of them are in flight at once, none confirmed yet
+        waitFor(() -> sink.getInFlight() == 5);
+        assertEquals(Publisher.Delivery.PENDING, sink.checkDelivery());
+        assertEquals(0, sink.getPublishedCount());
+
+        deferred.complete(true);
+        waitFor(() -> sink.checkDelivery() == Publisher.Delivery.DELIVERED);
+        assertEquals(5, sink.getPublishedCount());
+        assertEquals(List.of(0, 1, 2, 3, 4), deferred.received);
+
+        sink.close();
+    }
+
+    @Test
+    public void testFailedDeliveryIsPublishedAgain() throws Exception {
+
+        DeferredPublisher deferred = new DeferredPublisher();
+        PublisherSink sink = sink("deferred", deferred, 10, OverflowPolicy.DROP_OLDEST);
+
+        sink.offer(new byte[] { 0 });
+        sink.offer(new byte[] { 1 });
+        waitFor(() -> sink.getInFlight() == 2);
+
+        deferred.complete(false);
+        waitFor(() -> deferred.received.size() == 4);
+        assertEquals(List.of(0, 1, 0, 1), deferred.received);
+
+        deferred.complete(true);
+        waitFor(() -> sink.checkDelivery() == Publisher.Delivery.DELIVERED);
+        assertEquals(2, sink.getPublishedCount());
+        assertTrue(sink.getFailureCount() > 0);
+
+        sink.close();
+    }
+
+    private static PublisherSink sink(String name, Publisher publisher, int capacity, OverflowPolicy overflow) {
+
+        PublisherSink sink = new PublisherSink(name, () -> publisher, new Properties(), capacity, overflow,
+            new Backoff(Duration.ofMillis(5), Duration.ofMillis(5), 0));
+        sink.start();
+        return sink;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    // records the first byte of each message, waiting for the gate before each one
+    private static class GatedPublisher implements Publisher {
+
+        private final CountDownLatch gate;
+
+        private final List<Integer> received = new CopyOnWriteArrayList<>();
+
+        private volatile int failures = 0;
+
+        private GatedPublisher(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void connect(Properties properties) {
+        }
+
+        @Override
+        public void publish(String message) {
+        }
+
+        @Override
+        public boolean publishesBytes() {
+            return true;
+        }
+
+    @Override
+        public void publish(ByteBuffer message) throws IOException {
+
+            if (failures > 0) {
+                failures--;
+                throw new IOException("broken pipe");
+            }
+            try {
+                gate.await();
+            } catch (InterruptedException ie) {
+                throw new IOException(ie);
+            }
+            received.add((int) message.get(0));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // records the first byte of each message and calls back only when told to
+    private static class DeferredPublisher implements Publisher {
+
+        private final List<Integer> received = new CopyOnWriteArrayList<>();
+
+        private final List<DeliveryCallback> callbacks = new ArrayList<>();
+
+        @Override
+        public void connect(Properties properties) {
+        }
+
+        @Override
+        public void publish(String message) {
+        }
+
+        @Override
+        public boolean publishesBytes() {
+            return true;
+        }
+
+    @Override
+        public void publish(ByteBuffer message, DeliveryCallback callback) {
+
+            received.add((int) message.get(0));
+            synchronized (callbacks) {
+                callbacks.add(callback);
+            }
+        }
+
+        // completes every message in flight
+        private void complete(boolean delivered) {
+
+            List<DeliveryCallback> completed;
+            synchronized (callbacks) {
+                completed = new ArrayList<>(callbacks);
+                callbacks.clear();
+            }
+            completed.forEach(callback -> callback.completed(delivered));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
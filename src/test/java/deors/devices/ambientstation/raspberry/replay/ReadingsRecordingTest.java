@@ -0,0 +1,156 @@
+package deors.devices.ambientstation.raspberry.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ReadingsRecordingTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testReadingsRoundTripAcrossReopen() throws IOException {
+
+        Path file = dir.resolve("readings.rec");
+        RawReadings readings = new RawReadings();
+
+        try (ReadingsRecorder recorder = new ReadingsRecorder(file)) {
+            readings.set(1000, Double.NaN, Double.NaN, 120, 300, 10.5, 40, 35.25, 100, false);
+            recorder.record(readings);
+            readings.set(1500, 21.5, 48, 120, 310, 10.5, 40, 35.25, 100, true);
+            recorder.record(readings);
+        }
+        try (ReadingsRecorder recorder = new ReadingsRecorder(file)) {
+            readings.set(2000, 21.5, 48, 125, 310, 11, 42, 36, 99, false);
+            recorder.record(readings);
+        }
+
+        try (ReadingsReader reader = new ReadingsReader(file)) {
+            RawReadings read = new RawReadings();
+
+            assertTrue(reader.next(read));
+            assertEquals(1000, read.getTime());
+            assertTrue(Double.isNaN(read.getTemperature()));
+            assertTrue(Double.isNaN(read.getHumidity()));
+            assertEquals(120, read.getAirQuality());
+            assertEquals(35.25, read.getSoundLeq());
+            assertEquals(100, read.getSoundSamples());
+            assertFalse(read.isMotion());
+
+            assertTrue(reader.next(read));
+            assertEquals(1500, read.getTime());
+            assertEquals(21.5, read.getTemperature());
+            assertEquals(48, read.getHumidity());
+            assertEquals(310, read.getLight());
+            assertTrue(read.isMotion());
+
+            assertTrue(reader.next(read));
+            assertEquals(2000, read.getTime());
+            assertEquals(125, read.getAirQuality());
+            assertEquals(11, read.getSoundRms());
+            assertEquals(42, read.getSoundPeak());
+            assertEquals(99, read.getSoundSamples());
+            assertFalse(read.isMotion());
+
+            assertFalse(reader.next(read));
+        }
+    }
+
+    @Test
+    public void testSteadyReadingsOnlyRecordTheTime() throws IOException {
+
+        Path file = dir.resolve("steady.rec");
+        RawReadings readings = new RawReadings();
+
+        try (ReadingsRecorder recorder = new ReadingsRecorder(file)) {
+            for (int i = 0; i < 1000; i++) {
+                readings.set(i * 500L, 20, 50, 100, 200, 1, 2, 3, 100, false);
+                recorder.record(readings);
+            }
+        }
+
+        // header, first absolute record, then a flags byte and a 500 ms delta
+        long first = 5 + 1 + 8 + 8 + 4 + 4 + 12 + 1;
+        assertEquals(first + 999 * 3, Files.size(file));
+    }
+
+    @Test
+    public void testTornRecordEndsTheRecording() throws IOException {
+
+        Path file = dir.resolve("torn.rec");
+        RawReadings readings = new RawReadings();
+
+        try (ReadingsRecorder recorder = new ReadingsRecorder(file)) {
+            readings.set(0, 20, 50, 100, 200, 1, 2, 3, 100, false);
+            recorder.record(readings);
+            readings.set(500, 21, 51, 101, 201, 1, 2, 3, 100, false);
+            recorder.record(readings);
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        try (ReadingsReader reader = new ReadingsReader(file)) {
+            RawReadings read = new RawReadings();
+            assertTrue(reader.next(read));
+            assertFalse(reader.next(read));
+        }
+
+        Files.write(file, new byte[] { 1, 2, 3, 4, 5 });
+        assertThrows(IOException.class, () -> new ReadingsReader(file));
+    }
+
+    @Test
+    public void testReplayKeepsTheRecordedTimes() throws IOException {
+
+        Path file = dir.resolve("replay.rec");
+        RawReadings readings = new RawReadings();
+
+        try (ReadingsRecorder recorder = new ReadingsRecorder(file)) {
+            for (int i = 0; i < 100; i++) {
+                readings.set(1_000_000L + i * 60_000L, 20, 50, i, 200, 1, 2, 3, 100, false);
+                recorder.record(readings);
+            }
+        }
+
+        // 99 minutes of readings replayed at once
+        List<Long> slots = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        Replay replay = new Replay(file, Replay.parseSpeed("max"), (slot, read) -> {
+            slots.add(slot);
+            times.add(read.getTime());
+            assertEquals(slot, read.getAirQuality());
+        });
+        long start = System.nanoTime();
+        replay.run();
+
+        assertTrue(System.nanoTime() - start < 10_000_000_000L);
+        assertEquals(100, replay.getReplayedCount());
+        assertEquals(99L, slots.get(99));
+        assertEquals(1_000_000L, times.get(0));
+        assertEquals(1_000_000L + 99 * 60_000L, times.get(99));
+    }
+
+    @Test
+    public void testReplaySpeed() {
+
+        assertEquals(1, Replay.parseSpeed(null));
+        assertEquals(1, Replay.parseSpeed(" "));
+        assertEquals(10, Replay.parseSpeed("10x"));
+        assertEquals(2.5, Replay.parseSpeed("2.5"));
+        assertEquals(Double.POSITIVE_INFINITY, Replay.parseSpeed("MAX"));
+        assertThrows(IllegalArgumentException.class, () -> Replay.parseSpeed("fast"));
+        assertThrows(IllegalArgumentException.class, () -> new Replay(dir, 0, (slot, read) -> { }));
+    }
+}
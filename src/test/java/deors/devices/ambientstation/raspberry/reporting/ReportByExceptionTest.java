@@ -0,0 +1,77 @@
+package deors.devices.ambientstation.raspberry.reporting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import deors.devices.ambientstation.raspberry.AmbientData;
+
+public class ReportByExceptionTest {
+
+    @Test
+    public void testDeadbands() {
+
+        Deadband absolute = Deadband.parse(" 0.5 ");
+        assertFalse(absolute.isExceeded(20.0, 20.5));
+        assertTrue(absolute.isExceeded(20.0, 20.6));
+        assertTrue(absolute.isExceeded(20.0, 19.4));
+
+        Deadband percent = Deadband.parse("10%");
+        assertFalse(percent.isExceeded(200, 220));
+        assertTrue(percent.isExceeded(200, 221));
+        assertTrue(percent.isExceeded(-200, -179));
+
+        assertFalse(Deadband.NONE.isExceeded(1, 1));
+        assertTrue(Deadband.parse("").isExceeded(1, 1.01));
+
+        assertThrows(IllegalArgumentException.class, () -> Deadband.parse("ten"));
+        assertThrows(IllegalArgumentException.class, () -> Deadband.parse("-1"));
+    }
+
+    @Test
+    public void testReportsOnlyChangesAndHeartbeats() {
+
+        ReportByException filter = new ReportByException(Deadband.absolute(0.5), Deadband.absolute(2),
+            Deadband.percent(10), Deadband.percent(10), Deadband.absolute(100), Duration.ofSeconds(10));
+
+        // the first sample is always reported
+        assertTrue(filter.shouldReport(sample(0, 20.0, 400, 20, false)));
+
+        // small changes are suppressed, measured from the last reported sample
+        assertFalse(filter.shouldReport(sample(500, 20.3, 420, 20, false)));
+        assertFalse(filter.shouldReport(sample(1000, 20.5, 430, 20, false)));
+        assertTrue(filter.shouldReport(sample(1500, 20.6, 430, 20, false)));
+
+        // light leaves its relative deadband
+        assertTrue(filter.shouldReport(sample(2000, 20.6, 480, 20, false)));
+
+        // motion and air quality category changes are always reported
+        assertTrue(filter.shouldReport(sample(2500, 20.6, 480, 20, true)));
+        assertFalse(filter.shouldReport(sample(3000, 20.6, 480, 29, true)));
+        assertTrue(filter.shouldReport(sample(3500, 20.6, 480, 30, true)));
+
+        // the heartbeat reports a quiet station
+        assertFalse(filter.shouldReport(sample(13000, 20.6, 480, 30, true)));
+        assertTrue(filter.shouldReport(sample(13500, 20.6, 480, 30, true)));
+
+        assertEquals(6, filter.getReportedCount());
+        assertEquals(4, filter.getSuppressedCount());
+    }
+
+    private static AmbientData sample(long slotTime, double temperature, double light, double airQuality, boolean motion) {
+
+        AmbientData.Builder builder = new AmbientData.Builder("test");
+        builder.setSlotTime(slotTime);
+        builder.setTemperatureValue(temperature);
+        builder.setHumidityValue(50);
+        builder.setLightValue(light);
+        builder.setAirQualityValue(airQuality);
+        builder.setMotionDetected(motion);
+        return builder.build();
+    }
+}
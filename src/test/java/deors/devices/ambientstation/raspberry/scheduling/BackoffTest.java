@@ -0,0 +1,57 @@
+package deors.devices.ambientstation.raspberry.scheduling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+public class BackoffTest {
+
+    @Test
+    public void testDelaysDoubleUpToTheMaximum() {
+
+        Backoff backoff = new Backoff(Duration.ofMillis(100), Duration.ofSeconds(1), 0);
+
+        assertEquals(100, backoff.nextDelayMillis());
+        assertEquals(200, backoff.nextDelayMillis());
+        assertEquals(400, backoff.nextDelayMillis());
+        assertEquals(800, backoff.nextDelayMillis());
+        assertEquals(1000, backoff.nextDelayMillis());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1000, backoff.nextDelayMillis());
+        }
+
+        backoff.reset();
+        assertEquals(0, backoff.getAttempts());
+        assertEquals(100, backoff.nextDelayMillis());
+    }
+
+    @Test
+    public void testJitterOnlyShortensDelays() {
+
+        Backoff backoff = new Backoff(Duration.ofMillis(1000), Duration.ofMillis(1000), 0.5);
+
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long delay = backoff.nextDelayMillis();
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+
+        assertTrue(min >= 500);
+        assertTrue(max <= 1000);
+        assertTrue(max - min > 100);
+    }
+
+    @Test
+    public void testInvalidSettings() {
+
+        assertThrows(IllegalArgumentException.class, () -> new Backoff(Duration.ZERO, Duration.ofSeconds(1), 0));
+        assertThrows(IllegalArgumentException.class, () -> new Backoff(Duration.ofSeconds(2), Duration.ofSeconds(1), 0));
+        assertThrows(IllegalArgumentException.class, () -> new Backoff(Duration.ofSeconds(1), Duration.ofSeconds(1), 1.5));
+    }
+}
@@ -0,0 +1,51 @@
+package deors.devices.ambientstation.raspberry.scheduling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class FixedRateSamplerTest {
+
+    @Test
+    public void testOverrunSkipsSlotsInsteadOfBursting() throws InterruptedException {
+
+        StationScheduler scheduler = new StationScheduler(2);
+        List<long[]> slots = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(4);
+
+        FixedRateSampler sampler = new FixedRateSampler(scheduler, "test", 20, TimeUnit.MILLISECONDS,
+            (slot, slotNanos, slotTime) -> {
+                slots.add(new long[] { slot, slotTime });
+                if (slot == 0) {
+                    // overrun the first slot by more than three periods
+                    try {
+                        Thread.sleep(70);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                done.countDown();
+            });
+        sampler.start();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        sampler.stop();
+        scheduler.shutdown(1, TimeUnit.SECONDS);
+
+        assertTrue(sampler.getOverruns() >= 1);
+        assertTrue(sampler.getSkippedSlots() >= 2);
+        assertTrue(slots.get(1)[0] >= 3);
+        assertEquals(sampler.getJitter().getCount(), slots.size());
+
+        // slot times stay on the configured timeline
+        for (long[] slot : slots) {
+            assertEquals(slots.get(0)[1] + slot[0] * 20, slot[1]);
+        }
+    }
+}
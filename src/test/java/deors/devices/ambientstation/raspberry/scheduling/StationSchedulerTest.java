@@ -0,0 +1,139 @@
+package deors.devices.ambientstation.raspberry.scheduling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+
+public class StationSchedulerTest {
+
+    @Test
+    public void testTasksRunOnStationThreads() throws Exception {
+
+        StationScheduler scheduler = new StationScheduler(1);
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        scheduler.execute("probe", () -> {
+            thread.set(Thread.currentThread());
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(thread.get().getName().startsWith("station-"));
+        assertFalse(thread.get().isDaemon());
+        assertTrue(scheduler.shutdown(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStatsAreKeptPerTaskName() throws Exception {
+
+        StationScheduler scheduler = new StationScheduler(2);
+        CountDownLatch done = new CountDownLatch(5);
+
+        for (int i = 0; i < 3; i++) {
+            scheduler.execute("read", done::countDown);
+        }
+        scheduler.schedule("publish", done::countDown, 10, TimeUnit.MILLISECONDS);
+        scheduler.execute("blink", done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(scheduler.shutdown(1, TimeUnit.SECONDS));
+
+        // sorted by name
+        List<String> names = new ArrayList<>();
+        for (TaskStats stats : scheduler.getTaskStats()) {
+            names.add(stats.getName());
+        }
+        assertEquals(List.of("blink", "publish", "read"), names);
+
+        TaskStats read = scheduler.getTaskStats().stream().filter(s -> s.getName().equals("read")).findFirst().get();
+        assertEquals(3, read.getRuns());
+        assertEquals(0, read.getFailures());
+    }
+
+    @Test
+    public void testFailingPeriodicTaskKeepsRunning() throws Exception {
+
+        Logger schedulerLogger = Logger.getLogger(StationScheduler.class.getName());
+        Level previousLevel = schedulerLogger.getLevel();
+        schedulerLogger.setLevel(Level.OFF);
+
+        StationScheduler scheduler = new StationScheduler(1);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(4);
+        try {
+            ScheduledFuture<?> future = scheduler.scheduleAtFixedRate("flaky", () -> {
+                done.countDown();
+                // every other run fails
+                if (runs.incrementAndGet() % 2 == 1) {
+                    throw new IllegalStateException("sensor failure");
+                }
+            }, 0, 5, TimeUnit.MILLISECONDS);
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertFalse(future.isDone());
+            future.cancel(false);
+        } finally {
+            scheduler.shutdown(1, TimeUnit.SECONDS);
+            schedulerLogger.setLevel(previousLevel);
+        }
+
+        TaskStats flaky = scheduler.getTaskStats().iterator().next();
+        assertTrue(flaky.getRuns() >= 4);
+        assertEquals((flaky.getRuns() + 1) / 2, flaky.getFailures());
+    }
+
+    @Test
+    public void testShutdownStopsPeriodicTasksAndRejectsNewOnes() throws Exception {
+
+        StationScheduler scheduler = new StationScheduler(1);
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.scheduleWithFixedDelay("tick", started::countDown, 0, 1, TimeUnit.MILLISECONDS);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(scheduler.shutdown(1, TimeUnit.SECONDS));
+        assertTrue(scheduler.isShutdown());
+        assertThrows(RejectedExecutionException.class, () -> scheduler.execute("late", () -> { }));
+    }
+
+    @Test
+    public void testShutdownInterruptsTasksThatDoNotFinish() throws Exception {
+
+        StationScheduler scheduler = new StationScheduler(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        scheduler.execute("stuck", () -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException ie) {
+                interrupted.countDown();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Logger schedulerLogger = Logger.getLogger(StationScheduler.class.getName());
+        Level previousLevel = schedulerLogger.getLevel();
+        schedulerLogger.setLevel(Level.OFF);
+        try {
+            assertTrue(scheduler.shutdown(100, TimeUnit.MILLISECONDS));
+        } finally {
+            schedulerLogger.setLevel(previousLevel);
+        }
+        assertEquals(0, interrupted.getCount());
+    }
+}
@@ -0,0 +1,29 @@
+package deors.devices.ambientstation.raspberry.scheduling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class TaskStatsTest {
+
+    @Test
+    public void testRunsFailuresAndTimesAreAccumulated() {
+
+        TaskStats stats = new TaskStats("sample");
+        assertEquals(0.0, stats.getMeanMillis());
+
+        stats.record(TimeUnit.MILLISECONDS.toNanos(2), false);
+        stats.record(TimeUnit.MILLISECONDS.toNanos(6), true);
+        stats.record(TimeUnit.MILLISECONDS.toNanos(4), false);
+
+        assertEquals("sample", stats.getName());
+        assertEquals(3, stats.getRuns());
+        assertEquals(1, stats.getFailures());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(12), stats.getTotalNanos());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(6), stats.getMaxNanos());
+        assertEquals(4.0, stats.getMeanMillis(), 1e-9);
+        assertEquals("sample: runs=3 failures=1 mean=4.00ms max=6.00ms", stats.toString());
+    }
+}
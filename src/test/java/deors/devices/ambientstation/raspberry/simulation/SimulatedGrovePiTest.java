@@ -0,0 +1,131 @@
+package deors.devices.ambientstation.raspberry.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import deors.devices.ambientstation.raspberry.GroveAirQualitySensor;
+
+import org.iot.raspberry.grovepi.devices.GroveLed;
+import org.iot.raspberry.grovepi.devices.GroveLightSensor;
+import org.iot.raspberry.grovepi.devices.GroveRgbLcd;
+import org.iot.raspberry.grovepi.devices.GroveTemperatureAndHumiditySensor;
+import org.iot.raspberry.grovepi.devices.GroveTemperatureAndHumidityValue;
+
+public class SimulatedGrovePiTest {
+
+    @Test
+    public void testGroveDevicesReadTheConfiguredSignals() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty("grovepi.simulated.seed", "1");
+        properties.setProperty("grovepi.simulated.sleep", "false");
+        properties.setProperty("grovepi.simulated.a0.offset", "749");
+        properties.setProperty("grovepi.simulated.a0.amplitude", "0");
+        properties.setProperty("grovepi.simulated.a0.noise", "0");
+        properties.setProperty("grovepi.simulated.d5.temperature.offset", "23.5");
+        properties.setProperty("grovepi.simulated.d5.temperature.amplitude", "0");
+        properties.setProperty("grovepi.simulated.d5.temperature.noise", "0");
+        properties.setProperty("grovepi.simulated.d5.humidity.offset", "40");
+        properties.setProperty("grovepi.simulated.d5.humidity.amplitude", "0");
+        properties.setProperty("grovepi.simulated.d5.humidity.noise", "0");
+        properties.setProperty("grovepi.simulated.d6.offset", "1");
+
+        try (SimulatedGrovePi grovePi = new SimulatedGrovePi(properties)) {
+            assertEquals(749, new GroveAirQualitySensor(grovePi, 0).get());
+
+            GroveTemperatureAndHumidityValue value = new GroveTemperatureAndHumiditySensor(grovePi, 5,
+                GroveTemperatureAndHumiditySensor.Type.DHT22).get();
+            assertEquals(23.5, value.getTemperature());
+            assertEquals(40, value.getHumidity());
+
+            // unconfigured ports keep the defaults
+            for (int i = 0; i < 100; i++) {
+                double light = new GroveLightSensor(grovePi, 1).get();
+                assertTrue(light >= 0 && light <= 1023, "light " + light);
+            }
+            assertFalse(grovePi.getDigitalIn(2).get());
+            assertTrue(grovePi.getDigitalIn(6).get());
+        }
+    }
+
+    @Test
+    public void testOutputsKeepTheirLastValue() throws IOException {
+
+        try (SimulatedGrovePi grovePi = new SimulatedGrovePi(new Properties())) {
+            GroveLed led = new GroveLed(grovePi, 3);
+            led.set(true);
+            assertTrue(grovePi.getDigitalOutput(3));
+            led.set(false);
+            assertFalse(grovePi.getDigitalOutput(3));
+
+            GroveRgbLcd lcd = grovePi.getLCD();
+            lcd.setRGB(10, 20, 30);
+            lcd.setText("hello");
+            assertEquals("hello", ((SimulatedLcd) lcd).getText());
+            assertArrayEquals(new int[] { 10, 20, 30 }, ((SimulatedLcd) lcd).getRGB());
+        }
+    }
+
+    @Test
+    public void testReadsTakeAsLongAsOnTheRealBoard() throws IOException {
+
+        try (SimulatedGrovePi grovePi = new SimulatedGrovePi(new Properties())) {
+            long start = System.nanoTime();
+            new GroveLightSensor(grovePi, 1).get();
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(elapsed >= 100, "elapsed " + elapsed);
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("grovepi.simulated.sleep", "false");
+        try (SimulatedGrovePi grovePi = new SimulatedGrovePi(properties)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                new GroveLightSensor(grovePi, 1).get();
+            }
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(elapsed < 500, "elapsed " + elapsed);
+        }
+    }
+
+    @Test
+    public void testLatencyAndFaults() throws IOException {
+
+        Properties properties = new Properties();
+        properties.setProperty("grovepi.simulated.a1.latency", "20ms");
+        properties.setProperty("grovepi.simulated.a1.jitter", "10ms");
+        properties.setProperty("grovepi.simulated.a2.failure.rate", "1");
+        properties.setProperty("grovepi.simulated.lcd.failure.rate", "0.5");
+        properties.setProperty("grovepi.simulated.seed", "7");
+        properties.setProperty("grovepi.simulated.sleep", "false");
+
+        try (SimulatedGrovePi grovePi = new SimulatedGrovePi(properties)) {
+            long start = System.nanoTime();
+            new GroveLightSensor(grovePi, 1).get();
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(elapsed >= 20, "elapsed " + elapsed);
+
+            assertThrows(IOException.class, () -> new GroveLightSensor(grovePi, 2).get());
+
+            // about half the lcd writes fail
+            int failed = 0;
+            for (int i = 0; i < 1000; i++) {
+                try {
+                    grovePi.getLCD().setText("x");
+                } catch (IOException ioe) {
+                    failed++;
+                }
+            }
+            assertTrue(failed > 400 && failed < 600, "failed " + failed);
+            assertEquals(failed + 1, grovePi.getFailureCount());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package deors.devices.ambientstation.raspberry.statistics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class RollingWindowTest {
+
+    @Test
+    public void testMatchesBruteForceOverTheBuckets() {
+
+        // 10 s window in 20 buckets of 500 ms
+        RollingWindow window = new RollingWindow(Duration.ofSeconds(10), 20);
+        List<long[]> samples = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        Random random = new Random(7);
+
+        long time = 1_600_000_000_000L;
+        for (int i = 0; i < 5000; i++) {
+            // irregular sampling, with gaps longer than the window now and then
+            time += random.nextInt(20) == 0 ? 15000 : random.nextInt(400);
+            double value = Math.round(random.nextGaussian() * 1000) / 10.0;
+            window.add(time, value);
+            samples.add(new long[] { time });
+            values.add(value);
+
+            // samples of the current bucket and the 19 before it are in the window
+            long oldestBucket = Math.floorDiv(time, 500) - 19;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            int count = 0;
+            for (int s = samples.size() - 1; s >= 0 && Math.floorDiv(samples.get(s)[0], 500) >= oldestBucket; s--) {
+                double v = values.get(s);
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+                sum += v;
+                count++;
+            }
+
+            assertEquals(min, window.getMin(), "sample " + i);
+            assertEquals(max, window.getMax(), "sample " + i);
+            assertEquals(sum / count, window.getMean(), 1e-6, "sample " + i);
+            assertEquals(count, window.getCount());
+        }
+    }
+
+    @Test
+    public void testEmptyAndCleared() {
+
+        RollingWindow window = new RollingWindow(Duration.ofMinutes(1), 60);
+        assertTrue(Double.isNaN(window.getMin()));
+        assertTrue(Double.isNaN(window.getMean()));
+
+        window.add(1000, 5);
+        window.add(2000, Double.NaN);
+        assertEquals(1, window.getCount());
+
+        window.clear();
+        assertTrue(Double.isNaN(window.getMax()));
+        window.add(3000, 7);
+        assertEquals(7, window.getMin());
+        assertEquals(7, window.getMax());
+
+        assertThrows(IllegalArgumentException.class, () -> new RollingWindow(Duration.ofMillis(10), 20));
+    }
+
+    @Test
+    public void testSnapshotsAreIndependent() {
+
+        RollingStatistics statistics = new RollingStatistics(List.of(Duration.ofMinutes(1), Duration.ofHours(1)), 60);
+        statistics.add(Channel.LIGHT, 0, 100);
+        WindowStats first = statistics.snapshot();
+
+        // the minute window forgets the first sample, the hour window keeps it
+        statistics.add(Channel.LIGHT, 120000, 300);
+        WindowStats second = statistics.snapshot();
+
+        assertEquals(100, first.getMax(0, Channel.LIGHT));
+        assertEquals(300, second.getMin(0, Channel.LIGHT));
+        assertEquals(100, second.getMin(1, Channel.LIGHT));
+        assertEquals(200, second.getMean(1, Channel.LIGHT));
+        assertTrue(Double.isNaN(second.getMean(1, Channel.SOUND)));
+        assertEquals("1m", second.getLabel(0));
+        assertEquals("1h", second.getLabel(1));
+    }
+}